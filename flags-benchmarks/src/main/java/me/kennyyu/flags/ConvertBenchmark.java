@@ -0,0 +1,89 @@
+package me.kennyyu.flags;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Measures the conversion of large list, map and primitive array values with
+ * {@link Flags#convertValue}, which replaced setListField and setMapField.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConvertBenchmark {
+
+  @FlagInfo(help = "convertList", environment = "benchConvert")
+  static final Flag<List<Integer>> convertList =
+      Flags.valueOf(ImmutableList.<Integer>of());
+
+  @FlagInfo(help = "convertInts", environment = "benchConvert")
+  static final Flag<int[]> convertInts = Flags.valueOf(new int[0]);
+
+  @FlagInfo(help = "convertMap", environment = "benchConvert")
+  static final Flag<Map<String, Long>> convertMap =
+      Flags.valueOf(ImmutableMap.<String, Long>of());
+
+  @Param({"10000"})
+  public int elementCount;
+
+  private FlagField listField;
+  private FlagField intsField;
+  private FlagField mapField;
+  private String listValue;
+  private String mapValue;
+
+  @Setup
+  public void setUp() throws Exception {
+    listField = new FlagField(
+        ConvertBenchmark.class.getDeclaredField("convertList"));
+    intsField = new FlagField(
+        ConvertBenchmark.class.getDeclaredField("convertInts"));
+    mapField = new FlagField(
+        ConvertBenchmark.class.getDeclaredField("convertMap"));
+    StringBuilder list = new StringBuilder();
+    StringBuilder map = new StringBuilder();
+    for (int i = 0; i < elementCount; i++) {
+      list.append(i).append(',');
+      map.append("key").append(i).append(':').append(i * 31L).append(' ');
+    }
+    listValue = list.toString();
+    mapValue = map.toString();
+  }
+
+  @Benchmark
+  public Object convertList() throws FlagException {
+    return Flags.convertValue(listField, listValue, 0, listValue.length());
+  }
+
+  @Benchmark
+  public Object convertIntArray() throws FlagException {
+    return Flags.convertValue(intsField, listValue, 0, listValue.length());
+  }
+
+  @Benchmark
+  public Object convertMap() throws FlagException {
+    return Flags.convertValue(mapField, mapValue, 0, mapValue.length());
+  }
+
+}
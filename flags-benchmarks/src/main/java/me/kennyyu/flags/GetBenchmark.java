@@ -0,0 +1,70 @@
+package me.kennyyu.flags;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of reading flags from as many threads as there are
+ * processors, which is the hot path of an application.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Threads(Threads.MAX)
+@Fork(1)
+public class GetBenchmark {
+
+  @FlagInfo(help = "getInteger", environment = "benchGet")
+  static final Flag<Integer> getInteger = Flags.valueOf(Integer.valueOf(0));
+
+  @FlagInfo(help = "getInt", environment = "benchGet")
+  static final IntFlag getInt = Flags.valueOf(0);
+
+  @FlagInfo(help = "getMutable", environment = "benchGet")
+  static final MutableFlag<String> getMutable = Flags.mutableValueOf("");
+
+  @Setup
+  public void setUp() throws FlagException {
+    Flags.parseWithExceptions(new String[] {
+        "--getInteger=1",
+        "--getInt=2",
+        "--getMutable=three",
+    }, "benchGet");
+  }
+
+  @Benchmark
+  public Integer get() {
+    return getInteger.get();
+  }
+
+  @Benchmark
+  public int getInt() {
+    return getInt.getInt();
+  }
+
+  @Benchmark
+  public String getMutable() {
+    return getMutable.get();
+  }
+
+  @Benchmark
+  public Object getFromSnapshot() {
+    return Flags.snapshot().get(getInteger);
+  }
+
+}
@@ -0,0 +1,137 @@
+package me.kennyyu.flags;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * Measures the parse of a large argument list, passed either directly or in
+ * an {@link ArgsFile}: tokenizing the arguments into
+ * {@link Flags.ProvidedValues}, as parse does, and a whole parse, which also
+ * converts and writes the values.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParseBenchmark {
+
+  @FlagInfo(help = "parseInt", environment = "benchParse")
+  static final IntFlag parseInt = Flags.valueOf(0);
+
+  @FlagInfo(help = "parseString", altName = "s", environment = "benchParse")
+  static final Flag<String> parseString = Flags.valueOf("");
+
+  @FlagInfo(help = "parseBoolean", environment = "benchParse")
+  static final BooleanFlag parseBoolean = Flags.valueOf(false);
+
+  @FlagInfo(help = "parseList", environment = "benchParse")
+  static final Flag<List<Long>> parseList =
+      Flags.valueOf(ImmutableList.<Long>of());
+
+  @FlagInfo(help = "parseMap", environment = "benchParse")
+  static final Flag<Map<String, Integer>> parseMap =
+      Flags.valueOf(ImmutableMap.<String, Integer>of());
+
+  @Param({"100", "10000"})
+  public int argCount;
+
+  private FlagRegistry registry;
+  private String[] args;
+  private Path argsFile;
+  private FlagParser parser;
+
+  @Setup
+  public void setUp() throws Exception {
+    List<Field> fields = Lists.newArrayList();
+    for (Field field : ParseBenchmark.class.getDeclaredFields()) {
+      if (field.isAnnotationPresent(FlagInfo.class)) {
+        fields.add(field);
+      }
+    }
+    registry = FlagRegistry.build(fields);
+
+    String[] templates = {
+        "--parseInt=%d",
+        "-s=value%d",
+        "--parseBoolean",
+        "--parseList=%d,2,3",
+        "--parseMap=\"a:%d b:2\"",
+        "positional%d",
+    };
+    args = new String[argCount];
+    for (int i = 0; i < argCount; i++) {
+      args[i] = String.format(templates[i % templates.length], i);
+    }
+    argsFile = Files.createTempFile("flags-bench", ".args");
+    Files.write(argsFile,
+        Joiner.on('\n').join(args).getBytes(StandardCharsets.UTF_8));
+    parser = Flags.parser().environments("benchParse").argsFiles(true);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(argsFile);
+  }
+
+  @Benchmark
+  public Flags.ProvidedValues tokenize() throws FlagException {
+    Flags.ProvidedValues provided = new Flags.ProvidedValues(registry);
+    ArgumentScanner scanner = new ArgumentScanner();
+    for (String arg : args) {
+      provided.scan(scanner, arg, 0, arg.length());
+    }
+    return provided;
+  }
+
+  @Benchmark
+  public Flags.ProvidedValues tokenizeArgsFile() throws FlagException {
+    Flags.ProvidedValues provided = new Flags.ProvidedValues(registry);
+    ArgumentScanner scanner = new ArgumentScanner();
+    ArgsFile file = ArgsFile.read(argsFile);
+    while (file.next()) {
+      provided.scan(scanner, file.getChars(), file.getStart(), file.getEnd());
+    }
+    return provided;
+  }
+
+  @Benchmark
+  public int parse() throws FlagException {
+    parser.parseWithExceptions(args);
+    return parseInt.getInt();
+  }
+
+  @Benchmark
+  public int parseArgsFile() throws FlagException {
+    parser.parseWithExceptions(new String[] {"@" + argsFile});
+    return parseInt.getInt();
+  }
+
+}
@@ -0,0 +1,133 @@
+package me.kennyyu.flags;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Measures the discovery of flags, {@link Flags#getAnnotatedFields}, on a
+ * synthetic classpath entry of generated classes with one flag each. The
+ * classes are compiled with {@link FlagInfoProcessor}, so that both the
+ * generated index and the classpath scan can be measured.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+
+  private static final String PACKAGE = "bench.scan";
+
+  @Param({"10", "100", "1000"})
+  public int classCount;
+
+  @Param({"false", "true"})
+  public boolean classpathScan;
+
+  private File directory;
+  private URLClassLoader classLoader;
+  private FlagParser parser;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("flags-bench").toFile();
+    File sourceDirectory = new File(directory, "src");
+    File classDirectory = new File(directory, "classes");
+    File packageDirectory =
+        new File(sourceDirectory, PACKAGE.replace('.', File.separatorChar));
+    packageDirectory.mkdirs();
+    classDirectory.mkdirs();
+
+    List<String> arguments = Lists.newArrayList(
+        "-classpath", System.getProperty("java.class.path"),
+        "-d", classDirectory.getPath());
+    for (int i = 0; i < classCount; i++) {
+      File source = new File(packageDirectory, "Flags" + i + ".java");
+      Files.write(source.toPath(), ("package " + PACKAGE + ";\n"
+          + "import me.kennyyu.flags.*;\n"
+          + "public class Flags" + i + " {\n"
+          + "  @FlagInfo(help = \"flag" + i + "\", environment = \"bench\")\n"
+          + "  static final Flag<Integer> flag" + i + " = Flags.valueOf(0);\n"
+          + "}\n").getBytes(StandardCharsets.UTF_8));
+      arguments.add(source.getPath());
+    }
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null
+        || compiler.run(null, null, null, arguments.toArray(new String[0]))
+            != 0) {
+      throw new IllegalStateException("cannot compile the synthetic flags");
+    }
+
+    classLoader = new URLClassLoader(
+        new URL[] {classDirectory.toURI().toURL()},
+        ScanBenchmark.class.getClassLoader());
+    parser = Flags.parser()
+        .environments("bench")
+        .scanPackages(PACKAGE)
+        .classpathScan(classpathScan);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    classLoader.close();
+    delete(directory);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  @Benchmark
+  public Set<Field> getAnnotatedFields() throws FlagException {
+    Thread thread = Thread.currentThread();
+    ClassLoader contextClassLoader = thread.getContextClassLoader();
+    thread.setContextClassLoader(classLoader);
+    try {
+      Set<Field> fields = Flags.getAnnotatedFields(parser);
+      if (fields.size() != classCount) {
+        throw new IllegalStateException(
+            "found " + fields.size() + " of " + classCount + " flags");
+      }
+      return fields;
+    } finally {
+      thread.setContextClassLoader(contextClassLoader);
+    }
+  }
+
+}
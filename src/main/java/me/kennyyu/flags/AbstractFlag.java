@@ -0,0 +1,133 @@
+package me.kennyyu.flags;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Base class of the {@link Flag} implementations created by {@link Flags},
+ * which the parser updates in place instead of writing the field holding the
+ * flag, and which support listeners. Changes are recorded for
+ * {@link FlagsMBean}. Reads are only counted if the
+ * {@value Flags#COUNT_READS_PROPERTY} system property is "true" when the
+ * class is loaded, since counting writes to shared memory on every read; a
+ * {@link LongAdder} then keeps the count cheap when many threads read the
+ * same flag.
+ *
+ * @param <T> the type this flag holds.
+ * @author kennyyu (Kenny Yu)
+ */
+abstract class AbstractFlag<T> implements Flag<T> {
+
+  /**
+   * Whether reads are counted, read once so that the JIT removes the count
+   * from every read when it is disabled.
+   */
+  private static final boolean COUNT_READS =
+      Boolean.getBoolean(Flags.COUNT_READS_PROPERTY);
+
+  private final List<Consumer<FlagChange<T>>> listeners =
+      new CopyOnWriteArrayList<Consumer<FlagChange<T>>>();
+  /** The number of reads, or null if reads are not counted */
+  private final LongAdder reads = COUNT_READS ? new LongAdder() : null;
+  private volatile long lastChangedMillis = 0;
+  /** The number of updates so far, guarded by this flag */
+  private long changes = 0;
+  /** The last change dispatched, only accessed by the dispatcher thread */
+  private long dispatchedChange = 0;
+
+  /**
+   * Replaces the value of this flag, and returns the previous value.
+   */
+  abstract T getAndSet(T value);
+
+  /**
+   * Returns the value of this flag without counting a read, or its
+   * {@link LazyValue} if the value has not been converted yet.
+   */
+  abstract Object peek();
+
+  /**
+   * Replaces the value of this flag.
+   * @return the change to dispatch to the listeners of this flag, or null if
+   *     there are no listeners
+   */
+  final FlagChange<T> update(T value) {
+    T oldValue;
+    long change;
+    // the change is numbered with the swap, so that the dispatcher can drop
+    // changes enqueued after a later one
+    synchronized (this) {
+      oldValue = getAndSet(value);
+      change = ++changes;
+    }
+    markChanged();
+    if (listeners.isEmpty()) {
+      return null;
+    }
+    return new FlagChange<T>(this, oldValue, value, change);
+  }
+
+  /**
+   * Returns whether the change is later than every change of this flag
+   * dispatched so far, and records it as dispatched if so. Only called by
+   * {@link FlagChangeDispatcher}.
+   */
+  final boolean markDispatched(FlagChange<T> change) {
+    if (change.getChange() <= dispatchedChange) {
+      return false;
+    }
+    dispatchedChange = change.getChange();
+    return true;
+  }
+
+  /**
+   * Counts one read of the value of this flag, if reads are counted.
+   */
+  final void countRead() {
+    if (COUNT_READS) {
+      reads.increment();
+    }
+  }
+
+  /**
+   * Returns the number of reads of the value of this flag so far, or -1 if
+   * reads are not counted.
+   */
+  final long getReadCount() {
+    return COUNT_READS ? reads.sum() : -1;
+  }
+
+  /**
+   * Records that the value of this flag changed now.
+   */
+  final void markChanged() {
+    lastChangedMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * Returns the time of the last change of the value of this flag, in
+   * milliseconds since the epoch, or 0 if it never changed.
+   */
+  final long getLastChangedMillis() {
+    return lastChangedMillis;
+  }
+
+  List<Consumer<FlagChange<T>>> getListeners() {
+    return listeners;
+  }
+
+  @Override
+  public void addListener(Consumer<FlagChange<T>> listener) {
+    listeners.add(Preconditions.checkNotNull(listener));
+  }
+
+  @Override
+  public void removeListener(Consumer<FlagChange<T>> listener) {
+    listeners.remove(listener);
+  }
+
+}
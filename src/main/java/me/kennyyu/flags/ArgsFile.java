@@ -0,0 +1,174 @@
+package me.kennyyu.flags;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Arguments read from a file passed as "@path". The file is read with a
+ * single read, decoded as UTF-8 into a single {@link CharBuffer}, and is then
+ * split into arguments one at a time as index ranges of that buffer, without
+ * copying them into strings:
+ * <pre>
+ * <code>
+ *    ArgsFile file = ArgsFile.read(path);
+ *    while (file.next()) {
+ *      scanner.scan(file.getChars(), file.getStart(), file.getEnd());
+ *    }
+ * </code>
+ * </pre>
+ *
+ * Arguments are separated by whitespace. Single or double quotes group
+ * whitespace into an argument and are removed, e.g.
+ * {@code --map="a:1 b:2"}. An argument starting with "#" starts a comment
+ * that extends to the end of the line. Arguments in the file are not
+ * expanded again if they start with "@".
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class ArgsFile {
+
+  private final Path path;
+  private final CharBuffer chars;
+  private final char[] array;
+  private final int limit;
+  private int position;
+  private int start;
+  private int end;
+
+  private ArgsFile(Path path, CharBuffer chars) {
+    this.path = path;
+    this.chars = chars;
+    this.array = chars.array();
+    this.limit = chars.limit();
+  }
+
+  /**
+   * Returns the path of the arguments file named by arg, i.e. of the
+   * regular file after its leading "@", or null if arg does not name one and
+   * is an ordinary argument.
+   */
+  static Path getPath(String arg) {
+    if (arg.length() < 2 || arg.charAt(0) != '@') {
+      return null;
+    }
+    Path path;
+    try {
+      path = Paths.get(arg.substring(1));
+    } catch (InvalidPathException e) {
+      return null;
+    }
+    return Files.isRegularFile(path) ? path : null;
+  }
+
+  /**
+   * Reads and decodes the file.
+   * @throws FlagException if the file cannot be read, is larger than 2GB, or
+   *     is not valid UTF-8
+   */
+  static ArgsFile read(Path path) throws FlagException {
+    try {
+      if (Files.size(path) > Integer.MAX_VALUE) {
+        throw new FlagException("arguments file too large: " + path);
+      }
+      ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+      // UTF-8 never decodes to more chars than bytes
+      CharBuffer chars = CharBuffer.allocate(bytes.remaining());
+      CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT);
+      CoderResult result = decoder.decode(bytes, chars, true);
+      if (result.isError()) {
+        result.throwException();
+      }
+      decoder.flush(chars);
+      chars.flip();
+      return new ArgsFile(path, chars);
+    } catch (CharacterCodingException e) {
+      throw new FlagException("arguments file is not UTF-8: " + path, e);
+    } catch (IOException e) {
+      throw new FlagException(e);
+    }
+  }
+
+  /**
+   * Returns the decoded contents of the file. Quotes are removed from the
+   * ranges returned by {@link #next()} in place, so characters outside of
+   * those ranges are undefined.
+   */
+  CharBuffer getChars() {
+    return chars;
+  }
+
+  /**
+   * Advances to the next argument, and returns whether there is one.
+   * @throws FlagException if the file ends inside a quote
+   */
+  boolean next() throws FlagException {
+    while (true) {
+      while (position < limit && Character.isWhitespace(array[position])) {
+        position++;
+      }
+      if (position == limit) {
+        return false;
+      }
+      if (array[position] != '#') {
+        break;
+      }
+      while (position < limit && array[position] != '\n') {
+        position++;
+      }
+    }
+    start = position;
+    // characters are shifted left over the removed quotes
+    int write = position;
+    char quote = 0;
+    for (; position < limit; position++) {
+      char c = array[position];
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else {
+          array[write++] = c;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (Character.isWhitespace(c)) {
+        break;
+      } else {
+        array[write++] = c;
+      }
+    }
+    if (quote != 0) {
+      throw new FlagException("unterminated quote in arguments file " + path);
+    }
+    end = write;
+    return true;
+  }
+
+  /**
+   * Returns the start (inclusive) of the current argument in
+   * {@link #getChars()}.
+   */
+  int getStart() {
+    return start;
+  }
+
+  /**
+   * Returns the end (exclusive) of the current argument in
+   * {@link #getChars()}.
+   */
+  int getEnd() {
+    return end;
+  }
+
+}
@@ -0,0 +1,144 @@
+package me.kennyyu.flags;
+
+/**
+ * Splits a command line argument of the form "--name=value" or "-name=value"
+ * into index ranges, in a single pass and without creating substrings. A
+ * scanner is reused for all arguments of one parse:
+ * <pre>
+ * <code>
+ *    ArgumentScanner scanner = new ArgumentScanner();
+ *    for (String arg : args) {
+ *      if (scanner.scan(arg)) {
+ *        lookup(arg, scanner.getNameStart(), scanner.getNameEnd());
+ *      }
+ *    }
+ * </code>
+ * </pre>
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class ArgumentScanner {
+
+  private int nameStart;
+  private int nameEnd;
+  private int valueStart;
+
+  /**
+   * Scans the argument, and returns whether it is a flag, i.e. whether it
+   * starts with "-". A flag without "=" has an empty value.
+   */
+  boolean scan(String arg) {
+    return scan(arg, 0, arg.length());
+  }
+
+  /**
+   * Same as {@link #scan(String)} for the argument between start (inclusive)
+   * and end (exclusive) of args, e.g. an argument of an {@link ArgsFile}.
+   * The returned indexes are indexes of args.
+   */
+  boolean scan(CharSequence args, int start, int end) {
+    if (start == end || args.charAt(start) != '-') {
+      return false;
+    }
+    boolean doubleDash = end - start > 1 && args.charAt(start + 1) == '-';
+    nameStart = doubleDash ? start + 2 : start + 1;
+    nameEnd = indexOf(args, '=', nameStart, end);
+    valueStart = nameEnd == end ? end : nameEnd + 1;
+    return true;
+  }
+
+  /**
+   * Returns the start (inclusive) of the name of the last scanned flag.
+   */
+  int getNameStart() {
+    return nameStart;
+  }
+
+  /**
+   * Returns the end (exclusive) of the name of the last scanned flag.
+   */
+  int getNameEnd() {
+    return nameEnd;
+  }
+
+  /**
+   * Returns the start of the value of the last scanned flag, which extends to
+   * the end of the argument.
+   */
+  int getValueStart() {
+    return valueStart;
+  }
+
+  /**
+   * Returns the index of the first c in value between start (inclusive) and
+   * end (exclusive), or end if there is none.
+   */
+  static int indexOf(CharSequence value, char c, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (value.charAt(i) == c) {
+        return i;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Returns the end of a list of elements separated by delimiter between
+   * start and end, once trailing empty elements are removed as
+   * {@link String#split(String)} does.
+   */
+  static int trimTrailingDelimiters(
+      CharSequence value, char delimiter, int start, int end) {
+    while (end > start && value.charAt(end - 1) == delimiter) {
+      end--;
+    }
+    return end;
+  }
+
+  /**
+   * Returns the number of elements separated by delimiter between start and
+   * end, which has no trailing delimiters.
+   */
+  static int countElements(
+      CharSequence value, char delimiter, int start, int end) {
+    if (start == end) {
+      return 0;
+    }
+    int count = 1;
+    for (int i = start; i < end; i++) {
+      if (value.charAt(i) == delimiter) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Returns whether the range of value is the same as string.
+   */
+  static boolean regionEquals(
+      CharSequence value, int start, int end, String string) {
+    if (end - start != string.length()) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (value.charAt(i) != string.charAt(i - start)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the same hash code as {@link String#hashCode()} would for the
+   * range of value.
+   */
+  static int hashCode(CharSequence value, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + value.charAt(i);
+    }
+    return hash;
+  }
+
+}
@@ -0,0 +1,28 @@
+package me.kennyyu.flags;
+
+/**
+ * {@link Flag} holding a primitive boolean, returned by
+ * {@link Flags#valueOf(boolean)}. Use {@link #getBoolean()} to read the value
+ * as a primitive:
+ * <pre>
+ * <code>
+ *    {@literal @}FlagInfo(help = "log every request")
+ *    private static final BooleanFlag verbose = Flags.valueOf(false);
+ * </code>
+ * </pre>
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public interface BooleanFlag extends Flag<Boolean> {
+
+  /**
+   * Returns the value of this flag
+   */
+  boolean getBoolean();
+
+  /**
+   * Returns the default value of this flag
+   */
+  boolean defaultBoolean();
+
+}
@@ -0,0 +1,79 @@
+package me.kennyyu.flags;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Implementation of {@link BooleanFlag} backed by a volatile boolean field, or
+ * by a slot of a {@link SharedFlagStore} once bound to one.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class BooleanFlagImpl extends AbstractFlag<Boolean>
+    implements BooleanFlag {
+  private volatile boolean value;
+  private final boolean defaultValue;
+  /** The buffer of a {@link SharedFlagStore} holding the value, or null */
+  private volatile ByteBuffer shared;
+  private int sharedOffset;
+
+  BooleanFlagImpl(boolean value) {
+    this.value = value;
+    this.defaultValue = value;
+  }
+
+  BooleanFlagImpl(boolean value, boolean defaultValue) {
+    this.value = value;
+    this.defaultValue = defaultValue;
+  }
+
+  @Override
+  public boolean getBoolean() {
+    countRead();
+    return read();
+  }
+
+  @Override
+  public boolean defaultBoolean() {
+    return defaultValue;
+  }
+
+  @Override
+  public Boolean get() {
+    return getBoolean();
+  }
+
+  @Override
+  public Boolean defaultValue() {
+    return defaultValue;
+  }
+
+  @Override
+  synchronized Boolean getAndSet(Boolean value) {
+    boolean oldValue = read();
+    this.value = value;
+    // the value written replaces the value in the store for this process
+    this.shared = null;
+    return oldValue;
+  }
+
+  @Override
+  Object peek() {
+    return read();
+  }
+
+  private boolean read() {
+    ByteBuffer shared = this.shared;
+    return shared == null ? value : shared.getInt(sharedOffset) != 0;
+  }
+
+  /**
+   * Reads the value from the slot at offset in buffer from now on, or from
+   * this flag again if buffer is null. Updating this flag unbinds it, so that
+   * readers see the updated value. Binding and updating hold the lock of this
+   * flag, so that an update is never lost to a concurrent bind.
+   */
+  synchronized void bind(ByteBuffer buffer, int offset) {
+    this.sharedOffset = offset;
+    this.shared = buffer;
+  }
+}
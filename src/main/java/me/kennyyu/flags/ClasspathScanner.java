@@ -0,0 +1,156 @@
+package me.kennyyu.flags;
+
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.reflections.Reflections;
+import org.reflections.scanners.FieldAnnotationsScanner;
+import org.reflections.scanners.TypeAnnotationsScanner;
+import org.reflections.scanners.TypesScanner;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.FilterBuilder;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Scans classpath entries with the Reflections library for fields annotated
+ * with {@link FlagInfo}, optionally restricted to a set of packages. Results
+ * may be cached on disk with a {@link ScanCache}, and the entries may be
+ * scanned in parallel, one task per URL, on an {@link ExecutorService}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class ClasspathScanner {
+
+  private final Set<URL> urls;
+  private final Set<String> packages;
+  private final ScanCache cache;
+  private final ExecutorService executor;
+
+  /**
+   * @param urls the classpath entries to scan
+   * @param packages the packages to scan within the entries, or an empty set
+   *     to scan every class
+   * @param cache cache for the scan results, or null to always scan
+   * @param executor executor on which to scan each URL, or null to scan all
+   *     URLs on the calling thread
+   */
+  ClasspathScanner(
+      Set<URL> urls,
+      Set<String> packages,
+      ScanCache cache,
+      ExecutorService executor) {
+    this.urls = urls;
+    this.packages = packages;
+    this.cache = cache;
+    this.executor = executor;
+  }
+
+  /**
+   * Returns all fields annotated with {@link FlagInfo} in the classpath
+   * entries, regardless of their environment.
+   * @throws FlagException if the scan of an entry fails or is interrupted
+   */
+  Set<Field> scan() throws FlagException {
+    String fingerprint = null;
+    if (cache != null) {
+      fingerprint = ScanCache.fingerprint(urls, packages);
+      Set<Field> fields = loadCachedFields(fingerprint);
+      if (fields != null) {
+        return fields;
+      }
+    }
+
+    Set<Field> fields = executor == null ? scan(urls) : scanInParallel();
+    if (cache != null) {
+      List<String> coordinates = Lists.newArrayList();
+      for (Field field : fields) {
+        coordinates.add(
+            field.getDeclaringClass().getName() + "#" + field.getName());
+      }
+      cache.store(fingerprint, coordinates);
+    }
+    return fields;
+  }
+
+  /**
+   * Scans each URL in a separate task and merges the results.
+   */
+  private Set<Field> scanInParallel() throws FlagException {
+    List<Future<Set<Field>>> futures = Lists.newArrayList();
+    for (final URL url : urls) {
+      futures.add(executor.submit(new Callable<Set<Field>>() {
+        @Override
+        public Set<Field> call() {
+          return scan(ImmutableSet.of(url));
+        }
+      }));
+    }
+    Set<Field> fields = Sets.newHashSet();
+    try {
+      for (Future<Set<Field>> future : futures) {
+        fields.addAll(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new FlagException(e);
+    } catch (ExecutionException e) {
+      throw new FlagException(e.getCause());
+    } finally {
+      for (Future<Set<Field>> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return fields;
+  }
+
+  private Set<Field> scan(Collection<URL> urls) {
+    ConfigurationBuilder builder = new ConfigurationBuilder()
+        .setUrls(urls)
+        .setScanners(
+            new TypeAnnotationsScanner(),
+            new TypesScanner(),
+            new FieldAnnotationsScanner());
+    if (!packages.isEmpty()) {
+      FilterBuilder filter = new FilterBuilder();
+      for (String packageName : packages) {
+        filter.include(FilterBuilder.prefix(packageName + "."));
+      }
+      builder.filterInputsBy(filter);
+    }
+    Reflections reflections = new Reflections(builder);
+    return Sets.newHashSet(
+        reflections.getFieldsAnnotatedWith(FlagInfo.class));
+  }
+
+  /**
+   * Returns the fields stored in the cache for the fingerprint, or null if
+   * the cache misses or refers to fields that no longer exist.
+   */
+  private Set<Field> loadCachedFields(String fingerprint) {
+    List<String> coordinates = cache.load(fingerprint);
+    if (coordinates == null) {
+      return null;
+    }
+    ClassLoader classLoader = Flags.getFlagClassLoader();
+    Set<Field> fields = Sets.newHashSet();
+    for (String coordinate : coordinates) {
+      try {
+        fields.add(Flags.loadField(coordinate, classLoader));
+      } catch (FlagException e) {
+        return null;
+      }
+    }
+    return fields;
+  }
+
+}
@@ -0,0 +1,375 @@
+package me.kennyyu.flags;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Converts the values of {@link List}, {@link Set} and {@link Map} flags from
+ * a range of a {@link CharSequence}, e.g. an argument or the
+ * {@link java.nio.CharBuffer} of an {@link ArgsFile}. Each element is
+ * converted from its own range as the delimiters are found, so the value is
+ * never split into substrings. The collections are sized up front
+ * from a count of the delimiters, which is much cheaper than converting the
+ * elements, so that large values are not copied while the collection grows.
+ * <br><br>
+ *
+ * Flag values are never modified once parsed, so by default they are
+ * returned as exactly sized immutable collections, and maps with at least
+ * {@link #COMPACT_MAP_SIZE} entries as a {@link CompactImmutableMap}.
+ * Mutable collections are returned instead if requested with
+ * {@link FlagParser#mutableCollections(boolean)}. Immutable collections
+ * cannot hold null elements, so a converter returning null for one fails the
+ * parse.<br><br>
+ *
+ * Collections may be nested, e.g. a Map&lt;String, List&lt;Integer&gt;&gt;,
+ * with the converters returned by {@link #listConverter},
+ * {@link #setConverter} and {@link #mapConverter}, as long as each nested
+ * collection has delimiters different from those of the collections around
+ * it.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class CollectionParser {
+
+  /**
+   * Number of entries from which maps are held in a
+   * {@link CompactImmutableMap} rather than an {@link ImmutableMap}.
+   */
+  static final int COMPACT_MAP_SIZE = 64;
+
+  private CollectionParser() {}
+
+  /**
+   * Returns a converter of lists of elements separated by delimiter.
+   */
+  static <T> FlagConverter<List<T>> listConverter(
+      final FlagConverter<T> elementConverter,
+      final char delimiter,
+      final boolean mutable) {
+    return new FlagConverter<List<T>>() {
+      @Override
+      public List<T> convert(String value) throws FlagException {
+        return convert(value, 0, value.length());
+      }
+
+      @Override
+      public List<T> convert(CharSequence value, int start, int end)
+          throws FlagException {
+        return parseList(
+            value, start, end, elementConverter, delimiter, mutable);
+      }
+    };
+  }
+
+  /**
+   * Returns a converter of sets of elements separated by delimiter.
+   */
+  static <T> FlagConverter<Set<T>> setConverter(
+      final FlagConverter<T> elementConverter,
+      final char delimiter,
+      final boolean mutable) {
+    return new FlagConverter<Set<T>>() {
+      @Override
+      public Set<T> convert(String value) throws FlagException {
+        return convert(value, 0, value.length());
+      }
+
+      @Override
+      public Set<T> convert(CharSequence value, int start, int end)
+          throws FlagException {
+        return parseSet(
+            value, start, end, elementConverter, delimiter, mutable);
+      }
+    };
+  }
+
+  /**
+   * Returns a converter of maps of entries separated by entryDelimiter,
+   * whose keys and values are separated by keyValueDelimiter.
+   */
+  static <K, V> FlagConverter<Map<K, V>> mapConverter(
+      final FlagConverter<K> keyConverter,
+      final FlagConverter<V> valueConverter,
+      final char entryDelimiter,
+      final char keyValueDelimiter,
+      final boolean mutable) {
+    return new FlagConverter<Map<K, V>>() {
+      @Override
+      public Map<K, V> convert(String value) throws FlagException {
+        return convert(value, 0, value.length());
+      }
+
+      @Override
+      public Map<K, V> convert(CharSequence value, int start, int end)
+          throws FlagException {
+        return parseMap(value, start, end, keyConverter, valueConverter,
+            entryDelimiter, keyValueDelimiter, mutable);
+      }
+    };
+  }
+
+  /**
+   * Returns a {@link List} of the values separated by delimiter between
+   * start and end.
+   * @param converter the converter for the type nested in the list
+   * @param mutable whether to return an {@link java.util.ArrayList} instead
+   *     of an {@link ImmutableList}
+   * @throws FlagException if a value cannot be converted
+   */
+  static <T> List<T> parseList(
+      CharSequence value,
+      int start,
+      int end,
+      FlagConverter<T> converter,
+      char delimiter,
+      boolean mutable) throws FlagException {
+    end = ArgumentScanner.trimTrailingDelimiters(value, delimiter, start, end);
+    int count = ArgumentScanner.countElements(value, delimiter, start, end);
+    if (mutable) {
+      return parseElements(Lists.<T>newArrayListWithCapacity(count),
+          value, start, end, converter, delimiter);
+    }
+    return newList(
+        parseElements(count, value, start, end, converter, delimiter), false);
+  }
+
+  /**
+   * Returns a {@link Set} of the values separated by delimiter between start
+   * and end.
+   * @param converter the converter for the type nested in the set
+   * @param mutable whether to return a {@link java.util.HashSet} instead of
+   *     an {@link ImmutableSet}
+   * @throws FlagException if a value cannot be converted
+   */
+  static <T> Set<T> parseSet(
+      CharSequence value,
+      int start,
+      int end,
+      FlagConverter<T> converter,
+      char delimiter,
+      boolean mutable) throws FlagException {
+    end = ArgumentScanner.trimTrailingDelimiters(value, delimiter, start, end);
+    int count = ArgumentScanner.countElements(value, delimiter, start, end);
+    if (mutable) {
+      return parseElements(Sets.<T>newHashSetWithExpectedSize(count),
+          value, start, end, converter, delimiter);
+    }
+    return newSet(
+        parseElements(count, value, start, end, converter, delimiter), false);
+  }
+
+  /**
+   * Returns an array of the count values separated by delimiter between
+   * start and end, which has no trailing delimiters, for an immutable
+   * collection.
+   */
+  private static Object[] parseElements(
+      int count,
+      CharSequence value,
+      int start,
+      int end,
+      FlagConverter<?> converter,
+      char delimiter) throws FlagException {
+    Object[] elements = new Object[count];
+    int i = 0;
+    for (int position = start; position < end; ) {
+      int next = ArgumentScanner.indexOf(value, delimiter, position, end);
+      elements[i++] = checkNotNull(
+          converter.convert(value, position, next), value, position, next);
+      position = next + 1;
+    }
+    return elements;
+  }
+
+  /**
+   * Adds the values separated by delimiter between start and end, which has
+   * no trailing delimiters, to elements.
+   */
+  private static <T, C extends Collection<T>> C parseElements(
+      C elements,
+      CharSequence value,
+      int start,
+      int end,
+      FlagConverter<T> converter,
+      char delimiter) throws FlagException {
+    for (int position = start; position < end; ) {
+      int next = ArgumentScanner.indexOf(value, delimiter, position, end);
+      elements.add(converter.convert(value, position, next));
+      position = next + 1;
+    }
+    return elements;
+  }
+
+  /**
+   * Returns a {@link Map} containing the entries between start and end,
+   * formatted in the form "key1:value1 key2:value2 ..." with the default
+   * delimiters. The entries may be enclosed in double quotes.
+   * @param keyConverter the converter for the type of the Key
+   * @param valueConverter the converter for the type of the Value
+   * @param entryDelimiter the delimiter between entries, e.g. ' '
+   * @param keyValueDelimiter the delimiter between the key and the value of
+   *     an entry, e.g. ':'
+   * @param mutable whether to return a {@link java.util.HashMap} instead of
+   *     an immutable map
+   * @throws FlagException if the map string is not properly formatted or if a
+   *    key or value cannot be converted
+   */
+  static <K, V> Map<K, V> parseMap(
+      CharSequence value,
+      int start,
+      int end,
+      FlagConverter<K> keyConverter,
+      FlagConverter<V> valueConverter,
+      char entryDelimiter,
+      char keyValueDelimiter,
+      boolean mutable) throws FlagException {
+    if (end - start >= 2
+        && value.charAt(start) == '"'
+        && value.charAt(end - 1) == '"') {
+      start++;
+      end--;
+    }
+    end = ArgumentScanner.trimTrailingDelimiters(
+        value, entryDelimiter, start, end);
+    int count =
+        ArgumentScanner.countElements(value, entryDelimiter, start, end);
+    Object[] keys = new Object[count];
+    Object[] values = new Object[count];
+    int i = 0;
+    for (int position = start; position < end; ) {
+      int next = ArgumentScanner.indexOf(value, entryDelimiter, position, end);
+      int colon =
+          ArgumentScanner.indexOf(value, keyValueDelimiter, position, next);
+      if (colon == next || ArgumentScanner.indexOf(
+          value, keyValueDelimiter, colon + 1, next) != next) {
+        throw new IllegalFlagFormatException(
+            value.subSequence(position, next).toString());
+      }
+      keys[i] = keyConverter.convert(value, position, colon);
+      values[i] = valueConverter.convert(value, colon + 1, next);
+      if (!mutable) {
+        checkNotNull(keys[i], value, position, colon);
+        checkNotNull(values[i], value, colon + 1, next);
+      }
+      i++;
+      position = next + 1;
+    }
+
+    return newMap(keys, values, count, mutable);
+  }
+
+  /**
+   * Returns a {@link List} of the elements, as returned by
+   * {@link #parseList}.
+   * @param mutable whether to return an {@link java.util.ArrayList} instead
+   *     of an {@link ImmutableList}
+   */
+  @SuppressWarnings("unchecked")
+  static <T> List<T> newList(Object[] elements, boolean mutable) {
+    if (mutable) {
+      List<T> list = Lists.newArrayListWithCapacity(elements.length);
+      for (Object element : elements) {
+        list.add((T) element);
+      }
+      return list;
+    }
+    return (List<T>) ImmutableList.copyOf(elements);
+  }
+
+  /**
+   * Returns a {@link Set} of the elements, as returned by {@link #parseSet}.
+   * @param mutable whether to return a {@link java.util.HashSet} instead of
+   *     an {@link ImmutableSet}
+   */
+  @SuppressWarnings("unchecked")
+  static <T> Set<T> newSet(Object[] elements, boolean mutable) {
+    if (mutable) {
+      Set<T> set = Sets.newHashSetWithExpectedSize(elements.length);
+      for (Object element : elements) {
+        set.add((T) element);
+      }
+      return set;
+    }
+    return (Set<T>) ImmutableSet.copyOf(elements);
+  }
+
+  /**
+   * Returns a {@link Map} of the first count keys and values, as returned by
+   * {@link #parseMap}. Later duplicate keys replace earlier ones.
+   * @param mutable whether to return a {@link java.util.HashMap} instead of
+   *     an immutable map
+   */
+  static <K, V> Map<K, V> newMap(
+      Object[] keys, Object[] values, int count, boolean mutable) {
+    if (mutable) {
+      Map<K, V> elements = Maps.newHashMapWithExpectedSize(count);
+      for (int i = 0; i < count; i++) {
+        @SuppressWarnings("unchecked")
+        K key = (K) keys[i];
+        @SuppressWarnings("unchecked")
+        V entryValue = (V) values[i];
+        elements.put(key, entryValue);
+      }
+      return elements;
+    }
+    if (count >= COMPACT_MAP_SIZE) {
+      return CompactImmutableMap.copyOf(keys, values, count);
+    }
+    ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+    for (int i = 0; i < count; i++) {
+      @SuppressWarnings("unchecked")
+      K key = (K) keys[i];
+      @SuppressWarnings("unchecked")
+      V entryValue = (V) values[i];
+      builder.put(key, entryValue);
+    }
+    try {
+      return builder.build();
+    } catch (IllegalArgumentException e) {
+      // later duplicate keys replace earlier ones, which only
+      // CompactImmutableMap does
+      return ImmutableMap.copyOf(
+          CompactImmutableMap.copyOf(keys, values, count));
+    }
+  }
+
+  /**
+   * Returns the element converted from the range of value between start and
+   * end, which immutable collections cannot hold if it is null.
+   * @throws NullElementException if element is null
+   */
+  private static Object checkNotNull(
+      Object element, CharSequence value, int start, int end)
+      throws NullElementException {
+    if (element == null) {
+      throw new NullElementException(
+          value.subSequence(start, end).toString());
+    }
+    return element;
+  }
+
+  /**
+   * Thrown when a converter returns null for an element of an immutable
+   * collection. {@link Flags#convertValue} replaces it by an exception naming
+   * the flag.
+   */
+  static final class NullElementException extends FlagException {
+
+    private static final long serialVersionUID = -3046581624089356126L;
+
+    NullElementException(String element) {
+      super("converted \"" + element + "\" to null");
+    }
+
+  }
+
+}
@@ -0,0 +1,166 @@
+package me.kennyyu.flags;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.UnmodifiableIterator;
+
+/**
+ * Immutable {@link Map} for the values of large map flags, which are parsed
+ * once and then only read. The keys and values are held in two arrays of
+ * exactly the size of the map, in the order in which they were passed, and
+ * are found through an open addressing table of indexes into those arrays.
+ * Compared to a {@link java.util.HashMap} or an
+ * {@link com.google.common.collect.ImmutableMap}, there is no entry object
+ * per key, and a lookup probes an int array instead of following a chain of
+ * entries. Null keys and values are not allowed.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class CompactImmutableMap<K, V> extends AbstractMap<K, V> {
+
+  private final Object[] keys;
+  private final Object[] values;
+
+  /*
+   * The index in keys of the entry in each slot plus one, or 0 if the slot is
+   * empty. The length of the table is a power of two at least twice the
+   * number of entries.
+   */
+  private final int[] table;
+
+  private Set<Entry<K, V>> entrySet;
+
+  private CompactImmutableMap(Object[] keys, Object[] values, int[] table) {
+    this.keys = keys;
+    this.values = values;
+    this.table = table;
+  }
+
+  /**
+   * Returns a map of the first size keys and values. If a key occurs more
+   * than once, its last value is used at the position of its first
+   * occurrence. The map takes ownership of the arrays.
+   * @throws NullPointerException if a key or value is null
+   */
+  static <K, V> CompactImmutableMap<K, V> copyOf(
+      Object[] keys, Object[] values, int size) {
+    int[] table = new int[Integer.highestOneBit(Math.max(1, size) * 4 - 1)];
+    int mask = table.length - 1;
+    int distinct = 0;
+    for (int i = 0; i < size; i++) {
+      Object key = Preconditions.checkNotNull(keys[i]);
+      Object value = Preconditions.checkNotNull(values[i]);
+      int slot = smear(key.hashCode()) & mask;
+      while (true) {
+        int index = table[slot] - 1;
+        if (index < 0) {
+          table[slot] = distinct + 1;
+          keys[distinct] = key;
+          values[distinct] = value;
+          distinct++;
+          break;
+        } else if (keys[index].equals(key)) {
+          values[index] = value;
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+    if (distinct < keys.length) {
+      keys = Arrays.copyOf(keys, distinct);
+      values = Arrays.copyOf(values, distinct);
+    }
+    return new CompactImmutableMap<K, V>(keys, values, table);
+  }
+
+  /**
+   * Spreads the bits of a hash code, as {@link java.util.HashMap} does, so
+   * that keys whose hash codes only differ in the high bits do not collide.
+   */
+  private static int smear(int hashCode) {
+    return Integer.rotateLeft(hashCode * 0xcc9e2d51, 15) * 0x1b873593;
+  }
+
+  private int indexOf(Object key) {
+    if (key == null) {
+      return -1;
+    }
+    int mask = table.length - 1;
+    int slot = smear(key.hashCode()) & mask;
+    int index;
+    while ((index = table[slot] - 1) >= 0) {
+      if (keys[index].equals(key)) {
+        return index;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  @Override
+  public int size() {
+    return keys.length;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    int index = indexOf(key);
+    return index < 0 ? null : (V) values[index];
+  }
+
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    Set<Entry<K, V>> result = entrySet;
+    if (result == null) {
+      result = entrySet = new EntrySet();
+    }
+    return result;
+  }
+
+  private final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+    @Override
+    public Iterator<Entry<K, V>> iterator() {
+      return new UnmodifiableIterator<Entry<K, V>>() {
+        private int index = 0;
+
+        @Override
+        public boolean hasNext() {
+          return index < keys.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          Entry<K, V> entry = new SimpleImmutableEntry<K, V>(
+              (K) keys[index], (V) values[index]);
+          index++;
+          return entry;
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return keys.length;
+    }
+
+  }
+
+}
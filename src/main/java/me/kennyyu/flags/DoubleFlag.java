@@ -0,0 +1,28 @@
+package me.kennyyu.flags;
+
+/**
+ * {@link Flag} holding a primitive double, returned by
+ * {@link Flags#valueOf(double)}. Use {@link #getDouble()} to read the value
+ * without boxing it:
+ * <pre>
+ * <code>
+ *    {@literal @}FlagInfo(help = "fraction of requests to sample")
+ *    private static final DoubleFlag sampleRate = Flags.valueOf(0.01);
+ * </code>
+ * </pre>
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public interface DoubleFlag extends Flag<Double> {
+
+  /**
+   * Returns the value of this flag
+   */
+  double getDouble();
+
+  /**
+   * Returns the default value of this flag
+   */
+  double defaultDouble();
+
+}
@@ -0,0 +1,78 @@
+package me.kennyyu.flags;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Implementation of {@link DoubleFlag} backed by a volatile double field, or
+ * by a slot of a {@link SharedFlagStore} once bound to one.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class DoubleFlagImpl extends AbstractFlag<Double> implements DoubleFlag {
+  private volatile double value;
+  private final double defaultValue;
+  /** The buffer of a {@link SharedFlagStore} holding the value, or null */
+  private volatile ByteBuffer shared;
+  private int sharedOffset;
+
+  DoubleFlagImpl(double value) {
+    this.value = value;
+    this.defaultValue = value;
+  }
+
+  DoubleFlagImpl(double value, double defaultValue) {
+    this.value = value;
+    this.defaultValue = defaultValue;
+  }
+
+  @Override
+  public double getDouble() {
+    countRead();
+    return read();
+  }
+
+  @Override
+  public double defaultDouble() {
+    return defaultValue;
+  }
+
+  @Override
+  public Double get() {
+    return getDouble();
+  }
+
+  @Override
+  public Double defaultValue() {
+    return defaultValue;
+  }
+
+  @Override
+  synchronized Double getAndSet(Double value) {
+    double oldValue = read();
+    this.value = value;
+    // the value written replaces the value in the store for this process
+    this.shared = null;
+    return oldValue;
+  }
+
+  @Override
+  Object peek() {
+    return read();
+  }
+
+  private double read() {
+    ByteBuffer shared = this.shared;
+    return shared == null ? value : shared.getDouble(sharedOffset);
+  }
+
+  /**
+   * Reads the value from the slot at offset in buffer from now on, or from
+   * this flag again if buffer is null. Updating this flag unbinds it, so that
+   * readers see the updated value. Binding and updating hold the lock of this
+   * flag, so that an update is never lost to a concurrent bind.
+   */
+  synchronized void bind(ByteBuffer buffer, int offset) {
+    this.sharedOffset = offset;
+    this.shared = buffer;
+  }
+}
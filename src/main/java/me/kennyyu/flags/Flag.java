@@ -1,5 +1,7 @@
 package me.kennyyu.flags;
 
+import java.util.function.Consumer;
+
 /**
  * Interface for wrapping values in flags. In order to make a flag active, the
  * flag must be annotated with {@link FlagInfo}, and
@@ -21,4 +23,24 @@ public interface Flag<T> {
    */
   T defaultValue();
 
+  /**
+   * Adds a listener notified of each change of the value of this flag, e.g.
+   * to resize a pool when a size flag is reloaded from a flag file.
+   * Listeners run on a dedicated thread shared by all flags: the changes made
+   * by one update, such as one reload, are delivered together and in order,
+   * and updates are delivered in the order they were made. Listeners should
+   * return quickly, since they delay the listeners of later changes.
+   * @throws UnsupportedOperationException if this flag was not created by
+   *     {@link Flags}
+   */
+  default void addListener(Consumer<FlagChange<T>> listener) {
+    throw new UnsupportedOperationException(
+        "only flags created by Flags support listeners");
+  }
+
+  /**
+   * Removes a listener added with {@link #addListener(Consumer)}.
+   */
+  default void removeListener(Consumer<FlagChange<T>> listener) {}
+
 }
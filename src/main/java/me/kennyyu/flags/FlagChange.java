@@ -0,0 +1,58 @@
+package me.kennyyu.flags;
+
+/**
+ * A change of the value of a {@link Flag}, passed to the listeners added with
+ * {@link Flag#addListener(java.util.function.Consumer)}.
+ *
+ * @param <T> the type the flag holds.
+ * @author kennyyu (Kenny Yu)
+ */
+public final class FlagChange<T> {
+
+  private final Flag<T> flag;
+  private final T oldValue;
+  private final T newValue;
+  private final long change;
+
+  /**
+   * @param change the number of updates of the flag up to this one
+   */
+  FlagChange(Flag<T> flag, T oldValue, T newValue, long change) {
+    this.flag = flag;
+    this.oldValue = oldValue;
+    this.newValue = newValue;
+    this.change = change;
+  }
+
+  /**
+   * Returns the flag that changed.
+   */
+  public Flag<T> getFlag() {
+    return flag;
+  }
+
+  /**
+   * Returns the value of the flag before the change.
+   */
+  public T getOldValue() {
+    return oldValue;
+  }
+
+  /**
+   * Returns the value of the flag after the change. The flag may have changed
+   * again by the time the listener runs.
+   */
+  public T getNewValue() {
+    return newValue;
+  }
+
+  long getChange() {
+    return change;
+  }
+
+  @Override
+  public String toString() {
+    return "FlagChange(" + oldValue + " -> " + newValue + ")";
+  }
+
+}
@@ -0,0 +1,68 @@
+package me.kennyyu.flags;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs flag listeners on a dedicated daemon thread. The changes made by one
+ * update, e.g. one parse or one reload of the flag file, are dispatched as a
+ * single batch, and batches are dispatched in the order they were enqueued.
+ * A change enqueued after a later change of the same flag, e.g. by a
+ * concurrent update, is dropped, so that listeners never see a flag go back
+ * to an older value. Threads updating or reading flags only enqueue batches,
+ * so slow listeners never block them.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class FlagChangeDispatcher {
+  private FlagChangeDispatcher() {}
+
+  private static final Logger LOGGER =
+      Logger.getLogger(FlagChangeDispatcher.class.getName());
+
+  private static final ExecutorService EXECUTOR =
+      Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("flags-listeners-%d")
+          .setDaemon(true)
+          .build());
+
+  /**
+   * Notifies the listeners of each change in the batch, in order.
+   */
+  static void dispatch(final List<FlagChange<?>> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    EXECUTOR.execute(new Runnable() {
+      @Override
+      public void run() {
+        for (FlagChange<?> change : batch) {
+          notifyListeners(change);
+        }
+      }
+    });
+  }
+
+  private static <T> void notifyListeners(FlagChange<T> change) {
+    AbstractFlag<T> flag = (AbstractFlag<T>) change.getFlag();
+    if (!flag.markDispatched(change)) {
+      return;
+    }
+    for (Consumer<FlagChange<T>> listener
+        : flag.getListeners()) {
+      try {
+        listener.accept(change);
+      } catch (RuntimeException e) {
+        // one failing listener must not starve the others
+        LOGGER.log(Level.WARNING, "flag listener " + listener + " failed", e);
+      }
+    }
+  }
+
+}
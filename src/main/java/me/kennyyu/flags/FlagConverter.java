@@ -0,0 +1,48 @@
+package me.kennyyu.flags;
+
+/**
+ * Converts the string provided for a flag at the command line into a value.
+ * Converters for the wrapper classes, {@link String} and enumerations are
+ * built in. Converters for other types may be registered with
+ * {@link Flags#registerConverter(Class, FlagConverter)}, e.g.
+ * <pre>
+ * <code>
+ *    Flags.registerConverter(
+ *        Duration.class, new FlagConverter&lt;Duration&gt;() {
+ *          {@literal @}Override
+ *          public Duration convert(String value) {
+ *            return Duration.parse(value);
+ *          }
+ *        });
+ * </code>
+ * </pre>
+ *
+ * A converter is used for flags of its type, and for the elements, keys and
+ * values of {@link java.util.List}, {@link java.util.Set} and
+ * {@link java.util.Map} flags of its type.
+ *
+ * @param <T> the type of the converted values.
+ * @author kennyyu (Kenny Yu)
+ */
+public interface FlagConverter<T> {
+
+  /**
+   * Returns the value represented by the string.
+   * @throws FlagException if the string is not a legal value
+   */
+  T convert(String value) throws FlagException;
+
+  /**
+   * Returns the value represented by the characters of value between start
+   * (inclusive) and end (exclusive). The parser calls this method for the
+   * values of flags and the elements of collections, so that converters
+   * which can parse a range in place do not need to create a substring. By
+   * default, converts the substring with {@link #convert(String)}.
+   * @throws FlagException if the range is not a legal value
+   */
+  default T convert(CharSequence value, int start, int end)
+      throws FlagException {
+    return convert(value.subSequence(start, end).toString());
+  }
+
+}
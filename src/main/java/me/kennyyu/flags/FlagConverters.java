@@ -0,0 +1,265 @@
+package me.kennyyu.flags;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Table of the {@link FlagConverter} for each supported type. Converters are
+ * looked up once per flag when a {@link FlagRegistry} is built.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class FlagConverters {
+  private FlagConverters() {}
+
+  private static final ConcurrentMap<Class<?>, FlagConverter<?>> CONVERTERS =
+      Maps.newConcurrentMap();
+
+  /**
+   * Types parsed from numbers separated by a delimiter, without boxing.
+   */
+  private static final List<Class<?>> NUMBER_ARRAYS =
+      ImmutableList.<Class<?>>of(
+          int[].class, long[].class, SortedIntSet.class, SortedLongSet.class);
+
+  static {
+    register(Byte.class, new FlagConverter<Byte>() {
+      @Override
+      public Byte convert(String value) {
+        return (byte) Integer.parseInt(value, 16);
+      }
+    });
+    register(Short.class, new FlagConverter<Short>() {
+      @Override
+      public Short convert(String value) {
+        return Short.parseShort(value);
+      }
+    });
+    register(Integer.class, new FlagConverter<Integer>() {
+      @Override
+      public Integer convert(String value) {
+        return Integer.parseInt(value);
+      }
+
+      @Override
+      public Integer convert(CharSequence value, int start, int end) {
+        return NumberParser.parseInt(value, start, end);
+      }
+    });
+    register(Long.class, new FlagConverter<Long>() {
+      @Override
+      public Long convert(String value) {
+        return Long.parseLong(value);
+      }
+
+      @Override
+      public Long convert(CharSequence value, int start, int end) {
+        return NumberParser.parseLong(value, start, end);
+      }
+    });
+    register(Float.class, new FlagConverter<Float>() {
+      @Override
+      public Float convert(String value) {
+        return Float.parseFloat(value);
+      }
+    });
+    register(Double.class, new FlagConverter<Double>() {
+      @Override
+      public Double convert(String value) {
+        return Double.parseDouble(value);
+      }
+    });
+    register(Boolean.class, new FlagConverter<Boolean>() {
+      @Override
+      public Boolean convert(String value) {
+        // handle special case where booleans don't require equal signs
+        // e.g. "--isLarge=true" is the same as "--isLarge"
+        if (value.equals(""))
+          return true;
+        return Boolean.parseBoolean(value);
+      }
+
+      @Override
+      public Boolean convert(CharSequence value, int start, int end) {
+        if (start == end)
+          return true;
+        return end - start == 4
+            && Character.toLowerCase(value.charAt(start)) == 't'
+            && Character.toLowerCase(value.charAt(start + 1)) == 'r'
+            && Character.toLowerCase(value.charAt(start + 2)) == 'u'
+            && Character.toLowerCase(value.charAt(start + 3)) == 'e';
+      }
+    });
+    register(Character.class, new FlagConverter<Character>() {
+      @Override
+      public Character convert(String value) {
+        return value.charAt(0);
+      }
+    });
+    register(String.class, new FlagConverter<String>() {
+      @Override
+      public String convert(String value) {
+        return value;
+      }
+    });
+    for (Class<?> type : NUMBER_ARRAYS) {
+      CONVERTERS.put(type, numberArrayConverter(type, ','));
+    }
+  }
+
+  /**
+   * Returns whether type is parsed from numbers separated by a delimiter,
+   * like a list, so that it takes a delimiter of its own when nested in a
+   * collection.
+   */
+  static boolean isNumberArray(Class<?> type) {
+    return NUMBER_ARRAYS.contains(type);
+  }
+
+  /**
+   * Returns the converter of a type for which {@link #isNumberArray(Class)}
+   * holds, splitting the numbers on delimiter.
+   */
+  static FlagConverter<?> numberArrayConverter(
+      Class<?> type, final char delimiter) {
+    if (type == int[].class) {
+      return new FlagConverter<int[]>() {
+        @Override
+        public int[] convert(String value) {
+          return NumberParser.parseIntArray(value, delimiter);
+        }
+
+        @Override
+        public int[] convert(CharSequence value, int start, int end) {
+          return NumberParser.parseIntArray(value, start, end, delimiter);
+        }
+      };
+    } else if (type == long[].class) {
+      return new FlagConverter<long[]>() {
+        @Override
+        public long[] convert(String value) {
+          return NumberParser.parseLongArray(value, delimiter);
+        }
+
+        @Override
+        public long[] convert(CharSequence value, int start, int end) {
+          return NumberParser.parseLongArray(value, start, end, delimiter);
+        }
+      };
+    } else if (type == SortedIntSet.class) {
+      return new FlagConverter<SortedIntSet>() {
+        @Override
+        public SortedIntSet convert(String value) {
+          return SortedIntSet.wrap(
+              NumberParser.parseIntArray(value, delimiter));
+        }
+
+        @Override
+        public SortedIntSet convert(CharSequence value, int start, int end) {
+          return SortedIntSet.wrap(
+              NumberParser.parseIntArray(value, start, end, delimiter));
+        }
+      };
+    } else if (type == SortedLongSet.class) {
+      return new FlagConverter<SortedLongSet>() {
+        @Override
+        public SortedLongSet convert(String value) {
+          return SortedLongSet.wrap(
+              NumberParser.parseLongArray(value, delimiter));
+        }
+
+        @Override
+        public SortedLongSet convert(CharSequence value, int start, int end) {
+          return SortedLongSet.wrap(
+              NumberParser.parseLongArray(value, start, end, delimiter));
+        }
+      };
+    }
+    throw new IllegalArgumentException(type + " is not a number array");
+  }
+
+  /**
+   * Registers the converter for type, replacing any previous converter.
+   */
+  static <T> void register(
+      Class<T> type, FlagConverter<? extends T> converter) {
+    CONVERTERS.put(type, converter);
+  }
+
+  /**
+   * Returns the converter for type, or null if the type is not supported.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  static <T> FlagConverter<T> get(Class<T> type) {
+    FlagConverter<T> converter = (FlagConverter<T>) CONVERTERS.get(type);
+    if (converter == null && type.isEnum()) {
+      converter = new EnumConverter(type);
+      FlagConverter<T> previous =
+          (FlagConverter<T>) CONVERTERS.putIfAbsent(type, converter);
+      if (previous != null) {
+        converter = previous;
+      }
+    }
+    return converter;
+  }
+
+  /**
+   * Converts the names of the constants of an enumeration, using a table
+   * built once instead of {@link Enum#valueOf(Class, String)}. Names are
+   * looked up from their range of the value, so converting a name creates
+   * no string.
+   */
+  private static final class EnumConverter<E extends Enum<E>>
+      implements FlagConverter<E> {
+    private final Class<E> enumClass;
+
+    /*
+     * Open addressing table of the constants by name, whose length is a
+     * power of two at least twice the number of constants. Empty slots are
+     * null.
+     */
+    private final E[] table;
+
+    EnumConverter(Class<E> enumClass) {
+      this.enumClass = enumClass;
+      E[] constants = enumClass.getEnumConstants();
+      this.table = Arrays.copyOf(constants,
+          Integer.highestOneBit(Math.max(1, constants.length) * 4 - 1));
+      Arrays.fill(table, null);
+      int mask = table.length - 1;
+      for (E constant : constants) {
+        int slot = constant.name().hashCode() & mask;
+        while (table[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = constant;
+      }
+    }
+
+    @Override
+    public E convert(String value) {
+      return convert(value, 0, value.length());
+    }
+
+    @Override
+    public E convert(CharSequence value, int start, int end) {
+      int mask = table.length - 1;
+      int slot = ArgumentScanner.hashCode(value, start, end) & mask;
+      E constant;
+      while ((constant = table[slot]) != null) {
+        if (ArgumentScanner.regionEquals(value, start, end, constant.name())) {
+          return constant;
+        }
+        slot = (slot + 1) & mask;
+      }
+      throw new IllegalArgumentException("No enum constant "
+          + enumClass.getCanonicalName() + "."
+          + value.subSequence(start, end));
+    }
+  }
+
+}
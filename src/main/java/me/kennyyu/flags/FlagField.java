@@ -0,0 +1,243 @@
+package me.kennyyu.flags;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+
+/**
+ * A field annotated with {@link FlagInfo}, together with everything about it
+ * that the parser computes once when a {@link FlagRegistry} is built.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class FlagField {
+
+  private final Field field;
+  private final FlagInfo flagInfo;
+  private final TypeDescriptor typeDescriptor;
+  private final FlagWriter writer;
+  private final boolean mutableCollections;
+  private final FlagConverter<?> converter;
+  private final Type unsupportedType;
+
+  /**
+   * @param field an accessible field of type {@link Flag}
+   * @throws FlagException if the field cannot be accessed
+   */
+  FlagField(Field field) throws FlagException {
+    this(field, false, null);
+  }
+
+  /**
+   * @param field an accessible field of type {@link Flag}
+   * @param mutableCollections whether values of collection flags are parsed
+   *     into mutable collections
+   * @param stringPool the pool converting the String values of the flag, or
+   *     null to convert them with the converter for String
+   * @throws IllegalFlagAnnotationException if the delimiters of the flag
+   *     do not match its nested collections
+   * @throws FlagException if the field cannot be accessed
+   */
+  FlagField(Field field, boolean mutableCollections, StringPool stringPool)
+      throws FlagException {
+    this.field = field;
+    this.flagInfo = field.getAnnotation(FlagInfo.class);
+    this.typeDescriptor = TypeDescriptor.of(field);
+    this.writer = FlagWriter.of(field);
+    this.mutableCollections = mutableCollections;
+    ConverterBuilder builder = new ConverterBuilder(
+        field, flagInfo.delimiters(), mutableCollections, stringPool);
+    this.converter = builder.build(typeDescriptor, "");
+    this.unsupportedType = builder.unsupportedType;
+    if (converter != null
+        && builder.nextDelimiter < flagInfo.delimiters().length()) {
+      throw new IllegalFlagAnnotationException(field,
+          "more delimiters than nested collections in \""
+              + flagInfo.delimiters() + "\"");
+    }
+  }
+
+  /**
+   * Builds the converter of a flag, walking its {@link TypeDescriptor} from
+   * the outermost collection inwards. Each collection, and each array or
+   * sorted set of numbers, gets delimiters which are not used by the
+   * collections around it: the next ones of {@link FlagInfo#delimiters()} if
+   * it is set, and otherwise its default delimiters, or the first free ones
+   * of {@link #NESTED_DELIMITERS}.
+   */
+  private static final class ConverterBuilder {
+
+    /**
+     * Delimiters of nested collections whose default delimiters are already
+     * used by a collection around them.
+     */
+    private static final String NESTED_DELIMITERS = ";|/~^";
+
+    private final Field field;
+    private final String delimiters;
+    private final boolean mutableCollections;
+    private final StringPool stringPool;
+    private int nextDelimiter = 0;
+    /** The first type without a converter, or null */
+    private Type unsupportedType = null;
+
+    ConverterBuilder(
+        Field field,
+        String delimiters,
+        boolean mutableCollections,
+        StringPool stringPool) {
+      this.field = field;
+      this.delimiters = delimiters;
+      this.mutableCollections = mutableCollections;
+      this.stringPool = stringPool;
+    }
+
+    /**
+     * Returns the converter of the described type, or null if a type nested
+     * in it is not supported.
+     * @param outerDelimiters the delimiters of the collections around it
+     */
+    FlagConverter<?> build(TypeDescriptor descriptor, String outerDelimiters)
+        throws IllegalFlagAnnotationException {
+      switch (descriptor.getKind()) {
+        case VALUE:
+          Class<?> valueClass = descriptor.getValueClass();
+          if (FlagConverters.isNumberArray(valueClass)) {
+            // split like a list, so nested in a collection it needs a
+            // delimiter of its own
+            char arrayDelimiter = delimiter(',', outerDelimiters);
+            if (arrayDelimiter != ',') {
+              return FlagConverters.numberArrayConverter(
+                  valueClass, arrayDelimiter);
+            }
+          }
+          FlagConverter<?> valueConverter =
+              valueClass == String.class && stringPool != null
+                  ? stringPool : FlagConverters.get(valueClass);
+          if (valueConverter == null && unsupportedType == null) {
+            unsupportedType = valueClass;
+          }
+          return valueConverter;
+        case LIST:
+        case SET:
+          char delimiter = delimiter(',', outerDelimiters);
+          FlagConverter<?> elementConverter =
+              build(descriptor.getElement(), outerDelimiters + delimiter);
+          if (elementConverter == null) {
+            return null;
+          }
+          return descriptor.getKind() == TypeDescriptor.Kind.LIST
+              ? CollectionParser.listConverter(
+                  elementConverter, delimiter, mutableCollections)
+              : CollectionParser.setConverter(
+                  elementConverter, delimiter, mutableCollections);
+        case MAP:
+          char entryDelimiter = delimiter(' ', outerDelimiters);
+          char keyValueDelimiter =
+              delimiter(':', outerDelimiters + entryDelimiter);
+          String innerDelimiters =
+              outerDelimiters + entryDelimiter + keyValueDelimiter;
+          FlagConverter<?> keyConverter =
+              build(descriptor.getKey(), innerDelimiters);
+          FlagConverter<?> mapValueConverter =
+              build(descriptor.getElement(), innerDelimiters);
+          if (keyConverter == null || mapValueConverter == null) {
+            return null;
+          }
+          return CollectionParser.mapConverter(keyConverter,
+              mapValueConverter, entryDelimiter, keyValueDelimiter,
+              mutableCollections);
+        default:
+          if (unsupportedType == null) {
+            unsupportedType = descriptor.getType();
+          }
+          return null;
+      }
+    }
+
+    private char delimiter(char defaultDelimiter, String outerDelimiters)
+        throws IllegalFlagAnnotationException {
+      if (!delimiters.isEmpty()) {
+        if (nextDelimiter == delimiters.length()) {
+          throw new IllegalFlagAnnotationException(field,
+              "fewer delimiters than nested collections in \""
+                  + delimiters + "\"");
+        }
+        char delimiter = delimiters.charAt(nextDelimiter++);
+        if (outerDelimiters.indexOf(delimiter) >= 0) {
+          throw new IllegalFlagAnnotationException(field, "delimiter '"
+              + delimiter + "' is used by an enclosing collection");
+        }
+        return delimiter;
+      }
+      if (outerDelimiters.indexOf(defaultDelimiter) < 0) {
+        return defaultDelimiter;
+      }
+      for (int i = 0; i < NESTED_DELIMITERS.length(); i++) {
+        char delimiter = NESTED_DELIMITERS.charAt(i);
+        if (outerDelimiters.indexOf(delimiter) < 0) {
+          return delimiter;
+        }
+      }
+      throw new IllegalFlagAnnotationException(field,
+          "collections are nested too deeply for the default delimiters");
+    }
+
+  }
+
+  Field getField() {
+    return field;
+  }
+
+  FlagInfo getFlagInfo() {
+    return flagInfo;
+  }
+
+  TypeDescriptor getTypeDescriptor() {
+    return typeDescriptor;
+  }
+
+  FlagWriter getWriter() {
+    return writer;
+  }
+
+  /**
+   * Returns whether the values of collection flags, including nested
+   * collections, are held in mutable collections.
+   */
+  boolean isMutableCollections() {
+    return mutableCollections;
+  }
+
+  /**
+   * Returns the converter for the whole value of the flag, which converts
+   * any nested collections recursively, or null if a type nested in the flag
+   * is not supported.
+   */
+  FlagConverter<?> getConverter() {
+    return converter;
+  }
+
+  /**
+   * Returns the first type nested in the flag which is not supported, or
+   * null if {@link #getConverter()} is not null.
+   */
+  Type getUnsupportedType() {
+    return unsupportedType;
+  }
+
+  /**
+   * Returns the canonical name of the flag, i.e. the name of the field.
+   */
+  String getName() {
+    return field.getName();
+  }
+
+  /**
+   * Returns the {@link Flag} currently held by the field.
+   * @throws FlagException if the field cannot be accessed
+   */
+  Flag<?> getFlag() throws FlagException {
+    return writer.read();
+  }
+
+}
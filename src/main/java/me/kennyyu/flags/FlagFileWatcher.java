@@ -0,0 +1,256 @@
+package me.kennyyu.flags;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Watches the file passed with "--flagfile" and reapplies the flags whose
+ * values changed in it. The file holds one "--flagName=value" per line;
+ * blank lines and lines starting with "#" are ignored.<br><br>
+ *
+ * Changes are debounced: a reload starts once no event has been seen for
+ * {@link #DEBOUNCE_MILLIS}, so that an editor saving the file in several
+ * writes causes a single reload. All changed values are converted before
+ * any flag is updated, so an illegal edit leaves every flag unchanged. Flags
+ * passed at the command line, and flags removed from the file, keep their
+ * values.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class FlagFileWatcher implements Runnable {
+
+  private static final Logger LOGGER =
+      Logger.getLogger(FlagFileWatcher.class.getName());
+
+  /**
+   * Time without file events to wait for before reloading the file.
+   */
+  static final long DEBOUNCE_MILLIS = 200;
+
+  private static final ThreadFactory WATCH_THREAD_FACTORY =
+      new ThreadFactoryBuilder()
+          .setNameFormat("flags-watch-%d")
+          .setDaemon(true)
+          .build();
+
+  /**
+   * The watcher of each file, keyed by absolute path.
+   */
+  private static final Map<Path, FlagFileWatcher> WATCHERS =
+      Maps.newHashMap();
+
+  private final FlagRegistry registry;
+  private final Path path;
+  private final Set<FlagField> commandLineFields;
+  private final WatchService watchService;
+  /** The last applied value of each flag in the file */
+  private final Map<FlagField, String> values;
+
+  private FlagFileWatcher(
+      FlagRegistry registry,
+      Path path,
+      Set<FlagField> commandLineFields,
+      Map<FlagField, String> values,
+      WatchService watchService) {
+    this.registry = registry;
+    this.path = path;
+    this.commandLineFields = commandLineFields;
+    this.values = Maps.newHashMap(values);
+    this.watchService = watchService;
+  }
+
+  /**
+   * Starts watching the file for changes, replacing any previous watcher of
+   * the same file.
+   * @param registry the flags that may be set in the file
+   * @param path the file
+   * @param commandLineFields the flags passed at the command line, which are
+   *     not updated from the file
+   * @param values the values of the flags loaded from the file
+   * @throws FlagException if the file cannot be watched
+   */
+  static synchronized void watch(
+      FlagRegistry registry,
+      Path path,
+      Set<FlagField> commandLineFields,
+      Map<FlagField, String> values) throws FlagException {
+    path = path.toAbsolutePath().normalize();
+    FlagFileWatcher previous = WATCHERS.remove(path);
+    if (previous != null) {
+      previous.close();
+    }
+    WatchService watchService;
+    try {
+      watchService = path.getFileSystem().newWatchService();
+      path.getParent().register(
+          watchService, ENTRY_CREATE, ENTRY_MODIFY, OVERFLOW);
+    } catch (IOException e) {
+      throw new FlagException(e);
+    }
+    FlagFileWatcher watcher = new FlagFileWatcher(
+        registry, path, commandLineFields, values, watchService);
+    WATCHERS.put(path, watcher);
+    WATCH_THREAD_FACTORY.newThread(watcher).start();
+  }
+
+  /**
+   * Stops watching all files.
+   */
+  static synchronized void closeAll() {
+    for (FlagFileWatcher watcher : WATCHERS.values()) {
+      watcher.close();
+    }
+    WATCHERS.clear();
+  }
+
+  /**
+   * Reads the flags in the file.
+   * @param registry the flags that may be set in the file
+   * @param path the file
+   * @param ignoredFields flags to leave out of the result
+   * @return the value of each flag in the file, in the order of the registry
+   * @throws UnknownFlagNameException if a flag in the file is not recognized
+   * @throws FlagException if the file cannot be read
+   */
+  static Map<FlagField, String> readValues(
+      FlagRegistry registry, Path path, Set<FlagField> ignoredFields)
+      throws FlagException {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new FlagException(e);
+    }
+    Flags.ProvidedValues provided = new Flags.ProvidedValues(registry);
+    ArgumentScanner scanner = new ArgumentScanner();
+    for (String line : lines) {
+      line = line.trim();
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        provided.scan(scanner, line, 0, line.length());
+      }
+    }
+
+    // a flag file does not load other flag files
+    int flagFileIndex = Flags.getFlagFileIndex(registry);
+    List<FlagField> flagFields = registry.getFlagFields();
+    Map<FlagField, String> values = Maps.newLinkedHashMap();
+    for (int i = 0; i < flagFields.size(); i++) {
+      FlagField flagField = flagFields.get(i);
+      CharSequence source = provided.sources[i];
+      if (source != null && i != flagFileIndex
+          && !ignoredFields.contains(flagField)) {
+        values.put(flagField, source.subSequence(
+            provided.valueStarts[i], provided.valueEnds[i]).toString());
+      }
+    }
+    return values;
+  }
+
+  @Override
+  public void run() {
+    Path fileName = path.getFileName();
+    try {
+      while (true) {
+        boolean changed = pollEvents(watchService.take(), fileName);
+        while (true) {
+          WatchKey key =
+              watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+          if (key == null) {
+            break;
+          }
+          changed |= pollEvents(key, fileName);
+        }
+        if (changed) {
+          reload();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e) {
+      // the watcher was closed
+    }
+  }
+
+  /**
+   * Returns whether any event of the key may have changed the file, and
+   * resets the key.
+   */
+  private static boolean pollEvents(WatchKey key, Path fileName) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW || fileName.equals(event.context())) {
+        changed = true;
+      }
+    }
+    key.reset();
+    return changed;
+  }
+
+  /**
+   * Converts the values that changed in the file, and updates their flags if
+   * all of them are legal.
+   */
+  private void reload() {
+    Map<FlagField, Object> changedValues = Maps.newLinkedHashMap();
+    Map<FlagField, String> newValues;
+    try {
+      newValues = readValues(registry, path, commandLineFields);
+      for (Entry<FlagField, String> entry : newValues.entrySet()) {
+        String value = entry.getValue();
+        if (!value.equals(values.get(entry.getKey()))) {
+          changedValues.put(entry.getKey(),
+              Flags.convertValue(entry.getKey(), value, 0, value.length()));
+        }
+      }
+    } catch (FlagException e) {
+      LOGGER.log(Level.WARNING, "ignoring illegal flag file " + path, e);
+      return;
+    } catch (RuntimeException e) {
+      // converters report illegal values with unchecked exceptions, e.g.
+      // NumberFormatException
+      LOGGER.log(Level.WARNING, "ignoring illegal flag file " + path, e);
+      return;
+    }
+    if (changedValues.isEmpty()) {
+      return;
+    }
+    try {
+      Flags.writeValues(changedValues, changedValues.keySet());
+    } catch (FlagException e) {
+      LOGGER.log(Level.WARNING, "cannot update flags from " + path, e);
+      return;
+    }
+    values.putAll(newValues);
+    LOGGER.info("updated " + changedValues.size() + " flags from " + path);
+  }
+
+  private void close() {
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      LOGGER.log(Level.WARNING, "cannot stop watching " + path, e);
+    }
+  }
+
+}
@@ -0,0 +1,91 @@
+package me.kennyyu.flags;
+
+/**
+ * Implementation of {@link Flag} returned by {@link Flags#valueOf(Object)}.
+ * The value is held in a volatile field and replaced in place when the flag
+ * is parsed, so that the static field holding the flag never needs to be
+ * written, even when it is final. In lazy mode the parser assigns a
+ * {@link LazyValue} instead, which is converted by the first {@link #get()}
+ * and then replaced by its converted value.
+ *
+ * @param <T> the type this flag holds.
+ * @author kennyyu (Kenny Yu)
+ */
+class FlagImpl<T> extends AbstractFlag<T> {
+  private volatile T value;
+  /** The value not converted yet, which takes precedence over value */
+  private volatile LazyValue<T> lazyValue;
+  private final T defaultValue;
+
+  FlagImpl(T value) {
+    this.value = value;
+    this.defaultValue = value;
+  }
+
+  FlagImpl(T value, T defaultValue) {
+    this.value = value;
+    this.defaultValue = defaultValue;
+  }
+
+  @Override
+  public T get() {
+    countRead();
+    LazyValue<T> lazyValue = this.lazyValue;
+    return lazyValue == null ? value : resolve(lazyValue);
+  }
+
+  /**
+   * Converts the lazy value, and replaces it by the converted value unless
+   * this flag was updated meanwhile.
+   */
+  private T resolve(LazyValue<T> lazyValue) {
+    T converted = lazyValue.get();
+    synchronized (this) {
+      if (this.lazyValue == lazyValue) {
+        this.value = converted;
+        this.lazyValue = null;
+      }
+    }
+    return converted;
+  }
+
+  @Override
+  public T defaultValue() {
+    return defaultValue;
+  }
+
+  @Override
+  synchronized T getAndSet(T value) {
+    T oldValue = this.value;
+    LazyValue<T> oldLazyValue = this.lazyValue;
+    // only listeners are passed the old value, so a lazy value nobody read is
+    // dropped without converting it
+    if (oldLazyValue != null && !getListeners().isEmpty()) {
+      try {
+        oldValue = oldLazyValue.get();
+      } catch (IllegalArgumentException e) {
+        // the lazy value could never be read, so report the default instead
+        oldValue = defaultValue;
+      }
+    }
+    this.value = value;
+    this.lazyValue = null;
+    return oldValue;
+  }
+
+  /**
+   * Replaces the value of this flag by a value converted on first use. Only
+   * flags without listeners may be updated lazily, since listeners are
+   * passed the converted values.
+   */
+  synchronized void setLazy(LazyValue<T> lazyValue) {
+    this.lazyValue = lazyValue;
+    markChanged();
+  }
+
+  @Override
+  Object peek() {
+    LazyValue<T> lazyValue = this.lazyValue;
+    return lazyValue == null ? value : lazyValue;
+  }
+}
@@ -0,0 +1,22 @@
+package me.kennyyu.flags;
+
+import java.util.List;
+
+/**
+ * Compile-time index of the fields annotated with {@link FlagInfo}.
+ * Implementations are generated by {@link FlagInfoProcessor} and registered
+ * in "META-INF/services/me.kennyyu.flags.FlagIndex", so that
+ * {@link Flags#parse(String[], String[])} can locate flags without scanning
+ * the classpath.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public interface FlagIndex {
+
+  /**
+   * Returns the flag fields declared with the given environment, each in the
+   * form "binary.class.Name#fieldName".
+   */
+  List<String> fields(String environment);
+
+}
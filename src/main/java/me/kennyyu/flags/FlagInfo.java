@@ -39,4 +39,20 @@ public @interface FlagInfo {
    * environments.
    */
   String environment() default "";
+
+  /**
+   * Delimiters of the collections of the flag, e.g. ";," for a
+   * Flag&lt;List&lt;List&lt;Integer&gt;&gt;&gt; passed as "1,2;3,4"
+   * rather than as "1;2,3;4" with the default delimiters. Each
+   * {@link java.util.List} or {@link java.util.Set}, and each int[],
+   * long[], {@link SortedIntSet} or {@link SortedLongSet}, takes one
+   * delimiter between its elements, and each {@link java.util.Map} takes
+   * two: the one between its entries, then the one between the key and the
+   * value of an entry. Delimiters are taken from the outermost collection
+   * inwards, and the key of a map before its value. By default, lists, sets
+   * and arrays use ",", maps use " " and ":", and nested collections whose
+   * default delimiters are used by a collection around them use the first of
+   * ";|/~^" which is not.
+   */
+  String delimiters() default "";
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+package me.kennyyu.flags;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.SortedSetMultimap;
+import com.google.common.collect.TreeMultimap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Annotation processor that records every field annotated with
+ * {@link FlagInfo} at compile time. Each round with annotated fields
+ * generates a {@link FlagIndex} implementation listing the fields of that
+ * round by environment, and the last round, which may not generate sources
+ * without javac warning about them, only registers the generated indexes in
+ * "META-INF/services/me.kennyyu.flags.FlagIndex".<br><br>
+ *
+ * The processor is registered with javac through the library's jar, so any
+ * project compiled with this library on the classpath is indexed
+ * automatically. The generated class is named "GeneratedFlagIndex_" followed
+ * by a hash of the indexed fields, so that the indexes of different jars
+ * sharing a package do not collide, and placed in the package of the first
+ * indexed class; use the "flags.indexClass" processor option to choose a
+ * different fully qualified name, to which the indexes of later rounds append
+ * a number, e.g.
+ * <pre>
+ * <code>
+ *    javac -Aflags.indexClass=com.acme.AcmeFlagIndex ...
+ * </code>
+ * </pre>
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+@SupportedAnnotationTypes("me.kennyyu.flags.FlagInfo")
+@SupportedOptions(FlagInfoProcessor.INDEX_CLASS_OPTION)
+public class FlagInfoProcessor extends AbstractProcessor {
+
+  /**
+   * Processor option for the fully qualified name of the generated index.
+   */
+  public static final String INDEX_CLASS_OPTION = "flags.indexClass";
+
+  private static final String DEFAULT_INDEX_CLASS_NAME = "GeneratedFlagIndex_";
+
+  /** The indexes generated in the previous rounds */
+  private final List<String> indexClasses = Lists.newArrayList();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(
+      Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    if (roundEnv.processingOver()) {
+      if (!indexClasses.isEmpty()) {
+        writeServices();
+      }
+      return false;
+    }
+    // (environment) -> ("binary.class.Name#fieldName")
+    SortedSetMultimap<String, String> fieldsByEnvironment =
+        TreeMultimap.create();
+    Elements elements = processingEnv.getElementUtils();
+    for (Element element : roundEnv.getElementsAnnotatedWith(FlagInfo.class)) {
+      if (element.getKind() != ElementKind.FIELD) {
+        continue;
+      }
+      TypeElement declaringClass = (TypeElement) element.getEnclosingElement();
+      FlagInfo flagDescription = element.getAnnotation(FlagInfo.class);
+      fieldsByEnvironment.put(
+          flagDescription.environment(),
+          elements.getBinaryName(declaringClass) + "#"
+              + element.getSimpleName());
+    }
+    if (!fieldsByEnvironment.isEmpty()) {
+      writeIndex(fieldsByEnvironment);
+    }
+    // claim the annotation, which no other processor handles
+    return true;
+  }
+
+  /**
+   * Generates the {@link FlagIndex} source for the fields of one round.
+   */
+  private void writeIndex(
+      SortedSetMultimap<String, String> fieldsByEnvironment) {
+    String indexClass = processingEnv.getOptions().get(INDEX_CLASS_OPTION);
+    if (indexClass == null) {
+      String firstField = fieldsByEnvironment.values().iterator().next();
+      String firstClass = firstField.substring(0, firstField.indexOf('#'));
+      int lastDot = firstClass.lastIndexOf('.');
+      indexClass = firstClass.substring(0, lastDot + 1)
+          + DEFAULT_INDEX_CLASS_NAME + fingerprint(fieldsByEnvironment);
+    } else if (!indexClasses.isEmpty()) {
+      indexClass += indexClasses.size() + 1;
+    }
+    try {
+      writeIndexSource(indexClass, fieldsByEnvironment);
+      indexClasses.add(indexClass);
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(
+          Diagnostic.Kind.ERROR, "could not write flag index: " + e);
+    }
+  }
+
+  /**
+   * Registers the generated indexes as services.
+   */
+  private void writeServices() {
+    try {
+      FileObject services = processingEnv.getFiler().createResource(
+          StandardLocation.CLASS_OUTPUT,
+          "",
+          "META-INF/services/" + FlagIndex.class.getName());
+      Writer writer = services.openWriter();
+      try {
+        for (String indexClass : indexClasses) {
+          writer.write(indexClass + "\n");
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(
+          Diagnostic.Kind.ERROR, "could not register flag index: " + e);
+    }
+  }
+
+  /**
+   * Returns a hash of the indexed fields, which only the indexes of the same
+   * fields share.
+   */
+  private static String fingerprint(
+      SortedSetMultimap<String, String> fieldsByEnvironment) {
+    Hasher hasher = Hashing.md5().newHasher();
+    for (Map.Entry<String, String> entry : fieldsByEnvironment.entries()) {
+      hasher.putString(entry.getKey()).putChar('\0')
+          .putString(entry.getValue()).putChar('\0');
+    }
+    return hasher.hash().toString().substring(0, 16);
+  }
+
+  private void writeIndexSource(
+      String indexClass,
+      SortedSetMultimap<String, String> fieldsByEnvironment)
+      throws IOException {
+    Elements elements = processingEnv.getElementUtils();
+    int lastDot = indexClass.lastIndexOf('.');
+    PrintWriter out = new PrintWriter(
+        processingEnv.getFiler().createSourceFile(indexClass).openWriter());
+    try {
+      if (lastDot >= 0) {
+        out.println("package " + indexClass.substring(0, lastDot) + ";");
+        out.println();
+      }
+      out.println("/**");
+      out.println(" * Generated by " + FlagInfoProcessor.class.getName()
+          + ". Do not edit.");
+      out.println(" */");
+      out.println("public final class " + indexClass.substring(lastDot + 1)
+          + " implements " + FlagIndex.class.getName() + " {");
+      out.println();
+      out.println("  @Override");
+      out.println(
+          "  public java.util.List<String> fields(String environment) {");
+      for (String environment : fieldsByEnvironment.keySet()) {
+        out.println("    if (environment.equals("
+            + elements.getConstantExpression(environment) + ")) {");
+        out.println("      return java.util.Arrays.asList(");
+        Iterator<String> fields =
+            fieldsByEnvironment.get(environment).iterator();
+        while (fields.hasNext()) {
+          out.print(
+              "          " + elements.getConstantExpression(fields.next()));
+          out.println(fields.hasNext() ? "," : ");");
+        }
+        out.println("    }");
+      }
+      out.println("    return java.util.Collections.emptyList();");
+      out.println("  }");
+      out.println();
+      out.println("}");
+    } finally {
+      out.close();
+    }
+  }
+
+}
@@ -0,0 +1,304 @@
+package me.kennyyu.flags;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Builder for configuring how flags are discovered and parsed. Create one
+ * with {@link Flags#parser()}. Example:
+ * <pre>
+ * <code>
+ *    Flags.parser()
+ *        .scanPackages("com.acme")
+ *        .environments("prod")
+ *        .parse(args);
+ * </code>
+ * </pre>
+ *
+ * Restricting the scanned packages bounds the cost of discovering flags to
+ * the size of your own code rather than the size of the whole classpath. The
+ * library's own flags, such as "--help", are always loaded.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public final class FlagParser {
+
+  private Set<String> environments = ImmutableSet.of("");
+  private Set<String> packages = ImmutableSet.of();
+  private boolean classpathScan =
+      Boolean.getBoolean(Flags.CLASSPATH_SCAN_PROPERTY);
+  private File scanCache = getScanCacheProperty();
+  private ExecutorService scanExecutor = null;
+  private File sharedStore = null;
+  private boolean lazy = false;
+  private boolean validate = false;
+  private boolean argsFiles = true;
+  private boolean mutableCollections = false;
+  private int stringPoolSize = 0;
+  private boolean jmx = Boolean.getBoolean(Flags.JMX_PROPERTY);
+
+  FlagParser() {}
+
+  private static File getScanCacheProperty() {
+    String cacheFileName = System.getProperty(Flags.SCAN_CACHE_PROPERTY);
+    return cacheFileName == null ? null : new File(cacheFileName);
+  }
+
+  /**
+   * Sets the flag environments to load. If flagEnvs is empty, then the
+   * default ("") environment will be used.
+   */
+  public FlagParser environments(String... flagEnvs) {
+    this.environments = flagEnvs.length == 0
+        ? ImmutableSet.of("") : ImmutableSet.copyOf(flagEnvs);
+    return this;
+  }
+
+  /**
+   * Only loads flags declared in the given packages and their subpackages.
+   * When the classpath is scanned, only the classpath entries containing these
+   * packages are scanned.
+   */
+  public FlagParser scanPackages(String... packageNames) {
+    this.packages = ImmutableSet.copyOf(packageNames);
+    return this;
+  }
+
+  /**
+   * Whether to scan the classpath instead of reading the {@link FlagIndex}
+   * instances generated by {@link FlagInfoProcessor}. Defaults to the value
+   * of the {@value Flags#CLASSPATH_SCAN_PROPERTY} system property.
+   */
+  public FlagParser classpathScan(boolean classpathScan) {
+    this.classpathScan = classpathScan;
+    return this;
+  }
+
+  /**
+   * File in which to cache the results of classpath scans, or null to
+   * disable caching. Defaults to the value of the
+   * {@value Flags#SCAN_CACHE_PROPERTY} system property.
+   */
+  public FlagParser scanCache(File cacheFile) {
+    this.scanCache = cacheFile;
+    return this;
+  }
+
+  /**
+   * Executor on which to scan the classpath entries in parallel, e.g. a
+   * {@link java.util.concurrent.ForkJoinPool} or a fixed thread pool. The
+   * executor is not shut down by the parser. Defaults to a pool with the
+   * number of threads in the {@value Flags#SCAN_THREADS_PROPERTY} system
+   * property.
+   */
+  public FlagParser scanExecutor(ExecutorService executor) {
+    this.scanExecutor = executor;
+    return this;
+  }
+
+  /**
+   * File of a {@link SharedFlagStore} created by a launcher process, or null.
+   * The primitive flags in the store that are not passed in the arguments
+   * read their values from the store, which is mapped read-only.
+   */
+  public FlagParser sharedStore(File storeFile) {
+    this.sharedStore = storeFile;
+    return this;
+  }
+
+  /**
+   * Whether to convert the values of flags on their first {@link Flag#get()}
+   * instead of while parsing, so that large list and map flags that are
+   * never read are never converted. Illegal values are then reported by
+   * {@link Flag#get()} with an {@link IllegalArgumentException}, unless
+   * {@link #validate(boolean)} is set. Flags with listeners, primitive flags
+   * and {@link MutableFlag}s are always converted while parsing. Defaults to
+   * false.
+   */
+  public FlagParser lazy(boolean lazy) {
+    this.lazy = lazy;
+    return this;
+  }
+
+  /**
+   * Whether a lazy parse converts every value once to report illegal values
+   * up front. The converted values are discarded, so that flags which are
+   * never read do not hold them. Defaults to false.
+   */
+  public FlagParser validate(boolean validate) {
+    this.validate = validate;
+    return this;
+  }
+
+  /**
+   * Whether an argument "@path" naming a regular file is replaced by the
+   * whitespace separated arguments in that file, which is read and decoded
+   * into one buffer, from which the values are converted without
+   * being copied into strings. Arguments starting with "@" which do not name
+   * a file are passed through unchanged. Defaults to true; disable it if
+   * arguments that are not flags may name files after an "@".
+   */
+  public FlagParser argsFiles(boolean argsFiles) {
+    this.argsFiles = argsFiles;
+    return this;
+  }
+
+  /**
+   * Whether list, set and map flags are parsed into an
+   * {@link java.util.ArrayList}, {@link java.util.HashSet} and
+   * {@link java.util.HashMap}, which callers may modify and which may hold
+   * nulls. By default they are parsed into exactly sized immutable
+   * collections, which take less memory and may be shared between threads.
+   * Defaults to false.
+   */
+  public FlagParser mutableCollections(boolean mutableCollections) {
+    this.mutableCollections = mutableCollections;
+    return this;
+  }
+
+  /**
+   * Whether parsing registers {@link FlagsMBean} and
+   * {@link ParseStatsMXBean} with the platform MBean server, and measures
+   * each parse for the latter. The beans hold the flags of every registry
+   * parsed, so leave it disabled in containers which unload applications.
+   * Defaults to the system property {@value Flags#JMX_PROPERTY}.
+   */
+  public FlagParser jmx(boolean jmx) {
+    this.jmx = jmx;
+    return this;
+  }
+
+  /**
+   * Maximum number of distinct String values, including the elements, keys
+   * and values of collections, to share between all flags of the parse, or
+   * 0 to disable sharing. Each value that is passed more than once is then
+   * held by a single {@link String} while it is in the pool. A larger pool
+   * shares more values at the cost of a table of that many references.
+   * Defaults to 0.
+   */
+  public FlagParser stringPoolSize(int maxStrings) {
+    Preconditions.checkArgument(
+        maxStrings >= 0, "maxStrings must not be negative");
+    this.stringPoolSize = maxStrings;
+    return this;
+  }
+
+  /**
+   * Parses the command line arguments and updates as necessary all
+   * {@link Flag} objects annotated with {@link FlagInfo}. See
+   * {@link Flags#parse(String[], String[])}.
+   */
+  public void parse(String[] args) {
+    try {
+      parseWithExceptions(args);
+    } catch (FlagException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Same as {@link #parse(String[])}, but forces the user to catch
+   * exceptions.
+   */
+  public void parseWithExceptions(String[] args) throws FlagException {
+    Flags.parseWithExceptions(this, args, false);
+  }
+
+  /**
+   * Same as {@link #parseWithExceptions(String[])}, but also returns the time
+   * and memory spent in each phase of the parse.
+   */
+  public ParseStats parseWithStats(String[] args) throws FlagException {
+    return Flags.parseWithExceptions(this, args, true);
+  }
+
+  /**
+   * Writes the values of the flags to out. See
+   * {@link Flags#exportSnapshot(OutputStream, String[])}.
+   */
+  public void exportSnapshot(OutputStream out) throws FlagException {
+    Flags.exportSnapshot(this, out);
+  }
+
+  /**
+   * Restores the flags from a snapshot written by
+   * {@link #exportSnapshot(OutputStream)}, reading all remaining bytes of in.
+   * See {@link Flags#importSnapshot(InputStream, String[])}.
+   */
+  public void importSnapshot(InputStream in) throws FlagException {
+    byte[] bytes;
+    try {
+      bytes = ByteStreams.toByteArray(in);
+    } catch (IOException e) {
+      throw new FlagException(e);
+    }
+    importSnapshot(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Restores the flags from a snapshot starting at the position of buffer.
+   * See {@link Flags#importSnapshot(ByteBuffer, String[])}.
+   */
+  public void importSnapshot(ByteBuffer buffer) throws FlagException {
+    Flags.importSnapshot(this, buffer);
+  }
+
+  Set<String> getEnvironments() {
+    return environments;
+  }
+
+  Set<String> getPackages() {
+    return packages;
+  }
+
+  boolean isClasspathScan() {
+    return classpathScan;
+  }
+
+  File getScanCache() {
+    return scanCache;
+  }
+
+  ExecutorService getScanExecutor() {
+    return scanExecutor;
+  }
+
+  File getSharedStore() {
+    return sharedStore;
+  }
+
+  boolean isLazy() {
+    return lazy;
+  }
+
+  boolean isValidate() {
+    return validate;
+  }
+
+  boolean isArgsFiles() {
+    return argsFiles;
+  }
+
+  boolean isMutableCollections() {
+    return mutableCollections;
+  }
+
+  int getStringPoolSize() {
+    return stringPoolSize;
+  }
+
+  boolean isJmx() {
+    return jmx;
+  }
+
+}
@@ -0,0 +1,165 @@
+package me.kennyyu.flags;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Immutable set of flags discovered for one parser configuration, with the
+ * lookups needed to parse command line arguments computed up front. Registries
+ * are memoized by {@link Flags}, so repeated calls to
+ * {@link Flags#parse(String[], String[])} only tokenize the arguments and
+ * assign values.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class FlagRegistry {
+
+  private final List<FlagField> flagFields;
+  private final Map<String, FlagField> flagFieldsByName;
+
+  /*
+   * Open addressing table from each name to the index of its flag in
+   * flagFields, so that names can be looked up from a range of an argument
+   * without creating a substring. The length of the table is a power of two
+   * at least twice the number of names, and empty slots have a null name.
+   */
+  private final String[] tableNames;
+  private final int[] tableIndexes;
+
+  private FlagRegistry(
+      List<FlagField> flagFields, Map<String, FlagField> flagFieldsByName) {
+    this.flagFields = flagFields;
+    this.flagFieldsByName = flagFieldsByName;
+    int tableSize = Integer.highestOneBit(
+        Math.max(1, flagFieldsByName.size()) * 4 - 1);
+    this.tableNames = new String[tableSize];
+    this.tableIndexes = new int[tableSize];
+    for (int i = 0; i < flagFields.size(); i++) {
+      FlagField flagField = flagFields.get(i);
+      putTableName(flagField.getName(), i);
+      String altName = flagField.getFlagInfo().altName();
+      if (!altName.equals("")) {
+        putTableName(altName, i);
+      }
+    }
+  }
+
+  private void putTableName(String name, int index) {
+    int mask = tableNames.length - 1;
+    int slot = name.hashCode() & mask;
+    while (tableNames[slot] != null) {
+      slot = (slot + 1) & mask;
+    }
+    tableNames[slot] = name;
+    tableIndexes[slot] = index;
+  }
+
+  /**
+   * Builds a registry from the fields annotated with {@link FlagInfo}.
+   * @throws IllegalFlagAnnotationException if any field is not a Flag object
+   * @throws DuplicateFlagNameException if multiple flags have the same name
+   */
+  static FlagRegistry build(Collection<Field> fields) throws FlagException {
+    return build(fields, false, 0);
+  }
+
+  /**
+   * Same as {@link #build(Collection)}, but the collection flags are parsed
+   * into mutable collections if mutableCollections is set, and the String
+   * values of all flags are deduplicated by a {@link StringPool} of
+   * stringPoolSize strings if it is positive.
+   */
+  static FlagRegistry build(
+      Collection<Field> fields, boolean mutableCollections, int stringPoolSize)
+      throws FlagException {
+    ensureAnnotatedFieldsAreFlags(fields);
+    StringPool stringPool = stringPoolSize > 0
+        ? new StringPool(stringPoolSize, FlagConverters.get(String.class))
+        : null;
+    ImmutableList.Builder<FlagField> flagFields = ImmutableList.builder();
+    Map<String, FlagField> flagFieldsByName = Maps.newHashMap();
+    for (Field field : fields) {
+      field.setAccessible(true);
+      FlagField flagField =
+          new FlagField(field, mutableCollections, stringPool);
+      flagFields.add(flagField);
+      String altName = flagField.getFlagInfo().altName();
+      if (!altName.equals("")) {
+        putUniqueName(flagFieldsByName, altName, flagField);
+      }
+      putUniqueName(flagFieldsByName, flagField.getName(), flagField);
+    }
+    return new FlagRegistry(
+        flagFields.build(), ImmutableMap.copyOf(flagFieldsByName));
+  }
+
+  /**
+   * Ensures that all fields are Flag objects
+   * @throws IllegalFlagAnnotationException if any field is not a Flag object
+   */
+  private static void ensureAnnotatedFieldsAreFlags(Collection<Field> fields)
+      throws IllegalFlagAnnotationException {
+    for (Field field : fields) {
+      if (!TypeDescriptor.isFlagType(field.getType()))
+        throw new IllegalFlagAnnotationException(field);
+    }
+  }
+
+  private static void putUniqueName(
+      Map<String, FlagField> flagFieldsByName,
+      String name,
+      FlagField flagField) throws DuplicateFlagNameException {
+    if (flagFieldsByName.containsKey(name)) {
+      throw new DuplicateFlagNameException(name);
+    }
+    flagFieldsByName.put(name, flagField);
+  }
+
+  /**
+   * Returns all flags in this registry.
+   */
+  List<FlagField> getFlagFields() {
+    return flagFields;
+  }
+
+  /**
+   * Returns the flag with the given name or alternate name, or null if there
+   * is none.
+   */
+  FlagField getFlagField(String name) {
+    return flagFieldsByName.get(name);
+  }
+
+  /**
+   * Returns the index in {@link #getFlagFields()} of the flag whose name or
+   * alternate name is the range of value between start (inclusive) and end
+   * (exclusive), or -1 if there is none.
+   */
+  int getFlagIndex(CharSequence value, int start, int end) {
+    int mask = tableNames.length - 1;
+    int slot = ArgumentScanner.hashCode(value, start, end) & mask;
+    String name;
+    while ((name = tableNames[slot]) != null) {
+      if (ArgumentScanner.regionEquals(value, start, end, name)) {
+        return tableIndexes[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns all names and alternate names of the flags in this registry.
+   */
+  Set<String> getNames() {
+    return flagFieldsByName.keySet();
+  }
+
+}
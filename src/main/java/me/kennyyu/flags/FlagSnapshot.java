@@ -0,0 +1,178 @@
+package me.kennyyu.flags;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Immutable, versioned view of the values of all parsed flags. Several flags
+ * that change together, such as the bounds of a pool, can be read
+ * consistently by taking one snapshot per request:
+ * <pre>
+ * <code>
+ *    FlagSnapshot flags = Flags.snapshot();
+ *    int min = flags.get(minPool);
+ *    int max = flags.get(maxPool);
+ * </code>
+ * </pre>
+ *
+ * Each update, i.e. each parse, each reload of the flag file and each update
+ * of a {@link MutableFlag}, builds the next snapshot once its values are
+ * written and publishes it with one atomic swap. Updates build snapshots one
+ * at a time, while taking a snapshot is a single volatile read and reading
+ * one needs no locking.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public final class FlagSnapshot {
+
+  /**
+   * Held while a snapshot is built, so that the snapshot published last holds
+   * the values written last.
+   */
+  private static final Object LOCK = new Object();
+
+  private static final AtomicReference<FlagSnapshot> CURRENT =
+      new AtomicReference<FlagSnapshot>(new FlagSnapshot(
+          0,
+          Collections.<Flag<?>, Object>emptyMap(),
+          Collections.<String, Flag<?>>emptyMap()));
+
+  private final long version;
+  private final Map<Flag<?>, Object> values;
+  private final Map<String, Flag<?>> flagsByName;
+
+  private FlagSnapshot(
+      long version,
+      Map<Flag<?>, Object> values,
+      Map<String, Flag<?>> flagsByName) {
+    this.version = version;
+    this.values = values;
+    this.flagsByName = flagsByName;
+  }
+
+  /**
+   * Returns the latest snapshot. See {@link Flags#snapshot()}.
+   */
+  static FlagSnapshot current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Publishes a snapshot with the current values of all flags tracked by
+   * {@link LiveFlags}, after a batch of updates.
+   */
+  static void publish() {
+    synchronized (LOCK) {
+      CURRENT.set(build(CURRENT.get().version + 1));
+    }
+  }
+
+  /**
+   * Publishes a snapshot with the current value of the flag, after an update
+   * of that flag alone, if the flag is in the latest snapshot.
+   */
+  static void publish(AbstractFlag<?> flag) {
+    synchronized (LOCK) {
+      FlagSnapshot current = CURRENT.get();
+      if (!current.values.containsKey(flag)) {
+        return;
+      }
+      Map<Flag<?>, Object> values = Maps.newHashMap(current.values);
+      values.put(flag, flag.peek());
+      CURRENT.set(new FlagSnapshot(current.version + 1,
+          Collections.unmodifiableMap(values), current.flagsByName));
+    }
+  }
+
+  /**
+   * Returns a snapshot with the current values of the flags tracked by
+   * {@link LiveFlags}. The snapshot only holds the flags still tracked, so
+   * that it does not keep the flags of unloaded classes.
+   */
+  private static FlagSnapshot build(long version) {
+    Map<Flag<?>, Object> values = Maps.newHashMap();
+    Map<String, Flag<?>> flagsByName = Maps.newHashMap();
+    for (FlagField flagField : LiveFlags.getFlagFields()) {
+      Flag<?> flag;
+      try {
+        flag = flagField.getFlag();
+      } catch (FlagException e) {
+        throw new IllegalStateException(e);
+      }
+      values.put(flag, flag instanceof AbstractFlag
+          ? ((AbstractFlag<?>) flag).peek() : flag.get());
+      flagsByName.put(flagField.getName(), flag);
+    }
+    return new FlagSnapshot(
+        version,
+        Collections.unmodifiableMap(values),
+        Collections.unmodifiableMap(flagsByName));
+  }
+
+  /**
+   * Returns the number of updates before this snapshot.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns the value of the flag in this snapshot.
+   * @throws IllegalArgumentException if the flag has not been parsed
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(Flag<T> flag) {
+    if (!values.containsKey(flag)) {
+      throw new IllegalArgumentException("flag is not in the snapshot");
+    }
+    return (T) resolve(values.get(flag));
+  }
+
+  /**
+   * Returns the value of the flag with the given name in this snapshot. If
+   * flags with the same name were parsed in different environments, the flag
+   * parsed last is used.
+   * @throws IllegalArgumentException if no flag with the name has been parsed
+   */
+  public Object get(String name) {
+    Flag<?> flag = flagsByName.get(name);
+    if (flag == null) {
+      throw new IllegalArgumentException("no flag named " + name);
+    }
+    return resolve(values.get(flag));
+  }
+
+  /**
+   * Converts the values of lazily parsed flags, which are shared with the
+   * flags so that each is converted once.
+   */
+  private static Object resolve(Object value) {
+    return value instanceof LazyValue ? ((LazyValue<?>) value).get() : value;
+  }
+
+  /**
+   * Returns whether the flag is in this snapshot.
+   */
+  boolean contains(Flag<?> flag) {
+    return values.containsKey(flag);
+  }
+
+  /**
+   * Returns the flag with each name in this snapshot.
+   */
+  Map<String, Flag<?>> getFlagsByName() {
+    return flagsByName;
+  }
+
+  /**
+   * Returns the names of the flags in this snapshot.
+   */
+  public Set<String> getNames() {
+    return flagsByName.keySet();
+  }
+
+}
@@ -0,0 +1,85 @@
+package me.kennyyu.flags;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Description of one flag returned by {@link FlagsMBean}, which JMX consoles
+ * display as a composite value. Values are formatted as strings, so that
+ * consoles need none of the application's classes.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public final class FlagStatus {
+
+  private final String name;
+  private final String type;
+  private final String environment;
+  private final String defaultValue;
+  private final String value;
+  private final long lastChangedMillis;
+  private final long readCount;
+
+  @ConstructorProperties({"name", "type", "environment", "defaultValue",
+      "value", "lastChangedMillis", "readCount"})
+  public FlagStatus(
+      String name,
+      String type,
+      String environment,
+      String defaultValue,
+      String value,
+      long lastChangedMillis,
+      long readCount) {
+    this.name = name;
+    this.type = type;
+    this.environment = environment;
+    this.defaultValue = defaultValue;
+    this.value = value;
+    this.lastChangedMillis = lastChangedMillis;
+    this.readCount = readCount;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the type of the value, e.g. "java.util.List<java.lang.Integer>".
+   */
+  public String getType() {
+    return type;
+  }
+
+  public String getEnvironment() {
+    return environment;
+  }
+
+  public String getDefaultValue() {
+    return defaultValue;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the time of the last change of the value, in milliseconds since
+   * the epoch, or 0 if it never changed or is not tracked for the flag.
+   */
+  public long getLastChangedMillis() {
+    return lastChangedMillis;
+  }
+
+  /**
+   * Returns the number of reads of the value through {@link Flag#get()} and
+   * the primitive getters, or -1 if reads are not counted for the flag.
+   */
+  public long getReadCount() {
+    return readCount;
+  }
+
+  @Override
+  public String toString() {
+    return name + "=" + value;
+  }
+
+}
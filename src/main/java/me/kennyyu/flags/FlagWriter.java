@@ -0,0 +1,137 @@
+package me.kennyyu.flags;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Assigns new values to the {@link Flag} held by one field. A writer is built
+ * once per field when a {@link FlagRegistry} is built, so that assigning a
+ * value needs no reflective lookups.<br><br>
+ *
+ * Flags created by {@link Flags#valueOf(Object)} are updated in place. Other
+ * {@link Flag} implementations are replaced by a new flag of the field's type
+ * through a {@link MethodHandle} setter, which is only possible for non-final
+ * fields.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class FlagWriter {
+
+  private final Field field;
+  private final MethodHandle getter;
+  private final MethodHandle setter;
+
+  private FlagWriter(Field field, MethodHandle getter, MethodHandle setter) {
+    this.field = field;
+    this.getter = getter;
+    this.setter = setter;
+  }
+
+  /**
+   * Builds the writer for a static, accessible field of type {@link Flag}.
+   * @throws FlagException if the field cannot be accessed
+   */
+  static FlagWriter of(Field field) throws FlagException {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    try {
+      MethodHandle getter = lookup.unreflectGetter(field)
+          .asType(MethodType.methodType(Flag.class));
+      MethodHandle setter = Modifier.isFinal(field.getModifiers())
+          ? null
+          : lookup.unreflectSetter(field)
+              .asType(MethodType.methodType(void.class, Flag.class));
+      return new FlagWriter(field, getter, setter);
+    } catch (IllegalAccessException e) {
+      throw new FlagException(e);
+    }
+  }
+
+  /**
+   * Returns the {@link Flag} currently held by the field.
+   * @throws FlagException if the field cannot be read
+   */
+  Flag<?> read() throws FlagException {
+    try {
+      return (Flag<?>) getter.invokeExact();
+    } catch (Throwable e) {
+      throw new FlagException(e);
+    }
+  }
+
+  /**
+   * Updates the flag in the field to the new value, and leaves its default
+   * value unchanged. The value may be a {@link LazyValue} if
+   * {@link #isLazilyWritable()}.
+   * @return the change to dispatch to the listeners of the flag, or null if
+   *     there are no listeners
+   * @throws FlagException if the flag cannot be updated
+   */
+  @SuppressWarnings("unchecked")
+  <T> FlagChange<T> write(T value) throws FlagException {
+    Flag<T> flag = (Flag<T>) read();
+    if (value instanceof LazyValue) {
+      LazyValue<T> lazyValue = (LazyValue<T>) value;
+      if (flag instanceof FlagImpl
+          && ((FlagImpl<T>) flag).getListeners().isEmpty()) {
+        ((FlagImpl<T>) flag).setLazy(lazyValue);
+        return null;
+      }
+      // a listener was added since the parser checked the flag
+      value = lazyValue.get();
+    }
+    if (flag instanceof AbstractFlag) {
+      return ((AbstractFlag<T>) flag).update(value);
+    }
+    if (setter == null) {
+      throw new FlagException("final field " + field.toGenericString()
+          + " must hold a flag created by Flags.valueOf to be updated");
+    }
+    T defaultValue = flag == null ? null : flag.defaultValue();
+    Flag<?> newFlag = newFlag(value, defaultValue);
+    try {
+      setter.invokeExact(newFlag);
+    } catch (Throwable e) {
+      throw new FlagException(e);
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether the flag in the field may be assigned a
+   * {@link LazyValue} by {@link #write(Object)}.
+   * @throws FlagException if the field cannot be read
+   */
+  boolean isLazilyWritable() throws FlagException {
+    Flag<?> flag = read();
+    return flag instanceof FlagImpl
+        && ((FlagImpl<?>) flag).getListeners().isEmpty();
+  }
+
+  /**
+   * Returns a new flag assignable to the field.
+   * @param defaultValue the default value, or null to use value for the
+   *     primitive flag types
+   */
+  private Flag<?> newFlag(Object value, Object defaultValue) {
+    Class<?> type = field.getType();
+    if (defaultValue == null && TypeDescriptor.isPrimitiveFlagType(type)) {
+      defaultValue = value;
+    }
+    if (type.equals(IntFlag.class)) {
+      return new IntFlagImpl((Integer) value, (Integer) defaultValue);
+    } else if (type.equals(LongFlag.class)) {
+      return new LongFlagImpl((Long) value, (Long) defaultValue);
+    } else if (type.equals(DoubleFlag.class)) {
+      return new DoubleFlagImpl((Double) value, (Double) defaultValue);
+    } else if (type.equals(BooleanFlag.class)) {
+      return new BooleanFlagImpl((Boolean) value, (Boolean) defaultValue);
+    } else if (type.equals(MutableFlag.class)) {
+      return new MutableFlagImpl<Object>(value, defaultValue);
+    }
+    return new FlagImpl<Object>(value, defaultValue);
+  }
+
+}
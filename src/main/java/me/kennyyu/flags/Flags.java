@@ -1,28 +1,37 @@
 package me.kennyyu.flags;
 
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
-import org.reflections.Reflections;
-import org.reflections.scanners.FieldAnnotationsScanner;
-import org.reflections.scanners.TypeAnnotationsScanner;
-import org.reflections.scanners.TypesScanner;
 import org.reflections.util.ClasspathHelper;
-import org.reflections.util.ConfigurationBuilder;
 
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.collect.TreeBasedTable;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Wrapper class containing utility methods for working with {@link Flag}
@@ -54,7 +63,12 @@ import com.google.common.collect.TreeBasedTable;
  * {@link Integer}, {@link Long}, {@link Short}, {@link Boolean},
  * {@link Double}, {@link Float}, {@link Character}, {@link String},
  * {@link Byte}. Boolean flags have short hand where "--booleanFlag=true" is
- * the same as "--boleanFlag".<br><br>
+ * the same as "--boleanFlag". The flags created from int, long, double and
+ * boolean values are {@link IntFlag}, {@link LongFlag}, {@link DoubleFlag}
+ * and {@link BooleanFlag}, which can be read without boxing. Other types are
+ * supported by registering a {@link FlagConverter} with
+ * {@link #registerConverter(Class, FlagConverter)}.
+ * <br><br>
  *
  * Flags also support {@link Enum} types. Example:
  * <pre>
@@ -105,8 +119,20 @@ import com.google.common.collect.TreeBasedTable;
  *    java MyApp --map="foo:3 bar:4 cheese:5 bam:6"
  * </code>
  * </pre>
- * The (key,value) pairs must be passed inside double quotes in the form
- * key:value separated by spaces.<br><br>
+ * The (key,value) pairs must be passed in the form key:value separated by
+ * spaces, and may be enclosed in double quotes.<br><br>
+ *
+ * Large lists of numbers are best held in int[], long[], {@link SortedIntSet}
+ * or {@link SortedLongSet} flags, which are parsed without boxing:
+ * <pre>
+ * <code>
+ *    {@literal @}FlagInfo(help = "primitive array example")
+ *    private static final Flag<long[]> ids = Flags.valueOf(new long[0]);
+ *
+ *    java MyApp --ids=3,4,5,6,6,7
+ * </code>
+ * </pre>
+ *
  *
  * To parse the flags from the command line, use
  * {@link #parse(String[], String[])}, or use
@@ -118,6 +144,60 @@ import com.google.common.collect.TreeBasedTable;
 public final class Flags {
   private Flags() {};
 
+  /**
+   * System property that, when "true", makes {@link #parse(String[], String[])}
+   * scan the classpath for flags instead of reading the
+   * {@link FlagIndex} instances generated by {@link FlagInfoProcessor}. Use
+   * this when some flags live in classes compiled without the processor.
+   */
+  public static final String CLASSPATH_SCAN_PROPERTY =
+      "me.kennyyu.flags.classpathScan";
+
+  /**
+   * System property naming a file in which to cache the results of classpath
+   * scans. The cache is keyed by a fingerprint of the classpath entries and is
+   * reused by later JVMs for as long as no jar or class file changes.
+   */
+  public static final String SCAN_CACHE_PROPERTY =
+      "me.kennyyu.flags.scanCache";
+
+  /**
+   * System property with the number of threads used to scan the classpath.
+   * When greater than 1, each classpath entry is scanned as a separate task
+   * and the results are merged.
+   */
+  public static final String SCAN_THREADS_PROPERTY =
+      "me.kennyyu.flags.scanThreads";
+
+  /**
+   * System property that, when "true" as the first flag is created, makes
+   * every read of a flag counted for {@link FlagsMBean}. Reads are not
+   * counted by default, so that reading a flag stays a single volatile read.
+   */
+  public static final String COUNT_READS_PROPERTY =
+      "me.kennyyu.flags.countReads";
+
+  /**
+   * System property that, when "true", makes parsers register
+   * {@link FlagsMBean} and {@link ParseStatsMXBean} by default. See
+   * {@link FlagParser#jmx(boolean)}.
+   */
+  public static final String JMX_PROPERTY = "me.kennyyu.flags.jmx";
+
+  /**
+   * Memoized registries, keyed by class loader and parser configuration. The
+   * registries are softly referenced so that class loaders of unloaded
+   * applications can be collected.
+   */
+  private static final Cache<List<Object>, FlagRegistry> REGISTRIES =
+      CacheBuilder.newBuilder().softValues().build();
+
+  private static final ThreadFactory SCAN_THREAD_FACTORY =
+      new ThreadFactoryBuilder()
+          .setNameFormat("flags-scan-%d")
+          .setDaemon(true)
+          .build();
+
   /**
    * Create a {@link Flag} with the given value.
    */
@@ -125,6 +205,67 @@ public final class Flags {
     return new FlagImpl<T>(flagValue);
   }
 
+  /**
+   * Create an {@link IntFlag} with the given value.
+   */
+  public static IntFlag valueOf(int flagValue) {
+    return new IntFlagImpl(flagValue);
+  }
+
+  /**
+   * Create a {@link LongFlag} with the given value.
+   */
+  public static LongFlag valueOf(long flagValue) {
+    return new LongFlagImpl(flagValue);
+  }
+
+  /**
+   * Create a {@link DoubleFlag} with the given value.
+   */
+  public static DoubleFlag valueOf(double flagValue) {
+    return new DoubleFlagImpl(flagValue);
+  }
+
+  /**
+   * Create a {@link BooleanFlag} with the given value.
+   */
+  public static BooleanFlag valueOf(boolean flagValue) {
+    return new BooleanFlagImpl(flagValue);
+  }
+
+  /*
+   * The remaining primitive types are boxed, so that they are not widened to
+   * one of the primitive flags above.
+   */
+
+  /**
+   * Create a {@link Flag} with the given value.
+   */
+  public static Flag<Byte> valueOf(byte flagValue) {
+    return new FlagImpl<Byte>(flagValue);
+  }
+
+  /**
+   * Create a {@link Flag} with the given value.
+   */
+  public static Flag<Short> valueOf(short flagValue) {
+    return new FlagImpl<Short>(flagValue);
+  }
+
+  /**
+   * Create a {@link Flag} with the given value.
+   */
+  public static Flag<Character> valueOf(char flagValue) {
+    return new FlagImpl<Character>(flagValue);
+  }
+
+  /**
+   * Create a {@link Flag} with the given value.
+   */
+  public static Flag<Float> valueOf(float flagValue) {
+    return new FlagImpl<Float>(flagValue);
+  }
+
   /**
    * Create a {@link Flag} holding a {@link List} of values.
    */
@@ -147,36 +288,46 @@ public final class Flags {
   }
 
   /**
-   * Private implementation of {@link Flag}.
+   * Create a {@link MutableFlag} with the given value, which may also be
+   * updated after the flags are parsed.
    */
-  private static class FlagImpl<T> implements Flag<T> {
-    private final T value;
-    private final T defaultValue;
-
-    public FlagImpl(T value) {
-      this.value = value;
-      this.defaultValue = value;
-    }
-
-    public FlagImpl(T value, T defaultValue) {
-      this.value = value;
-      this.defaultValue = defaultValue;
-    }
+  public static <T> MutableFlag<T> mutableValueOf(T flagValue) {
+    return new MutableFlagImpl<T>(flagValue);
+  }
 
-    @Override
-    public T get() {
-      return value;
-    }
+  /**
+   * Returns the latest {@link FlagSnapshot}, holding consistent values of all
+   * flags parsed so far. Take one snapshot per unit of work, e.g. per request,
+   * to read related flags that may be updated together.
+   */
+  public static FlagSnapshot snapshot() {
+    return FlagSnapshot.current();
+  }
 
-    @Override
-    public T defaultValue() {
-      return defaultValue;
-    }
+  /**
+   * Registers the converter used to parse flags of the given type, including
+   * the elements, keys and values of collection flags. Replaces the built in
+   * converter or any converter previously registered for the type.
+   */
+  public static <T> void registerConverter(
+      Class<T> type, FlagConverter<? extends T> converter) {
+    FlagConverters.register(type, converter);
+    // registries hold the converters resolved when they were built
+    REGISTRIES.invalidateAll();
   }
 
   @FlagInfo(help = "display this help menu", altName="h")
   private static Flag<Boolean> help = Flags.valueOf(false);
 
+  /**
+   * Name of the flag naming a file of flags to load and watch for changes.
+   */
+  static final String FLAG_FILE = "flagfile";
+
+  @FlagInfo(help = "file with one --flagName=value per line, reloaded when "
+      + "it changes")
+  private static Flag<String> flagfile = Flags.valueOf("");
+
   /**
    * Parses the command line arguments and updates as necessary all {@link Flag}
    * objects annotated with {@link FlagInfo}.
@@ -184,6 +335,15 @@ public final class Flags {
    * If "--help" of "-h" is passed in at the command line, then the help menu
    * will be printed and the JVM will exit with a 0 exit status.
    *
+   * If "--flagfile=path" is passed in at the command line, then the flags in
+   * that file, one "--flagName=value" per line, are also loaded. Flags passed
+   * at the command line take precedence. The file is then watched, and the
+   * flags whose values change in the file are updated together, or not at all
+   * if any new value is illegal.
+   *
+   * An argument "@path" is replaced by the arguments in that file, separated
+   * by whitespace, in place. See {@link FlagParser#argsFiles(boolean)}.
+   *
    * @param args command line arguments in the form
    *     "--defaultFlagName=value --booleanFlag -c=foo ..."
    * @param flagEnvs Set of flag environments to load. All files in the current
@@ -204,385 +364,570 @@ public final class Flags {
    */
   public static void parseWithExceptions(String[] args, String... flagEnvs)
       throws FlagException {
-    Set<Field> fields = getAnnotatedFields(flagEnvs);
-    ensureAnnotatedFieldsAreFlags(fields);
-
-    Set<Field> inacessibleFields = makeFieldsAccessible(fields);
-    Map<String, String> altNameToFullNameMap = makeAltNameToFullNameMap(fields);
-    Set<String> allFieldsNameSet = makeAllFieldsNameSet(fields);
-    Map<String, String> providedFieldValuesMap = makeProvidedFieldValuesMap(
-        args, allFieldsNameSet, altNameToFullNameMap);
-    setFieldValues(fields, providedFieldValuesMap);
-
-    if (help.get()) {
-      printHelp(makeHelpTable(fields));
+    parser().environments(flagEnvs).parseWithExceptions(args);
+  }
+
+  /**
+   * Writes the values of the flags of the environments, as in
+   * {@link #snapshot()}, to out in a compact binary encoding. A child process
+   * can restore the flags with {@link #importSnapshot(InputStream, String[])}
+   * instead of parsing a long command line. The stream is flushed but not
+   * closed.
+   * @param flagEnvs Set of flag environments to export, as in
+   *     {@link #parse(String[], String[])}
+   * @throws UnsupportedFlagTypeException if a flag holds a value of a type
+   *     parsed by a registered converter, which cannot be encoded
+   * @throws FlagException if out cannot be written
+   */
+  public static void exportSnapshot(OutputStream out, String... flagEnvs)
+      throws FlagException {
+    parser().environments(flagEnvs).exportSnapshot(out);
+  }
+
+  /**
+   * Reads all remaining bytes of in and restores the flags of the
+   * environments to the values exported by
+   * {@link #exportSnapshot(OutputStream, String[])}. Flags which are not in the
+   * snapshot keep their values, and flags of the snapshot which are not in
+   * the environments are ignored. No flag is updated if the snapshot cannot
+   * be read.
+   * @param flagEnvs Set of flag environments to load, as in
+   *     {@link #parse(String[], String[])}
+   * @throws FlagException if in cannot be read, does not hold a snapshot, or
+   *     holds a value which does not match the type of its flag
+   */
+  public static void importSnapshot(InputStream in, String... flagEnvs)
+      throws FlagException {
+    parser().environments(flagEnvs).importSnapshot(in);
+  }
+
+  /**
+   * Same as {@link #importSnapshot(InputStream, String[])}, but reads the
+   * snapshot from the position of buffer, e.g. a mapped file. The position
+   * is advanced past the snapshot.
+   */
+  public static void importSnapshot(ByteBuffer buffer, String... flagEnvs)
+      throws FlagException {
+    parser().environments(flagEnvs).importSnapshot(buffer);
+  }
+
+  /**
+   * Same as {@link #parseWithExceptions(String[], String[])}, but also
+   * returns the time and memory spent in each phase of the parse.
+   */
+  public static ParseStats parseWithStats(String[] args, String... flagEnvs)
+      throws FlagException {
+    return parser().environments(flagEnvs).parseWithStats(args);
+  }
+
+  /**
+   * Returns a new {@link FlagParser} for configuring how flags are discovered,
+   * e.g. to only load flags from specific packages.
+   */
+  public static FlagParser parser() {
+    return new FlagParser();
+  }
+
+  /**
+   * Parses the command line arguments with the configuration of parser.
+   * @param recordStats whether to measure the parse, which is also measured
+   *     if the parser registers the JMX beans
+   * @return the statistics of the parse, or null if they are not recorded
+   */
+  static ParseStats parseWithExceptions(
+      FlagParser parser, String[] args, boolean recordStats)
+      throws FlagException {
+    recordStats |= parser.isJmx();
+    ParseStats.Recorder recorder = recordStats
+        ? new ParseStats.Recorder() : ParseStats.Recorder.NONE;
+    FlagRegistry registry = getRegistry(parser, recorder);
+    setFieldValues(parser, registry, args, recorder);
+
+    boolean showHelp = help.get();
+    recorder.stop(ParseStats.Phase.HELP);
+    ParseStats stats = null;
+    if (recordStats) {
+      stats = recorder.finish();
+      LatestParseStats.record(stats);
+    }
+    registerBeans(parser);
+    if (showHelp) {
+      printHelp(makeHelpTable(registry));
       System.exit(0);
     }
+    return stats;
+  }
 
-    // mark previously inaccessible fields as inaccessible again
-    for (Field field : inacessibleFields) {
-      field.setAccessible(false);
+  /**
+   * Writes the values of the flags of the configuration of parser in the
+   * latest snapshot to out. Flags which have not been parsed yet are written
+   * with their current values.
+   */
+  static void exportSnapshot(FlagParser parser, OutputStream out)
+      throws FlagException {
+    FlagSnapshot snapshot = FlagSnapshot.current();
+    List<FlagField> flagFields =
+        getRegistry(parser, ParseStats.Recorder.NONE).getFlagFields();
+    Map<String, Object> values = Maps.newHashMapWithExpectedSize(
+        flagFields.size());
+    for (FlagField flagField : flagFields) {
+      Flag<?> flag = flagField.getFlag();
+      values.put(flagField.getName(),
+          snapshot.contains(flag) ? snapshot.get(flag) : flag.get());
+    }
+    SnapshotCodec.write(values, out);
+  }
+
+  /**
+   * Restores the flags of the configuration of parser from the snapshot in
+   * buffer.
+   */
+  static void importSnapshot(FlagParser parser, ByteBuffer buffer)
+      throws FlagException {
+    FlagRegistry registry = getRegistry(parser, ParseStats.Recorder.NONE);
+    writeValues(SnapshotCodec.read(registry, buffer),
+        registry.getFlagFields());
+    registerBeans(parser);
+  }
+
+  /**
+   * Registers {@link FlagsMBean} and {@link ParseStatsMXBean}, if parser is
+   * configured to with {@link FlagParser#jmx(boolean)}.
+   */
+  private static void registerBeans(FlagParser parser) {
+    if (parser.isJmx()) {
+      LiveFlags.register();
+      LatestParseStats.register();
     }
   }
 
   /**
-   * Ensures that all fields are Flag objects
-   * @param fields
-   * @throws IllegalFlagAnnotationException if any field is not a Flag object
+   * Returns the {@link FlagRegistry} for the configuration of parser, building
+   * it if no registry for the same class loader, environments, packages,
+   * discovery mode, collection mode and string pool size is memoized yet.
+   * @throws FlagException if the flags cannot be discovered or are invalid
    */
-  private static void ensureAnnotatedFieldsAreFlags(Set<Field> fields)
-      throws IllegalFlagAnnotationException {
-    for (Field field : fields) {
-      if (!field.getType().equals(Flag.class))
-        throw new IllegalFlagAnnotationException(field);
+  private static FlagRegistry getRegistry(
+      FlagParser parser, ParseStats.Recorder recorder) throws FlagException {
+    List<Object> key = ImmutableList.<Object>of(
+        getFlagClassLoader(),
+        parser.getEnvironments(),
+        parser.getPackages(),
+        parser.isClasspathScan(),
+        parser.isMutableCollections(),
+        parser.getStringPoolSize());
+    FlagRegistry registry = REGISTRIES.getIfPresent(key);
+    if (registry == null) {
+      Set<Field> fields = getAnnotatedFields(parser, recorder);
+      registry = FlagRegistry.build(fields,
+          parser.isMutableCollections(), parser.getStringPoolSize());
+      REGISTRIES.put(key, registry);
+    } else {
+      recorder.setRegistryMemoized(true);
     }
+    recorder.stop(ParseStats.Phase.REGISTRY);
+    return registry;
   }
 
   /**
-   * Returns all fields annotated with {@link FlagInfo}
-   * @param flagEnvs See {@link #parse(String[], Set)}
+   * Returns all fields annotated with {@link FlagInfo} in the environments and
+   * packages of parser. The fields are looked up in the {@link FlagIndex}
+   * instances generated by {@link FlagInfoProcessor}. The classpath is
+   * scanned instead if no index is available, or if the parser is configured
+   * to scan the classpath.
    * @return all {@link Field} objects annotated with {@link FlagInfo}.
+   * @throws FlagException if a field cannot be loaded
    */
-  private static Set<Field> getAnnotatedFields(String... flagEnvs) {
-    ConfigurationBuilder builder = new ConfigurationBuilder()
-        .setUrls(ClasspathHelper.forJavaClassPath())
-        .setScanners(
-            new TypeAnnotationsScanner(),
-            new TypesScanner(),
-            new FieldAnnotationsScanner());
-    Reflections reflections = new Reflections(builder);
-    Set<Field> fields = reflections.getFieldsAnnotatedWith(FlagInfo.class);
-    Set<Field> fieldsCopy = ImmutableSet.copyOf(fields);
-    Set<String> flagEnvSet = flagEnvs.length == 0 ?
-        ImmutableSet.of("") : ImmutableSet.copyOf(flagEnvs);
+  static Set<Field> getAnnotatedFields(FlagParser parser)
+      throws FlagException {
+    return getAnnotatedFields(parser, ParseStats.Recorder.NONE);
+  }
 
-    // only return fields with the provided environments
-    for (Field field : fieldsCopy) {
-      FlagInfo flagDescription = field.getAnnotation(FlagInfo.class);
-      if (!flagEnvSet.contains(flagDescription.environment())) {
-        fields.remove(field);
+  private static Set<Field> getAnnotatedFields(
+      FlagParser parser, ParseStats.Recorder recorder) throws FlagException {
+    Set<Field> fields = null;
+    if (!parser.isClasspathScan()) {
+      fields = getIndexedFields(parser);
+      recorder.stop(ParseStats.Phase.SCAN);
+    }
+    if (fields == null) {
+      fields = scanAnnotatedFields(parser, recorder);
+    }
+    // the library's own flags are always loaded, and are compiled without the
+    // processor
+    if (parser.getEnvironments().contains("")) {
+      try {
+        fields.add(Flags.class.getDeclaredField("help"));
+        fields.add(Flags.class.getDeclaredField(FLAG_FILE));
+      } catch (NoSuchFieldException e) {
+        throw new FlagException(e);
       }
     }
+    recorder.stop(ParseStats.Phase.FILTER);
     return fields;
   }
 
   /**
-   * Retrieve all fields that are inaccessible from this class and marks them
-   * as accessible.
-   * @return the set of fields that were inaccessible.
+   * Returns all fields listed in the {@link FlagIndex} instances on the
+   * classpath with the environments and packages of parser, or null if there
+   * is no index.
+   * @throws FlagException if an indexed field cannot be loaded
    */
-  private static Set<Field> makeFieldsAccessible(Set<Field> fields) {
-    Set<Field> inaccessibleFields = Sets.newHashSet();
-    for (Field field : fields) {
-      if (!field.isAccessible()) {
-        field.setAccessible(true);
-        inaccessibleFields.add(field);
+  private static Set<Field> getIndexedFields(FlagParser parser)
+      throws FlagException {
+    ClassLoader classLoader = getFlagClassLoader();
+    List<FlagIndex> indexes = Lists.newArrayList();
+    try {
+      for (FlagIndex index : ServiceLoader.load(FlagIndex.class, classLoader)) {
+        indexes.add(index);
+      }
+    } catch (ServiceConfigurationError e) {
+      throw new FlagException(e);
+    }
+    if (indexes.isEmpty()) {
+      return null;
+    }
+
+    Set<Field> fields = Sets.newHashSet();
+    for (FlagIndex index : indexes) {
+      for (String flagEnv : parser.getEnvironments()) {
+        for (String coordinates : index.fields(flagEnv)) {
+          if (isInPackages(coordinates, parser.getPackages())) {
+            fields.add(loadField(coordinates, classLoader));
+          }
+        }
       }
     }
-    return inaccessibleFields;
+    return fields;
   }
 
   /**
-   * Returns {@link Map} mapping (flag name or alternate name) -> (flag name).
+   * Returns true if className, or coordinates of the form
+   * "binary.class.Name#fieldName", is in one of the packages or their
+   * subpackages. Every class is in the empty set of packages.
    */
-  private static Map<String, String> makeAltNameToFullNameMap(
-      Set<Field> fields) {
-    Map<String, String> altNameToFullNameMap = Maps.newHashMap();
-    for (Field field : fields) {
-      FlagInfo flagDescription = field.getAnnotation(FlagInfo.class);
-      if (!flagDescription.altName().equals("")) {
-        altNameToFullNameMap.put(flagDescription.altName(), field.getName());
+  private static boolean isInPackages(String className, Set<String> packages) {
+    if (packages.isEmpty()) {
+      return true;
+    }
+    for (String packageName : packages) {
+      if (className.startsWith(packageName + ".")) {
+        return true;
       }
-      altNameToFullNameMap.put(field.getName(), field.getName());
     }
-    return altNameToFullNameMap;
+    return false;
   }
 
   /**
-   * Returns {@link Set} containing all the string versions of the flag names.
-   * @throws DuplicateFlagNameException if multiple flags have the same name
+   * Returns the {@link ClassLoader} used to load flag classes.
    */
-  private static Set<String> makeAllFieldsNameSet(Set<Field> fields)
-      throws DuplicateFlagNameException {
-    Set<String> allFieldsNameSet = Sets.newHashSet();
-    for (Field field : fields) {
-      FlagInfo flagDescription = field.getAnnotation(FlagInfo.class);
-      if (!flagDescription.altName().equals("")) {
-        if (allFieldsNameSet.contains(flagDescription.altName())) {
-          throw new DuplicateFlagNameException(flagDescription.altName());
-        }
-        allFieldsNameSet.add(flagDescription.altName());
+  static ClassLoader getFlagClassLoader() {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    return classLoader != null ? classLoader : Flags.class.getClassLoader();
+  }
+
+  /**
+   * Loads the field named by coordinates of the form
+   * "binary.class.Name#fieldName", without initializing its class.
+   * @throws FlagException if the class or field no longer exists
+   */
+  static Field loadField(
+      String coordinates, ClassLoader classLoader) throws FlagException {
+    int hashIndex = coordinates.indexOf('#');
+    try {
+      Class<?> declaringClass = Class.forName(
+          coordinates.substring(0, hashIndex), false, classLoader);
+      return declaringClass.getDeclaredField(
+          coordinates.substring(hashIndex + 1));
+    } catch (ClassNotFoundException e) {
+      throw new FlagException("unknown flag field: " + coordinates, e);
+    } catch (NoSuchFieldException e) {
+      throw new FlagException("unknown flag field: " + coordinates, e);
+    }
+  }
+
+  /**
+   * Scans the classpath for fields annotated with {@link FlagInfo} in the
+   * environments of parser. If the parser has packages, only the classpath
+   * entries containing those packages are scanned. If the parser has a scan
+   * cache, the results of the scan are stored there and reused by later scans
+   * of the same classpath.
+   * @throws FlagException if the scan fails or a field cannot be loaded
+   */
+  private static Set<Field> scanAnnotatedFields(
+      FlagParser parser, ParseStats.Recorder recorder) throws FlagException {
+    Set<URL> urls;
+    if (parser.getPackages().isEmpty()) {
+      urls = ClasspathHelper.forJavaClassPath();
+    } else {
+      urls = Sets.newHashSet();
+      for (String packageName : parser.getPackages()) {
+        urls.addAll(ClasspathHelper.forPackage(
+            packageName, getFlagClassLoader()));
       }
-      if (allFieldsNameSet.contains(field.getName())) {
-        throw new DuplicateFlagNameException(field.getName());
+    }
+    ScanCache cache = parser.getScanCache() == null
+        ? null : new ScanCache(parser.getScanCache());
+    ExecutorService executor = parser.getScanExecutor();
+    int scanThreads = Integer.getInteger(SCAN_THREADS_PROPERTY, 1);
+    boolean ownsExecutor = executor == null && scanThreads > 1;
+    if (ownsExecutor) {
+      executor = Executors.newFixedThreadPool(scanThreads, SCAN_THREAD_FACTORY);
+    }
+    Set<Field> fields;
+    try {
+      fields = new ClasspathScanner(
+          urls, parser.getPackages(), cache, executor).scan();
+    } finally {
+      if (ownsExecutor) {
+        executor.shutdownNow();
+      }
+    }
+    recorder.stop(ParseStats.Phase.SCAN);
+    Set<Field> fieldsCopy = ImmutableSet.copyOf(fields);
+
+    // only return fields with the provided environments
+    for (Field field : fieldsCopy) {
+      FlagInfo flagDescription = field.getAnnotation(FlagInfo.class);
+      if (!parser.getEnvironments().contains(flagDescription.environment())) {
+        fields.remove(field);
       }
-      allFieldsNameSet.add(field.getName());
     }
-    return allFieldsNameSet;
+    return fields;
   }
 
   /**
-   * Return a map that takes each string of the form
-   *      "--flagName=stringValue"
-   * and creates a map (flagName) -> (stringValue).
+   * Updates all flags passed in args of the form "--flagName=stringValue" or
+   * "-altName=stringValue". Each argument is scanned once, and names and
+   * values are passed on as index ranges of the argument. If a flag is passed
+   * more than once, the last value is used.<br><br>
+   *
+   * If the parser expands arguments files, an argument "@path" naming a
+   * regular file is replaced by the arguments of the {@link ArgsFile}, whose
+   * values are ranges of the decoded file. Other arguments starting with "@"
+   * are passed through unchanged.<br><br>
    *
+   * If "--flagfile" is passed, the flags in that file are also loaded, and
+   * the file is watched for changes by a {@link FlagFileWatcher}. Flags
+   * passed in args take precedence over the file. All values are converted
+   * before any flag is updated.
+   *
+   * If the parser has a {@link SharedFlagStore}, the primitive flags in it
+   * which are not passed in args or the flag file are bound to the store.
+   *
+   * @param parser the configuration of the parse
+   * @param registry the flags that may be passed
    * @param args strings of the form "--flagName=stringValue"
-   * @param allFieldsNameSet set of all possible flags as strings
-   * @param altNameToFullNameMap map from all possible names of a flag to the
-   *    flag's canonical name
    * @throws UnknownFlagNameException if a flag passed at the command line is
    *    not recognized
+   * @throws FlagException if a value cannot be parsed or assigned, or if the
+   *    flag file or shared store cannot be read
    */
-  private static Map<String, String> makeProvidedFieldValuesMap(
+  private static void setFieldValues(
+      FlagParser parser,
+      FlagRegistry registry,
       String[] args,
-      Set<String> allFieldsNameSet,
-      Map<String, String> altNameToFullNameMap)
-      throws UnknownFlagNameException {
-    Map<String, String> providedFieldValuesMap = Maps.newHashMap();
+      ParseStats.Recorder recorder) throws FlagException {
+    List<FlagField> flagFields = registry.getFlagFields();
+    ProvidedValues provided = new ProvidedValues(registry);
+    ArgumentScanner scanner = new ArgumentScanner();
     for (String arg : args) {
-      String flagName = "";
-      String value = "";
-
-      if (!arg.startsWith("-")) {
-        continue; // skip this string
-      } else if (arg.startsWith("--")) {
-        // parse out --flag=value
-        int equalsIndex = arg.indexOf("=");
-        flagName = arg.substring(2);
-        if ((equalsIndex) >= 2) {
-          flagName = arg.substring(2, equalsIndex);
-          value = arg.substring(equalsIndex + 1);
-        }
-      } else if (arg.startsWith("-")) {
-        // parse out -f=value
-        int equalsIndex = arg.indexOf("=");
-        flagName = arg.substring(1);
-        if ((equalsIndex) >= 1) {
-          flagName = arg.substring(1, equalsIndex);
-          value = arg.substring(equalsIndex + 1);
+      Path argsFilePath = parser.isArgsFiles() ? ArgsFile.getPath(arg) : null;
+      if (argsFilePath != null) {
+        ArgsFile argsFile = ArgsFile.read(argsFilePath);
+        while (argsFile.next()) {
+          provided.scan(scanner, argsFile.getChars(),
+              argsFile.getStart(), argsFile.getEnd());
         }
+      } else {
+        provided.scan(scanner, arg, 0, arg.length());
+      }
+    }
+    recorder.stop(ParseStats.Phase.TOKENIZE);
+    Map<FlagField, Object> values = Maps.newLinkedHashMap();
+    for (int i = 0; i < flagFields.size(); i++) {
+      CharSequence source = provided.sources[i];
+      if (source != null) { // check if the flag was provided
+        values.put(flagFields.get(i), convertOrDefer(parser, flagFields.get(i),
+            source, provided.valueStarts[i], provided.valueEnds[i]));
       }
+    }
 
-      // throw exception if the flag is not recognized
-      if (!allFieldsNameSet.contains(flagName)) {
-        throw new UnknownFlagNameException(flagName);
+    int flagFileIndex = getFlagFileIndex(registry);
+    if (flagFileIndex >= 0
+        && values.get(flagFields.get(flagFileIndex)) instanceof LazyValue) {
+      // the path is needed now
+      FlagField flagFileField = flagFields.get(flagFileIndex);
+      values.put(flagFileField,
+          ((LazyValue<?>) values.get(flagFileField)).get());
+    }
+    recorder.stop(ParseStats.Phase.CONVERT);
+    String path = flagFileIndex >= 0
+        ? (String) values.get(flagFields.get(flagFileIndex)) : null;
+    if (path != null && !path.isEmpty()) {
+      Set<FlagField> commandLineFields = ImmutableSet.copyOf(values.keySet());
+      Map<FlagField, String> fileValues = FlagFileWatcher.readValues(
+          registry, Paths.get(path), commandLineFields);
+      recorder.stop(ParseStats.Phase.TOKENIZE);
+      for (Entry<FlagField, String> entry : fileValues.entrySet()) {
+        String value = entry.getValue();
+        values.put(entry.getKey(),
+            convertOrDefer(parser, entry.getKey(), value, 0, value.length()));
       }
+      recorder.stop(ParseStats.Phase.CONVERT);
+      bindSharedStore(parser, registry, values.keySet());
+      writeValues(values, flagFields);
+      FlagFileWatcher.watch(
+          registry, Paths.get(path), commandLineFields, fileValues);
+    } else {
+      bindSharedStore(parser, registry, values.keySet());
+      writeValues(values, flagFields);
+    }
+    recorder.stop(ParseStats.Phase.ASSIGN);
+  }
 
-      // get the flag's canonical name
-      String fullName = altNameToFullNameMap.get(flagName);
-      providedFieldValuesMap.put(fullName, value);
+  private static void bindSharedStore(
+      FlagParser parser, FlagRegistry registry, Set<FlagField> passedFields)
+      throws FlagException {
+    if (parser.getSharedStore() != null) {
+      SharedFlagStore.open(parser.getSharedStore())
+          .bind(registry, passedFields);
     }
-    return providedFieldValuesMap;
   }
 
   /**
-   * Updates all flags to the values provided at the command line.
-   * @throws FlagException if the field cannot be assessed
+   * Converts the value between start and end, or returns a {@link LazyValue}
+   * converting it on first use if the parser is lazy and the flag can be
+   * updated lazily.
+   * @throws FlagException if the value is converted or validated and cannot
+   *     be converted
    */
-  private static void setFieldValues(
-      Set<Field> fields,
-      Map<String,
-      String> providedFieldValuesMap) throws FlagException {
-    for (Field field : fields) {
-      String flagValueString = providedFieldValuesMap.get(field.getName());
-      if (flagValueString != null) { // check if the flag was provided
-        setFinalStaticField(field, flagValueString);
-      }
+  private static Object convertOrDefer(
+      FlagParser parser,
+      FlagField flagField,
+      CharSequence value,
+      int start,
+      int end) throws FlagException {
+    if (!parser.isLazy() || !flagField.getWriter().isLazilyWritable()) {
+      return convertValue(flagField, value, start, end);
+    }
+    LazyValue<Object> lazyValue =
+        new LazyValue<Object>(flagField, value, start, end);
+    if (parser.isValidate()) {
+      lazyValue.validate();
     }
+    return lazyValue;
   }
 
   /**
-   * Updates field, possibly with {@literal static} and {@literal final}
-   * modifiers, to be the corresponding value of flagValueString.
-   *
-   * Hack taken from: http://www.javaspecialists.eu/archive/Issue161.html
-   *
-   * @throws FlagException if the field cannot be accessed
+   * The last value passed for each flag of a registry, as a range of the
+   * argument or arguments file it was passed in. Also used by
+   * {@link FlagFileWatcher} to read flag files.
    */
-  private static void setFinalStaticField(Field field, String flagValueString)
-      throws FlagException {
-    try {
-      Field modifiersField = Field.class.getDeclaredField("modifiers");
-      int oldModifiers = field.getModifiers();
-      if (Modifier.isFinal(oldModifiers)) {
-        modifiersField.setAccessible(true);
-        modifiersField.setInt(field, oldModifiers & ~Modifier.FINAL);
-        setField(field, flagValueString);
-        modifiersField.setInt(field, oldModifiers);
-        modifiersField.setAccessible(false);
-      } else {
-        setField(field, flagValueString);
+  static final class ProvidedValues {
+
+    private final FlagRegistry registry;
+    /** The sequence holding the value of each flag, or null */
+    final CharSequence[] sources;
+    final int[] valueStarts;
+    final int[] valueEnds;
+
+    ProvidedValues(FlagRegistry registry) {
+      int flagCount = registry.getFlagFields().size();
+      this.registry = registry;
+      this.sources = new CharSequence[flagCount];
+      this.valueStarts = new int[flagCount];
+      this.valueEnds = new int[flagCount];
+    }
+
+    /**
+     * Records the value of the argument between start and end of args, if
+     * it is a flag.
+     * @throws UnknownFlagNameException if the flag is not recognized
+     */
+    void scan(ArgumentScanner scanner, CharSequence args, int start, int end)
+        throws UnknownFlagNameException {
+      if (!scanner.scan(args, start, end)) {
+        return; // skip this string
       }
-    } catch (NoSuchFieldException e) {
-      throw new FlagException(e);
-    } catch (IllegalAccessException e) {
-      throw new FlagException(e);
+      int nameStart = scanner.getNameStart();
+      int nameEnd = scanner.getNameEnd();
+      int flagIndex = registry.getFlagIndex(args, nameStart, nameEnd);
+      if (flagIndex < 0) {
+        throw new UnknownFlagNameException(
+            args.subSequence(nameStart, nameEnd).toString());
+      }
+      sources[flagIndex] = args;
+      valueStarts[flagIndex] = scanner.getValueStart();
+      valueEnds[flagIndex] = end;
     }
+
   }
 
   /**
-   * Updates field to be the corresponding value of flagValueString.
-   * @throws FlagException if the type nested in the flag is illegal, or if the
-   *    field cannot be accessed
+   * Returns the index of the library's "--flagfile" flag in registry, or -1
+   * if the registry does not contain it.
    */
-  private static void setField(Field field, String flagValueString)
-      throws FlagException {
-    // Get the type nested inside Flag<?>
-    Type parameter = ((ParameterizedType) field.getGenericType())
-        .getActualTypeArguments()[0];
-
-    // Get the parameters nested inside Flag<Collection<?>>
-    if (parameter instanceof ParameterizedType) {
-      Type rawType = ((ParameterizedType) parameter).getRawType();
-      if (rawType.equals(List.class)) {
-        Type listParameter = ((ParameterizedType) parameter)
-            .getActualTypeArguments()[0];
-        setListField(field, flagValueString, (Class<?>) listParameter);
-      } else if (rawType.equals(Set.class)) {
-        Type setParameter = ((ParameterizedType) parameter)
-            .getActualTypeArguments()[0];
-        setSetField(field, flagValueString, (Class<?>) setParameter);
-      } else if (rawType.equals(Map.class)) {
-        Type[] parameters = ((ParameterizedType) parameter)
-            .getActualTypeArguments();
-        setMapField(
-            field,
-            flagValueString,
-            (Class<?>) parameters[0],
-            (Class<?>) parameters[1]);
-      } else {
-        throw new UnsupportedFlagTypeException(parameter);
-      }
-    } else if (parameter instanceof Class) {
-      setField(field, valueOfString(flagValueString, (Class<?>) parameter));
-    } else {
-      throw new UnsupportedFlagTypeException(parameter);
+  static int getFlagFileIndex(FlagRegistry registry) {
+    int index = registry.getFlagIndex(FLAG_FILE, 0, FLAG_FILE.length());
+    if (index >= 0 && registry.getFlagFields().get(index).getField()
+        .getDeclaringClass() != Flags.class) {
+      return -1;
     }
+    return index;
   }
 
   /**
-   * Updates the Flag's value in field to be the new value, and leaves the
-   * default value unchanged.
-   * @param field the field containing the flag
-   * @param value the new value of the flag
-   * @throws FlagException if the field cannot be accessed
+   * Updates each flag to its new value, publishes a new {@link FlagSnapshot},
+   * and dispatches the changes to the listeners of the flags as one batch.
+   * @param values new values converted by
+   *     {@link #convertValue(FlagField, CharSequence, int, int)}
+   * @param snapshotFields the flags to track in the snapshot from now on,
+   *     which include the keys of values
+   * @throws FlagException if a field cannot be accessed
    */
-  @SuppressWarnings("unchecked")
-  private static <T> void setField(Field field, T value) throws FlagException {
+  static void writeValues(
+      Map<FlagField, Object> values,
+      Collection<FlagField> snapshotFields) throws FlagException {
+    LiveFlags.track(snapshotFields);
+    List<FlagChange<?>> changes = Lists.newArrayList();
     try {
-      Flag<T> oldFlag = (Flag<T>) field.get(null);
-      field.set(null, new FlagImpl<T>(value, oldFlag.get()));
-    } catch (Exception e) {
-      throw new FlagException(e);
+      for (Entry<FlagField, Object> entry : values.entrySet()) {
+        FlagChange<?> change =
+            entry.getKey().getWriter().write(entry.getValue());
+        if (change != null) {
+          changes.add(change);
+        }
+      }
+    } finally {
+      // the flags written before a failure have changed too
+      try {
+        FlagSnapshot.publish();
+      } finally {
+        FlagChangeDispatcher.dispatch(changes);
+      }
     }
   }
 
   /**
-   * Updates field to be a {@link List} containing the values in flagValueString
-   * @param field the field to update
-   * @param flagValueString comma separated list of values in this list
-   * @param parameterType the type nested in this list
-   * @throws FlagException if the field cannot be accessed
-   */
-  private static <T> void setListField(
-      Field field,
-      String flagValueString,
-      Class<T> parameterType) throws FlagException {
-    List<T> elements = Lists.newArrayList();
-    String[] elementStrings = flagValueString.split(",");
-    for (String elementString : elementStrings) {
-      elements.add(valueOfString(elementString, parameterType));
-    }
-    setField(field, elements);
-  }
-
-  /**
-   * Updates field to be a {@link Set} containing the values in flagValueString
-   * @param field the field to update
-   * @param flagValueString comma separated list of values in this list
-   * @param parameterType the type nested in this list
-   * @throws FlagException if the field cannot be accessed
-   */
-  private static <T> void setSetField(
-      Field field,
-      String flagValueString,
-      Class<T> parameterType) throws FlagException {
-    Set<T> elements = Sets.newHashSet();
-    String[] elementStrings = flagValueString.split(",");
-    for (String elementString : elementStrings) {
-      elements.add(valueOfString(elementString, parameterType));
-    }
-    setField(field, elements);
-  }
-
-  /**
-   * Updates field to be a {@link Map} containing the values in flagValueString
-   * @param field the field to update
-   * @param flagValueString string formatted in the form
-   *    "key1:value1 key2:value2 ..."
-   * @param keyType type of the Key
-   * @param valueType type of the Value
-   * @throws FlagException if the map string is not properly formatted or if the
-   *    field cannot be accessed
-   */
-  private static <K,V> void setMapField(
-      Field field,
-      String flagValueString,
-      Class<K> keyType,
-      Class<V> valueType) throws FlagException {
-    Map<K,V> elements = Maps.newHashMap();
-    flagValueString =
-        flagValueString.substring(1, flagValueString.length() - 1);
-    String[] elementStrings = flagValueString.split(" ");
-    for (String elementString : elementStrings) {
-      String[] components = elementString.split(":");
-      if (components.length != 2) {
-        throw new IllegalFlagFormatException(elementString);
-      }
-      elements.put(
-          valueOfString(components[0], keyType),
-          valueOfString(components[1], valueType));
-    }
-    setField(field, elements);
-  }
-
-  /**
-   * Convert the string to the corresponding value of the provided class
-   * @param value the string to be parsed
-   * @param parsingClass the class to convert the string into
-   * @throws UnsupportedFlagTypeException if the type nested in the flag is not
-   *     supported
-   */
-  @SuppressWarnings({ "unchecked", "rawtypes" })
-  private static <T> T valueOfString(String value, Class<T> parsingClass)
-      throws UnsupportedFlagTypeException {
-    if (parsingClass.isEnum())
-      return (T) Enum.valueOf((Class) parsingClass, value);
-    if (parsingClass.equals(Byte.class))
-      return parsingClass.cast(new Byte((byte) Integer.parseInt(value, 16)));
-    if (parsingClass.equals(Short.class))
-      return parsingClass.cast(Short.parseShort(value));
-    if (parsingClass.equals(Integer.class))
-      return parsingClass.cast(Integer.parseInt(value));
-    if (parsingClass.equals(Long.class))
-      return parsingClass.cast(Long.parseLong(value));
-    if (parsingClass.equals(Float.class))
-      return parsingClass.cast(Float.parseFloat(value));
-    if (parsingClass.equals(Double.class))
-      return parsingClass.cast(Double.parseDouble(value));
-    if (parsingClass.equals(Boolean.class)) {
-      // handle special case where booleans don't require equal signs
-      // e.g. "--isLarge=true" is the same as "--isLarge"
-      if (value.equals(""))
-        return parsingClass.cast(new Boolean(true));
-      return parsingClass.cast(Boolean.parseBoolean(value));
-    }
-    if (parsingClass.equals(Character.class))
-      return parsingClass.cast(value.charAt(0));
-    if (parsingClass.equals(String.class)) {
-      return parsingClass.cast(value);
-    }
-    throw new UnsupportedFlagTypeException(parsingClass);
+   * Returns the value of the flag represented by the range of value between
+   * start (inclusive) and end (exclusive).
+   * @throws FlagException if the type nested in the flag is illegal, or if the
+   *    value cannot be converted
+   */
+  static Object convertValue(
+      FlagField flagField, CharSequence value, int start, int end)
+      throws FlagException {
+    FlagConverter<?> converter = flagField.getConverter();
+    if (converter == null) {
+      throw new UnsupportedFlagTypeException(flagField.getUnsupportedType());
+    }
+    try {
+      return converter.convert(value, start, end);
+    } catch (CollectionParser.NullElementException e) {
+      throw new FlagException("immutable collection flag "
+          + flagField.getName() + " cannot hold null: " + e.getMessage(), e);
+    }
   }
 
   /**
@@ -590,16 +935,12 @@ public final class Flags {
    * @throws FlagException if the value of the flag cannot be accessed.
    */
   private static Table<String, String, String> makeHelpTable(
-      Set<Field> fields) throws FlagException {
+      FlagRegistry registry) throws FlagException {
     Table<String, String, String> table = TreeBasedTable.create();
-    for (Field field : fields) {
-      FlagInfo flagDescription = field.getAnnotation(FlagInfo.class);
-      Flag<?> flag = null;
-      try {
-        flag = (Flag<?>) field.get(null);
-      } catch (Exception e) {
-        throw new FlagException(e);
-      }
+    for (FlagField flagField : registry.getFlagFields()) {
+      Field field = flagField.getField();
+      FlagInfo flagDescription = flagField.getFlagInfo();
+      Flag<?> flag = flagField.getFlag();
       String combinedFlagNames = flagDescription.altName().equals("")
           ? "--" + field.getName()
           : "--" + field.getName() + ", -" + flagDescription.altName()
@@ -0,0 +1,44 @@
+package me.kennyyu.flags;
+
+import java.util.List;
+
+import javax.management.MXBean;
+
+/**
+ * JMX view of every flag parsed in this JVM, registered with the platform
+ * MBeanServer as {@value #OBJECT_NAME} by the first parse with
+ * {@link FlagParser#jmx(boolean)} set. Operators can
+ * inspect the effective values of the flags of a running application, find
+ * the flags read most often if reads are counted with the
+ * {@value Flags#COUNT_READS_PROPERTY} system property, and update flags from
+ * a JMX console.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+@MXBean
+public interface FlagsMBean {
+
+  String OBJECT_NAME = "me.kennyyu.flags:type=Flags";
+
+  /**
+   * Returns the status of every parsed flag, sorted by name. If flags with
+   * the same name were parsed in different environments, the flag parsed
+   * last is returned.
+   */
+  List<FlagStatus> getFlags();
+
+  /**
+   * Returns the status of the flag with the given name or alternate name.
+   * @throws IllegalArgumentException if no such flag has been parsed
+   */
+  FlagStatus getFlag(String name);
+
+  /**
+   * Converts the value as if it were passed as "--name=value" and updates
+   * the flag, its snapshot and its listeners.
+   * @throws IllegalArgumentException if no such flag has been parsed, or if
+   *     the value cannot be converted
+   */
+  void setFlag(String name, String value);
+
+}
@@ -18,4 +18,10 @@ public class IllegalFlagAnnotationException extends FlagException {
         + FlagInfo.class);
   }
 
+  public IllegalFlagAnnotationException(Field field, String reason) {
+    super("field: " + field.toGenericString()
+        + " from " + field.getDeclaringClass() + " has an illegal "
+        + FlagInfo.class + ": " + reason);
+  }
+
 }
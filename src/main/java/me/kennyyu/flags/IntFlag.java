@@ -0,0 +1,28 @@
+package me.kennyyu.flags;
+
+/**
+ * {@link Flag} holding a primitive int, returned by
+ * {@link Flags#valueOf(int)}. Use {@link #getInt()} to read the value
+ * without boxing it, e.g. in tight loops:
+ * <pre>
+ * <code>
+ *    {@literal @}FlagInfo(help = "max number of threads to use")
+ *    private static final IntFlag maxNumThreads = Flags.valueOf(4);
+ * </code>
+ * </pre>
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public interface IntFlag extends Flag<Integer> {
+
+  /**
+   * Returns the value of this flag
+   */
+  int getInt();
+
+  /**
+   * Returns the default value of this flag
+   */
+  int defaultInt();
+
+}
@@ -0,0 +1,78 @@
+package me.kennyyu.flags;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Implementation of {@link IntFlag} backed by a volatile int field, or by a
+ * slot of a {@link SharedFlagStore} once bound to one.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class IntFlagImpl extends AbstractFlag<Integer> implements IntFlag {
+  private volatile int value;
+  private final int defaultValue;
+  /** The buffer of a {@link SharedFlagStore} holding the value, or null */
+  private volatile ByteBuffer shared;
+  private int sharedOffset;
+
+  IntFlagImpl(int value) {
+    this.value = value;
+    this.defaultValue = value;
+  }
+
+  IntFlagImpl(int value, int defaultValue) {
+    this.value = value;
+    this.defaultValue = defaultValue;
+  }
+
+  @Override
+  public int getInt() {
+    countRead();
+    return read();
+  }
+
+  @Override
+  public int defaultInt() {
+    return defaultValue;
+  }
+
+  @Override
+  public Integer get() {
+    return getInt();
+  }
+
+  @Override
+  public Integer defaultValue() {
+    return defaultValue;
+  }
+
+  @Override
+  synchronized Integer getAndSet(Integer value) {
+    int oldValue = read();
+    this.value = value;
+    // the value written replaces the value in the store for this process
+    this.shared = null;
+    return oldValue;
+  }
+
+  @Override
+  Object peek() {
+    return read();
+  }
+
+  private int read() {
+    ByteBuffer shared = this.shared;
+    return shared == null ? value : shared.getInt(sharedOffset);
+  }
+
+  /**
+   * Reads the value from the slot at offset in buffer from now on, or from
+   * this flag again if buffer is null. Updating this flag unbinds it, so that
+   * readers see the updated value. Binding and updating hold the lock of this
+   * flag, so that an update is never lost to a concurrent bind.
+   */
+  synchronized void bind(ByteBuffer buffer, int offset) {
+    this.sharedOffset = offset;
+    this.shared = buffer;
+  }
+}
@@ -0,0 +1,71 @@
+package me.kennyyu.flags;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of {@link ParseStatsMXBean} holding the statistics of the
+ * latest parse measured with {@link FlagParser#parseWithStats(String[])} or
+ * by a parser with {@link FlagParser#jmx(boolean)} set, which registers it.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class LatestParseStats implements ParseStatsMXBean {
+
+  private static final LatestParseStats INSTANCE = new LatestParseStats();
+  private static final AtomicBoolean REGISTERED = new AtomicBoolean();
+
+  private final AtomicLong parseCount = new AtomicLong();
+  private volatile ParseStats latest = new ParseStats.Recorder().finish();
+
+  private LatestParseStats() {}
+
+  /**
+   * Records the statistics of a parse.
+   */
+  static void record(ParseStats stats) {
+    INSTANCE.latest = stats;
+    INSTANCE.parseCount.incrementAndGet();
+  }
+
+  /**
+   * Makes the statistics visible through JMX.
+   */
+  static void register() {
+    if (REGISTERED.compareAndSet(false, true)) {
+      ManagementBeans.register(OBJECT_NAME, INSTANCE);
+    }
+  }
+
+  @Override
+  public long getParseCount() {
+    return parseCount.get();
+  }
+
+  @Override
+  public long getTotalNanos() {
+    return latest.getTotalNanos();
+  }
+
+  @Override
+  public long getTotalAllocatedBytes() {
+    return latest.getTotalAllocatedBytes();
+  }
+
+  @Override
+  public Map<String, Long> getNanosByPhase() {
+    return latest.getNanosByPhase();
+  }
+
+  @Override
+  public Map<String, Long> getAllocatedBytesByPhase() {
+    return latest.getAllocatedBytesByPhase();
+  }
+
+  @Override
+  public boolean isRegistryMemoized() {
+    return latest.isRegistryMemoized();
+  }
+
+}
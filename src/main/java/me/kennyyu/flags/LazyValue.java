@@ -0,0 +1,75 @@
+package me.kennyyu.flags;
+
+/**
+ * Command line value of a flag which is converted on first use, when the
+ * parser is in {@link FlagParser#lazy(boolean) lazy} mode. The raw value is
+ * copied out of the argument, so that a deferred value does not keep a whole
+ * args file alive, and dropped once converted.
+ *
+ * @param <T> the type of the converted value.
+ * @author kennyyu (Kenny Yu)
+ */
+final class LazyValue<T> {
+
+  private final FlagField flagField;
+  /** The raw value, or null once converted */
+  private volatile String value;
+  private T converted;
+
+  LazyValue(FlagField flagField, CharSequence value, int start, int end) {
+    this.flagField = flagField;
+    this.value = value.subSequence(start, end).toString();
+  }
+
+  /**
+   * Converts the raw value once, discarding the result, and throws the same
+   * exceptions as an eager parse.
+   * @throws FlagException if the value cannot be converted
+   */
+  void validate() throws FlagException {
+    String value = this.value;
+    if (value != null) {
+      Flags.convertValue(flagField, value, 0, value.length());
+    }
+  }
+
+  /**
+   * Returns the converted value, converting it on the first call. Concurrent
+   * first calls convert the value only once.
+   * @throws IllegalArgumentException if the value cannot be converted
+   */
+  @SuppressWarnings("unchecked")
+  T get() {
+    // the write of value publishes converted
+    if (value != null) {
+      synchronized (this) {
+        String value = this.value;
+        if (value != null) {
+          try {
+            converted =
+                (T) Flags.convertValue(flagField, value, 0, value.length());
+          } catch (FlagException e) {
+            throw illegalValue(e);
+          } catch (RuntimeException e) {
+            // e.g. a NumberFormatException thrown by a converter
+            throw illegalValue(e);
+          }
+          this.value = null;
+        }
+      }
+    }
+    return converted;
+  }
+
+  private IllegalArgumentException illegalValue(Exception cause) {
+    return new IllegalArgumentException(
+        "illegal value for flag " + flagField.getName() + ": " + this, cause);
+  }
+
+  @Override
+  public String toString() {
+    String value = this.value;
+    return value == null ? String.valueOf(converted) : value;
+  }
+
+}
@@ -0,0 +1,210 @@
+package me.kennyyu.flags;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
+/**
+ * The flags of every registry parsed so far, from which {@link FlagSnapshot}
+ * and this implementation of {@link FlagsMBean} are built. The bean is
+ * registered by the first parser with {@link FlagParser#jmx(boolean)} set.
+ * <br><br>
+ *
+ * Tracked flags are held by the classes declaring them, through a
+ * {@link ClassValue}, and the classes are only held weakly, so that tracking
+ * a flag does not keep the class loader of an unloaded application alive.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class LiveFlags implements FlagsMBean {
+
+  private static final LiveFlags INSTANCE = new LiveFlags();
+  private static final AtomicBoolean REGISTERED = new AtomicBoolean();
+
+  /** Orders the tracking of flags, so that the flag tracked last wins */
+  private static final AtomicLong SEQUENCE = new AtomicLong();
+
+  /** The tracked flags of each class, by field */
+  private static final ClassValue<ConcurrentMap<Field, Tracked>> DECLARED =
+      new ClassValue<ConcurrentMap<Field, Tracked>>() {
+        @Override
+        protected ConcurrentMap<Field, Tracked> computeValue(Class<?> type) {
+          return Maps.newConcurrentMap();
+        }
+      };
+
+  /** The classes declaring tracked flags */
+  private static final Set<Class<?>> CLASSES = Collections.newSetFromMap(
+      new MapMaker().weakKeys().<Class<?>, Boolean>makeMap());
+
+  private static final Comparator<Tracked> BY_SEQUENCE =
+      new Comparator<Tracked>() {
+        @Override
+        public int compare(Tracked left, Tracked right) {
+          return Long.compare(left.sequence, right.sequence);
+        }
+      };
+
+  /**
+   * A tracked flag, and when it was last tracked.
+   */
+  private static final class Tracked {
+    final FlagField flagField;
+    final long sequence;
+
+    Tracked(FlagField flagField, long sequence) {
+      this.flagField = flagField;
+      this.sequence = sequence;
+    }
+  }
+
+  private LiveFlags() {}
+
+  /**
+   * Tracks the flags, replacing the flags previously tracked for the same
+   * fields. Among the flags with the same name, the flag tracked last is
+   * the one returned by name.
+   */
+  static void track(Collection<FlagField> flagFields) {
+    for (FlagField flagField : flagFields) {
+      Field field = flagField.getField();
+      DECLARED.get(field.getDeclaringClass()).put(
+          field, new Tracked(flagField, SEQUENCE.incrementAndGet()));
+      CLASSES.add(field.getDeclaringClass());
+    }
+  }
+
+  /**
+   * Returns the tracked flags, in the order in which they were last tracked.
+   */
+  static List<FlagField> getFlagFields() {
+    List<Tracked> tracked = Lists.newArrayList();
+    for (Class<?> declaringClass : CLASSES) {
+      tracked.addAll(DECLARED.get(declaringClass).values());
+    }
+    Collections.sort(tracked, BY_SEQUENCE);
+    List<FlagField> flagFields =
+        Lists.newArrayListWithCapacity(tracked.size());
+    for (Tracked flag : tracked) {
+      flagFields.add(flag.flagField);
+    }
+    return flagFields;
+  }
+
+  /**
+   * Makes the tracked flags visible through JMX.
+   */
+  static void register() {
+    if (REGISTERED.compareAndSet(false, true)) {
+      ManagementBeans.register(OBJECT_NAME, INSTANCE);
+    }
+  }
+
+  @Override
+  public List<FlagStatus> getFlags() {
+    // the flag tracked last wins its name
+    Map<String, FlagField> flagFields = Maps.newTreeMap();
+    for (FlagField flagField : getFlagFields()) {
+      flagFields.put(flagField.getName(), flagField);
+    }
+    List<FlagStatus> statuses = Lists.newArrayList();
+    for (FlagField flagField : flagFields.values()) {
+      statuses.add(status(flagField));
+    }
+    return statuses;
+  }
+
+  @Override
+  public FlagStatus getFlag(String name) {
+    return status(getFlagField(name));
+  }
+
+  @Override
+  public void setFlag(String name, String value) {
+    FlagField flagField = getFlagField(name);
+    try {
+      Object converted =
+          Flags.convertValue(flagField, value, 0, value.length());
+      Flags.writeValues(
+          ImmutableMap.of(flagField, converted), ImmutableList.of(flagField));
+    } catch (FlagException e) {
+      throw new IllegalArgumentException(e.getMessage());
+    } catch (RuntimeException e) {
+      // e.g. a NumberFormatException thrown by a converter; JMX clients may
+      // not have the classes of other exceptions
+      throw new IllegalArgumentException(e.toString());
+    }
+  }
+
+  private FlagField getFlagField(String name) {
+    FlagField found = null;
+    for (FlagField flagField : getFlagFields()) {
+      if (name.equals(flagField.getName())
+          || name.equals(flagField.getFlagInfo().altName())) {
+        found = flagField;
+      }
+    }
+    if (found == null) {
+      throw new IllegalArgumentException("no flag named " + name);
+    }
+    return found;
+  }
+
+  private static FlagStatus status(FlagField flagField) {
+    Flag<?> flag;
+    try {
+      flag = flagField.getFlag();
+    } catch (FlagException e) {
+      throw new IllegalStateException(e);
+    }
+    long lastChangedMillis = 0;
+    long readCount = -1;
+    Object value;
+    if (flag instanceof AbstractFlag) {
+      AbstractFlag<?> abstractFlag = (AbstractFlag<?>) flag;
+      lastChangedMillis = abstractFlag.getLastChangedMillis();
+      readCount = abstractFlag.getReadCount();
+      // reading the value for JMX is not a read of the application
+      FlagSnapshot snapshot = FlagSnapshot.current();
+      try {
+        value = snapshot.contains(flag) ? snapshot.get(flag) : flag.get();
+      } catch (IllegalArgumentException e) {
+        value = e.getMessage(); // an illegal value parsed lazily
+      }
+    } else {
+      value = flag.get();
+    }
+    return new FlagStatus(
+        flagField.getName(),
+        flagField.getTypeDescriptor().getType().getTypeName(),
+        flagField.getFlagInfo().environment(),
+        format(flag.defaultValue()),
+        format(value),
+        lastChangedMillis,
+        readCount);
+  }
+
+  private static String format(Object value) {
+    if (value instanceof int[]) {
+      return Arrays.toString((int[]) value);
+    } else if (value instanceof long[]) {
+      return Arrays.toString((long[]) value);
+    }
+    return String.valueOf(value);
+  }
+
+}
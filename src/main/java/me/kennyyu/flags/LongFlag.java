@@ -0,0 +1,28 @@
+package me.kennyyu.flags;
+
+/**
+ * {@link Flag} holding a primitive long, returned by
+ * {@link Flags#valueOf(long)}. Use {@link #getLong()} to read the value
+ * without boxing it:
+ * <pre>
+ * <code>
+ *    {@literal @}FlagInfo(help = "max request size in bytes")
+ *    private static final LongFlag maxRequestBytes = Flags.valueOf(1L << 20);
+ * </code>
+ * </pre>
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public interface LongFlag extends Flag<Long> {
+
+  /**
+   * Returns the value of this flag
+   */
+  long getLong();
+
+  /**
+   * Returns the default value of this flag
+   */
+  long defaultLong();
+
+}
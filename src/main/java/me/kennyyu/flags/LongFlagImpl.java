@@ -0,0 +1,78 @@
+package me.kennyyu.flags;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Implementation of {@link LongFlag} backed by a volatile long field, or
+ * by a slot of a {@link SharedFlagStore} once bound to one.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class LongFlagImpl extends AbstractFlag<Long> implements LongFlag {
+  private volatile long value;
+  private final long defaultValue;
+  /** The buffer of a {@link SharedFlagStore} holding the value, or null */
+  private volatile ByteBuffer shared;
+  private int sharedOffset;
+
+  LongFlagImpl(long value) {
+    this.value = value;
+    this.defaultValue = value;
+  }
+
+  LongFlagImpl(long value, long defaultValue) {
+    this.value = value;
+    this.defaultValue = defaultValue;
+  }
+
+  @Override
+  public long getLong() {
+    countRead();
+    return read();
+  }
+
+  @Override
+  public long defaultLong() {
+    return defaultValue;
+  }
+
+  @Override
+  public Long get() {
+    return getLong();
+  }
+
+  @Override
+  public Long defaultValue() {
+    return defaultValue;
+  }
+
+  @Override
+  synchronized Long getAndSet(Long value) {
+    long oldValue = read();
+    this.value = value;
+    // the value written replaces the value in the store for this process
+    this.shared = null;
+    return oldValue;
+  }
+
+  @Override
+  Object peek() {
+    return read();
+  }
+
+  private long read() {
+    ByteBuffer shared = this.shared;
+    return shared == null ? value : shared.getLong(sharedOffset);
+  }
+
+  /**
+   * Reads the value from the slot at offset in buffer from now on, or from
+   * this flag again if buffer is null. Updating this flag unbinds it, so that
+   * readers see the updated value. Binding and updating hold the lock of this
+   * flag, so that an update is never lost to a concurrent bind.
+   */
+  synchronized void bind(ByteBuffer buffer, int offset) {
+    this.sharedOffset = offset;
+    this.shared = buffer;
+  }
+}
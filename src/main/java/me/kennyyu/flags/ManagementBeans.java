@@ -0,0 +1,40 @@
+package me.kennyyu.flags;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers the JMX beans of the library with the platform MBeanServer.
+ * Failures are logged rather than thrown, since monitoring must never stop
+ * an application from parsing its flags.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class ManagementBeans {
+  private ManagementBeans() {}
+
+  private static final Logger LOGGER =
+      Logger.getLogger(ManagementBeans.class.getName());
+
+  /**
+   * Registers the bean under the name, unless a bean is already registered
+   * under it, e.g. by another class loader.
+   */
+  static void register(String name, Object bean) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName objectName = new ObjectName(name);
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(bean, objectName);
+      }
+    } catch (JMException e) {
+      LOGGER.log(Level.WARNING, "cannot register " + name, e);
+    }
+  }
+
+}
@@ -0,0 +1,46 @@
+package me.kennyyu.flags;
+
+/**
+ * {@link Flag} whose value may be changed while the program runs, e.g. to
+ * tune timeouts or concurrency limits of a long running server. Create one
+ * with {@link Flags#mutableValueOf(Object)}:
+ * <pre>
+ * <code>
+ *    {@literal @}FlagInfo(help = "max concurrent requests")
+ *    private static final MutableFlag&lt;Integer&gt; maxConcurrentRequests =
+ *        Flags.mutableValueOf(100);
+ * </code>
+ * </pre>
+ *
+ * Reading the value is a single volatile read, unless reads are counted with
+ * the {@value Flags#COUNT_READS_PROPERTY} system property. Updates of one
+ * flag hold its lock, so that listeners see them in the order they were made,
+ * and each update, including one made by the parser, increments the
+ * {@link #generation()} of the flag.
+ *
+ * @param <T> the type this flag holds.
+ * @author kennyyu (Kenny Yu)
+ */
+public interface MutableFlag<T> extends Flag<T> {
+
+  /**
+   * Replaces the value of this flag.
+   */
+  void set(T value);
+
+  /**
+   * Replaces the value of this flag with update if the current value equals
+   * expect, as compared by {@link Object#equals(Object)}, so that equal boxed
+   * values and strings match.
+   * @return whether the value was replaced
+   */
+  boolean compareAndSet(T expect, T update);
+
+  /**
+   * Returns the number of times the value of this flag has been replaced. The
+   * generation is incremented after the new value is visible, so a reader
+   * that sees generation n also sees the value of update n or a later one.
+   */
+  long generation();
+
+}
@@ -0,0 +1,91 @@
+package me.kennyyu.flags;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Implementation of {@link MutableFlag} returned by
+ * {@link Flags#mutableValueOf(Object)}. Reads are a single volatile read.
+ * Updates swap the value and enqueue the change for listeners under the lock
+ * of the flag, so that listeners see concurrent updates in the order they
+ * were made. Each update through {@link #set(Object)} and
+ * {@link #compareAndSet(Object, Object)} publishes its own
+ * {@link FlagSnapshot} and is dispatched to listeners on its own.
+ *
+ * @param <T> the type this flag holds.
+ * @author kennyyu (Kenny Yu)
+ */
+final class MutableFlagImpl<T> extends AbstractFlag<T>
+    implements MutableFlag<T> {
+
+  private volatile T value;
+  /** Guarded by this flag */
+  private volatile long generation;
+  private final T defaultValue;
+
+  MutableFlagImpl(T value) {
+    this.value = value;
+    this.defaultValue = value;
+  }
+
+  MutableFlagImpl(T value, T defaultValue) {
+    this.value = value;
+    this.defaultValue = defaultValue;
+  }
+
+  @Override
+  public T get() {
+    countRead();
+    return value;
+  }
+
+  @Override
+  Object peek() {
+    return value;
+  }
+
+  @Override
+  public T defaultValue() {
+    return defaultValue;
+  }
+
+  @Override
+  synchronized T getAndSet(T value) {
+    T oldValue = this.value;
+    this.value = value;
+    generation++;
+    return oldValue;
+  }
+
+  @Override
+  public void set(T value) {
+    synchronized (this) {
+      dispatch(update(value));
+    }
+    FlagSnapshot.publish(this);
+  }
+
+  @Override
+  public boolean compareAndSet(T expect, T update) {
+    synchronized (this) {
+      if (!Objects.equal(value, expect)) {
+        return false;
+      }
+      dispatch(update(update));
+    }
+    FlagSnapshot.publish(this);
+    return true;
+  }
+
+  private static void dispatch(FlagChange<?> change) {
+    if (change != null) {
+      FlagChangeDispatcher.dispatch(
+          ImmutableList.<FlagChange<?>>of(change));
+    }
+  }
+
+  @Override
+  public long generation() {
+    return generation;
+  }
+}
@@ -0,0 +1,123 @@
+package me.kennyyu.flags;
+
+/**
+ * Parses delimited lists of decimal numbers directly into primitive arrays,
+ * without splitting the string or boxing the values.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class NumberParser {
+  private NumberParser() {}
+
+  /**
+   * Parses a list of ints separated by delimiter. The empty string is the
+   * empty list.
+   * @throws NumberFormatException if any element is not an int
+   */
+  static int[] parseIntArray(CharSequence value, char delimiter) {
+    return parseIntArray(value, 0, value.length(), delimiter);
+  }
+
+  /**
+   * Parses a list of ints separated by delimiter between start (inclusive)
+   * and end (exclusive). Trailing empty elements are ignored.
+   * @throws NumberFormatException if any element is not an int
+   */
+  static int[] parseIntArray(
+      CharSequence value, int start, int end, char delimiter) {
+    end = ArgumentScanner.trimTrailingDelimiters(value, delimiter, start, end);
+    int count = ArgumentScanner.countElements(value, delimiter, start, end);
+    int[] values = new int[count];
+    int position = start;
+    for (int i = 0; i < values.length; i++) {
+      int next = ArgumentScanner.indexOf(value, delimiter, position, end);
+      values[i] = parseInt(value, position, next);
+      position = next + 1;
+    }
+    return values;
+  }
+
+  /**
+   * Parses a list of longs separated by delimiter. The empty string is the
+   * empty list.
+   * @throws NumberFormatException if any element is not a long
+   */
+  static long[] parseLongArray(CharSequence value, char delimiter) {
+    return parseLongArray(value, 0, value.length(), delimiter);
+  }
+
+  /**
+   * Parses a list of longs separated by delimiter between start (inclusive)
+   * and end (exclusive). Trailing empty elements are ignored.
+   * @throws NumberFormatException if any element is not a long
+   */
+  static long[] parseLongArray(
+      CharSequence value, int start, int end, char delimiter) {
+    end = ArgumentScanner.trimTrailingDelimiters(value, delimiter, start, end);
+    int count = ArgumentScanner.countElements(value, delimiter, start, end);
+    long[] values = new long[count];
+    int position = start;
+    for (int i = 0; i < values.length; i++) {
+      int next = ArgumentScanner.indexOf(value, delimiter, position, end);
+      values[i] = parseLong(value, position, next);
+      position = next + 1;
+    }
+    return values;
+  }
+
+  /**
+   * Parses the decimal int in value between start (inclusive) and end
+   * (exclusive), with an optional leading sign.
+   * @throws NumberFormatException if the range is not an int
+   */
+  static int parseInt(CharSequence value, int start, int end) {
+    long result = parseLong(value, start, end);
+    if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+      throw formatException(value, start, end);
+    }
+    return (int) result;
+  }
+
+  /**
+   * Parses the decimal long in value between start (inclusive) and end
+   * (exclusive), with an optional leading sign.
+   * @throws NumberFormatException if the range is not a long
+   */
+  static long parseLong(CharSequence value, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end) {
+      char first = value.charAt(i);
+      if (first == '-' || first == '+') {
+        negative = first == '-';
+        i++;
+      }
+    }
+    if (i == end) {
+      throw formatException(value, start, end);
+    }
+    // accumulate negatively, since |Long.MIN_VALUE| > Long.MAX_VALUE
+    long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    long multiplyLimit = limit / 10;
+    long result = 0;
+    for (; i < end; i++) {
+      int digit = value.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || result < multiplyLimit) {
+        throw formatException(value, start, end);
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        throw formatException(value, start, end);
+      }
+      result -= digit;
+    }
+    return negative ? result : -result;
+  }
+
+  private static NumberFormatException formatException(
+      CharSequence value, int start, int end) {
+    return new NumberFormatException(
+        "For input string: \"" + value.subSequence(start, end) + "\"");
+  }
+
+}
@@ -0,0 +1,269 @@
+package me.kennyyu.flags;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Time and memory spent in each phase of one parse, to find out why an
+ * application starts slowly. Returned by
+ * {@link FlagParser#parseWithStats(String[])}; the statistics of the latest
+ * such parse are also exposed through JMX by {@link ParseStatsMXBean}. Other
+ * parses are not measured.<br><br>
+ *
+ * Allocations are measured on the parsing thread only, so the memory
+ * allocated by a parallel classpath scan is not included. They are reported
+ * as -1 if the JVM cannot measure them.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public final class ParseStats {
+
+  /**
+   * The phases of a parse, in order. The first three phases only run when
+   * no {@link FlagRegistry} is memoized for the configuration of the parser.
+   */
+  public enum Phase {
+    /** Reading the flag indexes, or scanning the classpath */
+    SCAN,
+    /** Selecting the scanned fields of the parsed environments */
+    FILTER,
+    /** Building the table of flag names and the accessors of the fields */
+    REGISTRY,
+    /** Finding the flag of each argument, and reading the flag file */
+    TOKENIZE,
+    /** Converting the values of the flags */
+    CONVERT,
+    /** Updating the flags, publishing the snapshot and notifying listeners */
+    ASSIGN,
+    /** Checking for "--help" */
+    HELP
+  }
+
+  private final long[] nanos;
+  private final long[] allocatedBytes;
+  private final boolean registryMemoized;
+
+  private ParseStats(
+      long[] nanos, long[] allocatedBytes, boolean registryMemoized) {
+    this.nanos = nanos;
+    this.allocatedBytes = allocatedBytes;
+    this.registryMemoized = registryMemoized;
+  }
+
+  /**
+   * Returns the time spent in the phase, in nanoseconds.
+   */
+  public long getNanos(Phase phase) {
+    return nanos[phase.ordinal()];
+  }
+
+  /**
+   * Returns the bytes allocated by the parsing thread in the phase, or -1 if
+   * allocations cannot be measured.
+   */
+  public long getAllocatedBytes(Phase phase) {
+    return allocatedBytes[phase.ordinal()];
+  }
+
+  /**
+   * Returns the time spent in all phases, in nanoseconds.
+   */
+  public long getTotalNanos() {
+    long total = 0;
+    for (long phaseNanos : nanos) {
+      total += phaseNanos;
+    }
+    return total;
+  }
+
+  /**
+   * Returns the bytes allocated by the parsing thread in all phases, or -1 if
+   * allocations cannot be measured.
+   */
+  public long getTotalAllocatedBytes() {
+    if (!Allocations.SUPPORTED) {
+      return -1;
+    }
+    long total = 0;
+    for (long phaseBytes : allocatedBytes) {
+      total += phaseBytes;
+    }
+    return total;
+  }
+
+  /**
+   * Returns whether the flags were discovered by an earlier parse with the
+   * same configuration, so that the scan, filter and registry phases were
+   * skipped.
+   */
+  public boolean isRegistryMemoized() {
+    return registryMemoized;
+  }
+
+  /**
+   * Returns the time spent in each phase, in nanoseconds, by phase name.
+   */
+  public Map<String, Long> getNanosByPhase() {
+    return byPhase(nanos);
+  }
+
+  /**
+   * Returns the bytes allocated in each phase, by phase name.
+   */
+  public Map<String, Long> getAllocatedBytesByPhase() {
+    return byPhase(allocatedBytes);
+  }
+
+  private static Map<String, Long> byPhase(long[] values) {
+    ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+    for (Phase phase : Phase.values()) {
+      builder.put(phase.name(), values[phase.ordinal()]);
+    }
+    return builder.build();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("ParseStats[");
+    for (Phase phase : Phase.values()) {
+      builder.append(phase.name().toLowerCase())
+          .append('=')
+          .append(nanos[phase.ordinal()] / 1000)
+          .append("us/")
+          .append(allocatedBytes[phase.ordinal()])
+          .append("B, ");
+    }
+    return builder.append("registryMemoized=")
+        .append(registryMemoized)
+        .append(']')
+        .toString();
+  }
+
+  /**
+   * Measures the bytes allocated by threads, if the JVM can. The
+   * {@code com.sun.management.ThreadMXBean} is looked up reflectively and
+   * only when statistics are recorded, so that parsing works on runtimes
+   * without the java.management or jdk.management modules.
+   */
+  private static final class Allocations {
+
+    /** The platform thread bean, or null if allocations are not measured */
+    private static final Object THREADS;
+    private static final Method GET_THREAD_ALLOCATED_BYTES;
+    static final boolean SUPPORTED;
+
+    static {
+      Object threads = null;
+      Method getThreadAllocatedBytes = null;
+      try {
+        Object bean = Class.forName("java.lang.management.ManagementFactory")
+            .getMethod("getThreadMXBean")
+            .invoke(null);
+        Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+        if (beanClass.isInstance(bean)
+            && (Boolean) beanClass.getMethod(
+                "isThreadAllocatedMemorySupported").invoke(bean)
+            && (Boolean) beanClass.getMethod(
+                "isThreadAllocatedMemoryEnabled").invoke(bean)) {
+          threads = bean;
+          getThreadAllocatedBytes =
+              beanClass.getMethod("getThreadAllocatedBytes", long.class);
+        }
+      } catch (Exception e) {
+        // allocations are not measured
+      } catch (LinkageError e) {
+        // allocations are not measured
+      }
+      THREADS = threads;
+      GET_THREAD_ALLOCATED_BYTES = getThreadAllocatedBytes;
+      SUPPORTED = threads != null;
+    }
+
+    private Allocations() {}
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if
+     * allocations are not measured.
+     */
+    static long currentThread() {
+      if (!SUPPORTED) {
+        return -1;
+      }
+      try {
+        return (Long) GET_THREAD_ALLOCATED_BYTES.invoke(
+            THREADS, Thread.currentThread().getId());
+      } catch (Exception e) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Measures consecutive phases of a parse on the parsing thread. Each call
+   * to {@link #stop(Phase)} adds the time and memory since the previous call
+   * to the phase, so phases may be measured in several pieces.
+   */
+  static final class Recorder {
+
+    /**
+     * Recorder of parses whose statistics are not needed, which measures
+     * nothing.
+     */
+    static final Recorder NONE = new Recorder(false);
+
+    private final boolean enabled;
+    private final long[] nanos = new long[Phase.values().length];
+    private final long[] allocatedBytes = new long[Phase.values().length];
+    private boolean registryMemoized = false;
+    private long startNanos;
+    private long startBytes;
+
+    Recorder() {
+      this(true);
+    }
+
+    private Recorder(boolean enabled) {
+      this.enabled = enabled;
+      if (!enabled || !Allocations.SUPPORTED) {
+        Arrays.fill(allocatedBytes, -1);
+      }
+      if (enabled) {
+        startNanos = System.nanoTime();
+        startBytes = Allocations.currentThread();
+      }
+    }
+
+    /**
+     * Adds the time and memory since the previous call, or since this
+     * recorder was created, to the phase.
+     */
+    void stop(Phase phase) {
+      if (!enabled) {
+        return;
+      }
+      long nowNanos = System.nanoTime();
+      long nowBytes = Allocations.currentThread();
+      nanos[phase.ordinal()] += nowNanos - startNanos;
+      if (Allocations.SUPPORTED) {
+        allocatedBytes[phase.ordinal()] += nowBytes - startBytes;
+      }
+      startNanos = nowNanos;
+      startBytes = nowBytes;
+    }
+
+    void setRegistryMemoized(boolean registryMemoized) {
+      if (enabled) {
+        this.registryMemoized = registryMemoized;
+      }
+    }
+
+    ParseStats finish() {
+      return new ParseStats(
+          nanos.clone(), allocatedBytes.clone(), registryMemoized);
+    }
+  }
+
+}
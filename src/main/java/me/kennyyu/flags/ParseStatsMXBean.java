@@ -0,0 +1,50 @@
+package me.kennyyu.flags;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link ParseStats} of the latest parse with statistics,
+ * i.e. with {@link FlagParser#parseWithStats(String[])} or by a parser with
+ * {@link FlagParser#jmx(boolean)} set, registered with the platform
+ * MBeanServer as {@value #OBJECT_NAME} by the first parse of such a parser.
+ * Other parses are not measured.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public interface ParseStatsMXBean {
+
+  String OBJECT_NAME = "me.kennyyu.flags:type=ParseStats";
+
+  /**
+   * Returns the number of parses with statistics so far.
+   */
+  long getParseCount();
+
+  /**
+   * Returns the time spent in all phases of the latest parse, in nanoseconds.
+   */
+  long getTotalNanos();
+
+  /**
+   * Returns the bytes allocated by the latest parse, or -1 if allocations
+   * cannot be measured.
+   */
+  long getTotalAllocatedBytes();
+
+  /**
+   * Returns the time spent in each phase of the latest parse, in nanoseconds.
+   */
+  Map<String, Long> getNanosByPhase();
+
+  /**
+   * Returns the bytes allocated in each phase of the latest parse.
+   */
+  Map<String, Long> getAllocatedBytesByPhase();
+
+  /**
+   * Returns whether the latest parse reused the flags discovered by an
+   * earlier parse.
+   */
+  boolean isRegistryMemoized();
+
+}
@@ -0,0 +1,128 @@
+package me.kennyyu.flags;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * On-disk cache of the results of a classpath scan. The cache file holds a
+ * fingerprint of the scanned classpath entries (path, size and modification
+ * time of every jar and class file) followed by the coordinates
+ * "binary.class.Name#fieldName" of every field annotated with
+ * {@link FlagInfo}. The cached coordinates are only returned while the
+ * fingerprint of the classpath still matches.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class ScanCache {
+
+  private static final String HEADER = "flags-scan-cache-v1 ";
+
+  private final File cacheFile;
+
+  ScanCache(File cacheFile) {
+    this.cacheFile = cacheFile;
+  }
+
+  /**
+   * Returns a fingerprint of the provided classpath entries and of the
+   * packages scanned within them. Directories are walked so that changes to
+   * the class files inside them are detected.
+   */
+  static String fingerprint(Collection<URL> urls, Collection<String> packages) {
+    Hasher hasher = Hashing.md5().newHasher();
+    for (String packageName : Ordering.natural().sortedCopy(packages)) {
+      hasher.putString(packageName);
+    }
+    for (URL url : Ordering.usingToString().sortedCopy(urls)) {
+      hasher.putString(url.toString());
+      File file;
+      try {
+        file = new File(url.toURI());
+      } catch (URISyntaxException e) {
+        continue; // only the URL itself can be fingerprinted
+      } catch (IllegalArgumentException e) {
+        continue; // not a file URL
+      }
+      fingerprintFile(hasher, file);
+    }
+    return hasher.hash().toString();
+  }
+
+  private static void fingerprintFile(Hasher hasher, File file) {
+    hasher.putString(file.getName())
+        .putLong(file.length())
+        .putLong(file.lastModified());
+    File[] children = file.listFiles();
+    if (children != null) {
+      Arrays.sort(children);
+      for (File child : children) {
+        fingerprintFile(hasher, child);
+      }
+    }
+  }
+
+  /**
+   * Returns the cached field coordinates, or null if the cache does not exist,
+   * cannot be read, or was written for a different fingerprint.
+   */
+  List<String> load(String fingerprint) {
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(cacheFile.toPath(), Charsets.UTF_8);
+    } catch (IOException e) {
+      return null;
+    }
+    if (lines.isEmpty() || !lines.get(0).equals(HEADER + fingerprint)) {
+      return null;
+    }
+    return lines.subList(1, lines.size());
+  }
+
+  /**
+   * Replaces the cache with the provided field coordinates. Failures are
+   * ignored, since the next start will simply scan the classpath again.
+   */
+  void store(String fingerprint, Collection<String> coordinates) {
+    StringBuilder builder = new StringBuilder(HEADER).append(fingerprint);
+    for (String coordinate : coordinates) {
+      builder.append('\n').append(coordinate);
+    }
+    builder.append('\n');
+    try {
+      File directory = cacheFile.getAbsoluteFile().getParentFile();
+      directory.mkdirs();
+      // write to a temporary file first so readers never see a partial cache
+      File temporary =
+          File.createTempFile(cacheFile.getName(), ".tmp", directory);
+      try {
+        Files.write(
+            temporary.toPath(), builder.toString().getBytes(Charsets.UTF_8));
+        Files.move(
+            temporary.toPath(),
+            cacheFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        temporary.delete();
+      }
+    } catch (IOException e) {
+      // the cache is only an optimization
+    }
+  }
+
+}
@@ -0,0 +1,486 @@
+package me.kennyyu.flags;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Memory-mapped file holding the values of primitive flags ({@link IntFlag},
+ * {@link LongFlag}, {@link DoubleFlag} and {@link BooleanFlag}) shared by all
+ * processes on a host. A launcher parses the flags once and writes the store:
+ * <pre>
+ * <code>
+ *    Flags.parse(args);
+ *    SharedFlagStore store = SharedFlagStore.create(new File("/dev/shm/app"));
+ * </code>
+ * </pre>
+ *
+ * Workers map the store read-only while parsing, with
+ * {@link FlagParser#sharedStore(File)}. Their primitive flags with the same
+ * names then read their values straight from the mapped file, unless they are
+ * passed on the worker's own command line. Updating a value with e.g.
+ * {@link #setInt(String, int)} changes the flag in every process at once,
+ * without parsing. Such updates are not seen by listeners or snapshots. A
+ * flag updated within a process, e.g. by a reload of its flag file or through
+ * {@link FlagsMBean}, stops reading the store and keeps the updated
+ * value.<br><br>
+ *
+ * Creating a store again replaces the file and marks the previous file as
+ * replaced. Workers keep reading the previous file until they parse again
+ * with the store, which then maps the new file.<br><br>
+ *
+ * The file is a fixed-offset binary table in the native byte order:
+ * <pre>
+ *    header:  int magic, int version, int count, int replaced
+ *    entries: count * (int nameOffset, int nameLength, int type,
+ *             int valueOffset), sorted by name
+ *    names:   UTF-8 bytes
+ *    values:  count * 8 byte slots, aligned to 8 bytes
+ * </pre>
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public final class SharedFlagStore {
+
+  private static final int MAGIC = 0x464c4753; // "FLGS"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int REPLACED_OFFSET = 12;
+  private static final int ENTRY_SIZE = 16;
+  private static final int SLOT_SIZE = 8;
+
+  private static final int TYPE_INT = 1;
+  private static final int TYPE_LONG = 2;
+  private static final int TYPE_DOUBLE = 3;
+  private static final int TYPE_BOOLEAN = 4;
+
+  /** Stores mapped read-only by workers, keyed by canonical file */
+  private static final Map<File, SharedFlagStore> OPENED = Maps.newHashMap();
+
+  /**
+   * The type and the offset of the value slot of a flag.
+   */
+  private static final class Slot {
+    final int type;
+    final int offset;
+
+    Slot(int type, int offset) {
+      this.type = type;
+      this.offset = offset;
+    }
+  }
+
+  private final File file;
+  /** The identity of the file mapped, e.g. its inode, or null if unknown */
+  private final Object fileKey;
+  private final ByteBuffer buffer;
+  private final Map<String, Slot> slots;
+  private final boolean writable;
+
+  private SharedFlagStore(
+      File file,
+      Object fileKey,
+      ByteBuffer buffer,
+      Map<String, Slot> slots,
+      boolean writable) {
+    this.file = file;
+    this.fileKey = fileKey;
+    this.buffer = buffer;
+    this.slots = slots;
+    this.writable = writable;
+  }
+
+  /**
+   * Writes the current values of all parsed primitive flags to a new store
+   * file, replacing the file atomically, and returns the store mapped for
+   * writing. A store previously in the file is marked as replaced. The
+   * primitive flags of this process read their values from the store from
+   * now on, until they are updated within this process.
+   * @throws FlagException if the file cannot be written
+   */
+  public static SharedFlagStore create(File file) throws FlagException {
+    SortedMap<String, Flag<?>> flags = Maps.newTreeMap();
+    for (Map.Entry<String, Flag<?>> entry
+        : FlagSnapshot.current().getFlagsByName().entrySet()) {
+      if (typeOf(entry.getValue()) != 0) {
+        flags.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    Map<String, byte[]> names = Maps.newLinkedHashMap();
+    int namesSize = 0;
+    for (String name : flags.keySet()) {
+      byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      names.put(name, bytes);
+      namesSize += bytes.length;
+    }
+    int namesStart = HEADER_SIZE + ENTRY_SIZE * flags.size();
+    int valuesStart = align(namesStart + namesSize);
+    int size = valuesStart + SLOT_SIZE * flags.size();
+
+    Path path = file.toPath().toAbsolutePath();
+    Path temp;
+    MappedByteBuffer buffer;
+    try {
+      // a unique temporary file, so that concurrent creators of the store
+      // never write the same file, which is moved into place atomically
+      temp = Files.createTempFile(
+          path.getParent(), path.getFileName() + ".", ".tmp");
+    } catch (IOException e) {
+      throw new FlagException(e);
+    }
+    try {
+      FileChannel channel = FileChannel.open(temp,
+          StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      try {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      } finally {
+        channel.close();
+      }
+    } catch (IOException e) {
+      deleteQuietly(temp);
+      throw new FlagException(e);
+    }
+    buffer.order(ByteOrder.nativeOrder());
+
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, VERSION);
+    buffer.putInt(8, flags.size());
+    ImmutableMap.Builder<String, Slot> slots = ImmutableMap.builder();
+    int entryOffset = HEADER_SIZE;
+    int nameOffset = namesStart;
+    int valueOffset = valuesStart;
+    for (Map.Entry<String, Flag<?>> entry : flags.entrySet()) {
+      byte[] name = names.get(entry.getKey());
+      int type = typeOf(entry.getValue());
+      buffer.putInt(entryOffset, nameOffset);
+      buffer.putInt(entryOffset + 4, name.length);
+      buffer.putInt(entryOffset + 8, type);
+      buffer.putInt(entryOffset + 12, valueOffset);
+      for (int i = 0; i < name.length; i++) {
+        buffer.put(nameOffset + i, name[i]);
+      }
+      writeSlot(buffer, type, valueOffset, entry.getValue());
+      slots.put(entry.getKey(), new Slot(type, valueOffset));
+      entryOffset += ENTRY_SIZE;
+      nameOffset += name.length;
+      valueOffset += SLOT_SIZE;
+    }
+    buffer.force();
+    Object fileKey;
+    try {
+      // the previous store is opened before it is unlinked, and marked as
+      // replaced once the new store is in place
+      FileChannel previous = openStore(path);
+      try {
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+        if (previous != null) {
+          ByteBuffer replaced =
+              ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+          replaced.putInt(0, 1);
+          previous.write(replaced, REPLACED_OFFSET);
+        }
+      } finally {
+        if (previous != null) {
+          previous.close();
+        }
+      }
+      fileKey = fileKey(path);
+    } catch (IOException e) {
+      deleteQuietly(temp);
+      throw new FlagException(e);
+    }
+
+    SharedFlagStore store =
+        new SharedFlagStore(file, fileKey, buffer, slots.build(), true);
+    for (Map.Entry<String, Flag<?>> entry : flags.entrySet()) {
+      store.bind(entry.getKey(), entry.getValue());
+    }
+    return store;
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      // the temporary file is only left behind
+    }
+  }
+
+  /**
+   * Opens the store in the file for writing, or returns null if the file
+   * does not exist or does not hold a store.
+   */
+  private static FileChannel openStore(Path path) throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(
+          path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+    if (channel.read(magic, 0) == 4 && magic.getInt(0) == MAGIC) {
+      return channel;
+    }
+    channel.close();
+    return null;
+  }
+
+  /**
+   * Returns the identity of the file, e.g. its inode, or null if the file
+   * system has none.
+   */
+  private static Object fileKey(Path path) throws IOException {
+    return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+  }
+
+  /**
+   * Maps the store in the file read-only, or returns the store already mapped
+   * by this process if the file has not been replaced since.
+   * @throws FlagException if the file cannot be read or is not a store
+   */
+  static synchronized SharedFlagStore open(File file) throws FlagException {
+    File canonicalFile;
+    Object fileKey;
+    try {
+      canonicalFile = file.getCanonicalFile();
+      fileKey = fileKey(canonicalFile.toPath());
+    } catch (IOException e) {
+      throw new FlagException(e);
+    }
+    SharedFlagStore store = OPENED.get(canonicalFile);
+    if (store == null
+        || store.isReplaced()
+        || !Objects.equal(store.fileKey, fileKey)) {
+      store = map(canonicalFile, fileKey);
+      OPENED.put(canonicalFile, store);
+    }
+    return store;
+  }
+
+  private static SharedFlagStore map(File file, Object fileKey)
+      throws FlagException {
+    MappedByteBuffer buffer;
+    try {
+      FileChannel channel =
+          FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      try {
+        buffer = channel.map(
+            FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+        channel.close();
+      }
+    } catch (IOException e) {
+      throw new FlagException(e);
+    }
+    buffer.order(ByteOrder.nativeOrder());
+    if (buffer.capacity() < HEADER_SIZE
+        || buffer.getInt(0) != MAGIC
+        || buffer.getInt(4) != VERSION) {
+      throw new FlagException(file + " is not a shared flag store");
+    }
+
+    // the offsets are checked, so that a corrupted file cannot make the
+    // flags read outside of the mapping
+    int size = buffer.capacity();
+    int count = buffer.getInt(8);
+    if (count < 0 || count > (size - HEADER_SIZE) / ENTRY_SIZE) {
+      throw corrupted(file);
+    }
+    Map<String, Slot> slots = Maps.newHashMap();
+    for (int i = 0; i < count; i++) {
+      int entryOffset = HEADER_SIZE + ENTRY_SIZE * i;
+      int nameOffset = buffer.getInt(entryOffset);
+      int nameLength = buffer.getInt(entryOffset + 4);
+      int valueOffset = buffer.getInt(entryOffset + 12);
+      if (nameOffset < HEADER_SIZE
+          || nameLength < 0
+          || nameOffset > size - nameLength
+          || valueOffset < HEADER_SIZE
+          || valueOffset > size - SLOT_SIZE
+          || valueOffset % SLOT_SIZE != 0) {
+        throw corrupted(file);
+      }
+      byte[] name = new byte[nameLength];
+      for (int j = 0; j < name.length; j++) {
+        name[j] = buffer.get(nameOffset + j);
+      }
+      if (slots.put(
+          new String(name, StandardCharsets.UTF_8),
+          new Slot(buffer.getInt(entryOffset + 8), valueOffset)) != null) {
+        throw corrupted(file); // a name is stored twice
+      }
+    }
+    return new SharedFlagStore(
+        file, fileKey, buffer, ImmutableMap.copyOf(slots), false);
+  }
+
+  private static FlagException corrupted(File file) {
+    return new FlagException(file + " is a corrupted shared flag store");
+  }
+
+  /**
+   * Binds the primitive flags of the registry that are in this store to their
+   * slots, except for the flags in excludedFields, which are unbound so that
+   * they read their own values again.
+   */
+  void bind(FlagRegistry registry, Set<FlagField> excludedFields)
+      throws FlagException {
+    for (FlagField flagField : registry.getFlagFields()) {
+      if (excludedFields.contains(flagField)) {
+        bind(flagField.getFlag(), null, 0);
+      } else {
+        bind(flagField.getName(), flagField.getFlag());
+      }
+    }
+  }
+
+  private void bind(String name, Flag<?> flag) {
+    Slot slot = slots.get(name);
+    if (slot != null && slot.type == typeOf(flag)) {
+      bind(flag, buffer, slot.offset);
+    }
+  }
+
+  private static void bind(Flag<?> flag, ByteBuffer buffer, int offset) {
+    if (flag instanceof IntFlagImpl) {
+      ((IntFlagImpl) flag).bind(buffer, offset);
+    } else if (flag instanceof LongFlagImpl) {
+      ((LongFlagImpl) flag).bind(buffer, offset);
+    } else if (flag instanceof DoubleFlagImpl) {
+      ((DoubleFlagImpl) flag).bind(buffer, offset);
+    } else if (flag instanceof BooleanFlagImpl) {
+      ((BooleanFlagImpl) flag).bind(buffer, offset);
+    }
+  }
+
+  /**
+   * Returns the type of the slot for the flag, or 0 if the flag cannot be
+   * stored.
+   */
+  private static int typeOf(Flag<?> flag) {
+    if (flag instanceof IntFlagImpl) {
+      return TYPE_INT;
+    } else if (flag instanceof LongFlagImpl) {
+      return TYPE_LONG;
+    } else if (flag instanceof DoubleFlagImpl) {
+      return TYPE_DOUBLE;
+    } else if (flag instanceof BooleanFlagImpl) {
+      return TYPE_BOOLEAN;
+    }
+    return 0;
+  }
+
+  private static void writeSlot(
+      ByteBuffer buffer, int type, int offset, Flag<?> flag) {
+    switch (type) {
+      case TYPE_INT:
+        buffer.putInt(offset, ((IntFlag) flag).getInt());
+        break;
+      case TYPE_LONG:
+        buffer.putLong(offset, ((LongFlag) flag).getLong());
+        break;
+      case TYPE_DOUBLE:
+        buffer.putDouble(offset, ((DoubleFlag) flag).getDouble());
+        break;
+      default:
+        buffer.putInt(offset, ((BooleanFlag) flag).getBoolean() ? 1 : 0);
+    }
+  }
+
+  private static int align(int offset) {
+    return (offset + SLOT_SIZE - 1) & -SLOT_SIZE;
+  }
+
+  /**
+   * Returns the file of this store.
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Returns whether the file of this store has been replaced by a new store
+   * since it was mapped, so that the values of this store are stale.
+   */
+  public boolean isReplaced() {
+    return buffer.getInt(REPLACED_OFFSET) != 0;
+  }
+
+  /**
+   * Returns the names of the flags in this store.
+   */
+  public Collection<String> getNames() {
+    return slots.keySet();
+  }
+
+  /**
+   * Updates the int flag with the given name in every process.
+   * @throws IllegalArgumentException if there is no such int flag
+   * @throws IllegalStateException if this store is mapped read-only
+   */
+  public void setInt(String name, int value) {
+    buffer.putInt(writableSlot(name, TYPE_INT), value);
+  }
+
+  /**
+   * Updates the long flag with the given name in every process.
+   * @throws IllegalArgumentException if there is no such long flag
+   * @throws IllegalStateException if this store is mapped read-only
+   */
+  public void setLong(String name, long value) {
+    buffer.putLong(writableSlot(name, TYPE_LONG), value);
+  }
+
+  /**
+   * Updates the double flag with the given name in every process.
+   * @throws IllegalArgumentException if there is no such double flag
+   * @throws IllegalStateException if this store is mapped read-only
+   */
+  public void setDouble(String name, double value) {
+    buffer.putDouble(writableSlot(name, TYPE_DOUBLE), value);
+  }
+
+  /**
+   * Updates the boolean flag with the given name in every process.
+   * @throws IllegalArgumentException if there is no such boolean flag
+   * @throws IllegalStateException if this store is mapped read-only
+   */
+  public void setBoolean(String name, boolean value) {
+    buffer.putInt(writableSlot(name, TYPE_BOOLEAN), value ? 1 : 0);
+  }
+
+  private int writableSlot(String name, int type) {
+    if (!writable) {
+      throw new IllegalStateException(file + " is mapped read-only");
+    }
+    Slot slot = slots.get(name);
+    if (slot == null || slot.type != type) {
+      throw new IllegalArgumentException(
+          "no flag " + name + " of that type in " + file);
+    }
+    return slot.offset;
+  }
+
+}
@@ -0,0 +1,407 @@
+package me.kennyyu.flags;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+/**
+ * Compact binary encoding of the typed values of flags, so
+ * that child processes can restore the flags of their parent without
+ * tokenizing and converting strings. See {@link Flags#exportSnapshot}.<br><br>
+ *
+ * The encoding is big endian, whatever the order of the buffer read from:
+ * <pre>
+ *    header: int magic, short version, int count
+ *    flags:  count * (int nameLength, UTF-8 name, value)
+ *    value:  byte tag, followed by the payload of the tag
+ * </pre>
+ *
+ * Strings and enum constants are encoded as their UTF-8 bytes, arrays and
+ * collections as their size followed by their elements.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class SnapshotCodec {
+
+  private static final int MAGIC = 0x464c534e; // "FLSN"
+  private static final short VERSION = 1;
+
+  private static final byte NULL = 0;
+  private static final byte BOOLEAN = 1;
+  private static final byte BYTE = 2;
+  private static final byte SHORT = 3;
+  private static final byte CHARACTER = 4;
+  private static final byte INTEGER = 5;
+  private static final byte LONG = 6;
+  private static final byte FLOAT = 7;
+  private static final byte DOUBLE = 8;
+  private static final byte STRING = 9;
+  private static final byte ENUM = 10;
+  private static final byte INT_ARRAY = 11;
+  private static final byte LONG_ARRAY = 12;
+  private static final byte INT_SET = 13;
+  private static final byte LONG_SET = 14;
+  private static final byte LIST = 15;
+  private static final byte SET = 16;
+  private static final byte MAP = 17;
+
+  private SnapshotCodec() {}
+
+  /**
+   * Writes the value of each flag name to out, which is flushed but not
+   * closed.
+   * @throws UnsupportedFlagTypeException if the value of a flag has a type
+   *     without an encoding, e.g. a type with a registered converter
+   * @throws FlagException if out cannot be written
+   */
+  static void write(Map<String, Object> values, OutputStream out)
+      throws FlagException {
+    List<String> names = Ordering.natural().sortedCopy(values.keySet());
+    try {
+      DataOutputStream data =
+          new DataOutputStream(new BufferedOutputStream(out));
+      data.writeInt(MAGIC);
+      data.writeShort(VERSION);
+      data.writeInt(names.size());
+      for (String name : names) {
+        writeString(data, name);
+        writeValue(data, values.get(name));
+      }
+      data.flush();
+    } catch (IOException e) {
+      throw new FlagException(e);
+    }
+  }
+
+  private static void writeValue(DataOutputStream data, Object value)
+      throws IOException, UnsupportedFlagTypeException {
+    if (value == null) {
+      data.writeByte(NULL);
+    } else if (value instanceof Boolean) {
+      data.writeByte(BOOLEAN);
+      data.writeBoolean((Boolean) value);
+    } else if (value instanceof Byte) {
+      data.writeByte(BYTE);
+      data.writeByte((Byte) value);
+    } else if (value instanceof Short) {
+      data.writeByte(SHORT);
+      data.writeShort((Short) value);
+    } else if (value instanceof Character) {
+      data.writeByte(CHARACTER);
+      data.writeChar((Character) value);
+    } else if (value instanceof Integer) {
+      data.writeByte(INTEGER);
+      data.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      data.writeByte(LONG);
+      data.writeLong((Long) value);
+    } else if (value instanceof Float) {
+      data.writeByte(FLOAT);
+      data.writeFloat((Float) value);
+    } else if (value instanceof Double) {
+      data.writeByte(DOUBLE);
+      data.writeDouble((Double) value);
+    } else if (value instanceof String) {
+      data.writeByte(STRING);
+      writeString(data, (String) value);
+    } else if (value instanceof Enum) {
+      data.writeByte(ENUM);
+      writeString(data, ((Enum<?>) value).name());
+    } else if (value instanceof int[]) {
+      data.writeByte(INT_ARRAY);
+      writeInts(data, (int[]) value);
+    } else if (value instanceof long[]) {
+      data.writeByte(LONG_ARRAY);
+      writeLongs(data, (long[]) value);
+    } else if (value instanceof SortedIntSet) {
+      data.writeByte(INT_SET);
+      writeInts(data, ((SortedIntSet) value).toArray());
+    } else if (value instanceof SortedLongSet) {
+      data.writeByte(LONG_SET);
+      writeLongs(data, ((SortedLongSet) value).toArray());
+    } else if (value instanceof List) {
+      data.writeByte(LIST);
+      writeElements(data, (List<?>) value);
+    } else if (value instanceof Set) {
+      data.writeByte(SET);
+      writeElements(data, (Set<?>) value);
+    } else if (value instanceof Map) {
+      data.writeByte(MAP);
+      Map<?, ?> map = (Map<?, ?>) value;
+      data.writeInt(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        writeValue(data, entry.getKey());
+        writeValue(data, entry.getValue());
+      }
+    } else {
+      throw new UnsupportedFlagTypeException(value.getClass());
+    }
+  }
+
+  private static void writeString(DataOutputStream data, String value)
+      throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    data.writeInt(bytes.length);
+    data.write(bytes);
+  }
+
+  private static void writeInts(DataOutputStream data, int[] values)
+      throws IOException {
+    data.writeInt(values.length);
+    for (int value : values) {
+      data.writeInt(value);
+    }
+  }
+
+  private static void writeLongs(DataOutputStream data, long[] values)
+      throws IOException {
+    data.writeInt(values.length);
+    for (long value : values) {
+      data.writeLong(value);
+    }
+  }
+
+  private static void writeElements(
+      DataOutputStream data, Collection<?> elements)
+      throws IOException, UnsupportedFlagTypeException {
+    data.writeInt(elements.size());
+    for (Object element : elements) {
+      writeValue(data, element);
+    }
+  }
+
+  /**
+   * Reads the values of the flags of the registry from buffer, starting at
+   * its position. Flags in the snapshot which are not in the registry are
+   * skipped.
+   * @throws FlagException if buffer does not hold a snapshot, or if a value
+   *     does not match the type of its flag
+   */
+  static Map<FlagField, Object> read(FlagRegistry registry, ByteBuffer buffer)
+      throws FlagException {
+    ByteBuffer data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    Map<FlagField, Object> values = readFlags(registry, data);
+    buffer.position(data.position());
+    return values;
+  }
+
+  private static Map<FlagField, Object> readFlags(
+      FlagRegistry registry, ByteBuffer buffer) throws FlagException {
+    try {
+      if (buffer.getInt() != MAGIC) {
+        throw new FlagException("not a flag snapshot");
+      }
+      short version = buffer.getShort();
+      if (version != VERSION) {
+        throw new FlagException("unsupported flag snapshot version "
+            + version);
+      }
+      int count = readSize(buffer, 1);
+      Map<FlagField, Object> values = Maps.newHashMapWithExpectedSize(count);
+      for (int i = 0; i < count; i++) {
+        FlagField flagField = registry.getFlagField(readString(buffer));
+        if (flagField == null) {
+          readValue(buffer, null, null, true);
+        } else {
+          // primitive flags cannot hold null
+          boolean nullable = !TypeDescriptor.isPrimitiveFlagType(
+              flagField.getField().getType());
+          values.put(flagField, readValue(buffer,
+              flagField.getTypeDescriptor(), flagField, nullable));
+        }
+      }
+      return values;
+    } catch (BufferUnderflowException e) {
+      throw new FlagException("truncated flag snapshot", e);
+    }
+  }
+
+  /**
+   * Reads a value, reading the elements of collections recursively, and
+   * checks that it matches its type.
+   * @param descriptor the type of the value, or null to skip the value
+   * @param flagField the flag of the value, or null to skip the value
+   * @param nullable whether the value may be null
+   */
+  private static Object readValue(
+      ByteBuffer buffer,
+      TypeDescriptor descriptor,
+      FlagField flagField,
+      boolean nullable) throws FlagException {
+    TypeDescriptor key = descriptor == null ? null : descriptor.getKey();
+    TypeDescriptor element =
+        descriptor == null ? null : descriptor.getElement();
+    // collections are built as the flag would parse them, and only mutable
+    // collections can hold null
+    boolean mutable = flagField == null || flagField.isMutableCollections();
+    byte tag = buffer.get();
+    Object value;
+    int size;
+    switch (tag) {
+      case LIST:
+        value = CollectionParser.newList(
+            readElements(buffer, element, flagField, mutable), mutable);
+        break;
+      case SET:
+        value = CollectionParser.newSet(
+            readElements(buffer, element, flagField, mutable), mutable);
+        break;
+      case MAP:
+        size = readSize(buffer, 1);
+        Object[] keys = new Object[size];
+        Object[] values = new Object[size];
+        for (int i = 0; i < size; i++) {
+          keys[i] = readValue(buffer, key, flagField, mutable);
+          values[i] = readValue(buffer, element, flagField, mutable);
+        }
+        value = CollectionParser.newMap(keys, values, size, mutable);
+        break;
+      default:
+        value = readElement(buffer, tag,
+            descriptor == null ? null : descriptor.getValueClass());
+    }
+    if (descriptor != null && !matches(descriptor, tag, value, nullable)) {
+      throw new FlagException("snapshot value " + value + " of flag "
+          + flagField.getName() + " is not a " + descriptor.getType());
+    }
+    return value;
+  }
+
+  private static boolean matches(
+      TypeDescriptor descriptor, byte tag, Object value, boolean nullable) {
+    switch (descriptor.getKind()) {
+      case VALUE:
+        return value == null
+            ? nullable : descriptor.getValueClass().isInstance(value);
+      case LIST:
+        return tag == LIST;
+      case SET:
+        return tag == SET;
+      case MAP:
+        return tag == MAP;
+      default:
+        return false;
+    }
+  }
+
+  private static Object[] readElements(
+      ByteBuffer buffer,
+      TypeDescriptor element,
+      FlagField flagField,
+      boolean nullable) throws FlagException {
+    Object[] elements = new Object[readSize(buffer, 1)];
+    for (int i = 0; i < elements.length; i++) {
+      elements[i] = readValue(buffer, element, flagField, nullable);
+    }
+    return elements;
+  }
+
+  /**
+   * Reads a value which is not a collection.
+   * @param type the class of the value, used to look up enum constants, or
+   *     null if unknown
+   */
+  private static Object readElement(ByteBuffer buffer, byte tag, Type type)
+      throws FlagException {
+    switch (tag) {
+      case NULL:
+        return null;
+      case BOOLEAN:
+        return buffer.get() != 0;
+      case BYTE:
+        return buffer.get();
+      case SHORT:
+        return buffer.getShort();
+      case CHARACTER:
+        return buffer.getChar();
+      case INTEGER:
+        return buffer.getInt();
+      case LONG:
+        return buffer.getLong();
+      case FLOAT:
+        return buffer.getFloat();
+      case DOUBLE:
+        return buffer.getDouble();
+      case STRING:
+        return readString(buffer);
+      case ENUM:
+        return readEnum(readString(buffer), type);
+      case INT_ARRAY:
+        return readInts(buffer);
+      case LONG_ARRAY:
+        return readLongs(buffer);
+      case INT_SET:
+        return SortedIntSet.wrap(readInts(buffer));
+      case LONG_SET:
+        return SortedLongSet.wrap(readLongs(buffer));
+      default:
+        throw new FlagException("illegal flag snapshot tag " + tag);
+    }
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static Object readEnum(String name, Type type)
+      throws FlagException {
+    if (type == null) {
+      return null; // the value is skipped
+    }
+    if (!(type instanceof Class) || !((Class<?>) type).isEnum()) {
+      throw new UnsupportedFlagTypeException(type);
+    }
+    try {
+      return Enum.valueOf((Class) type, name);
+    } catch (IllegalArgumentException e) {
+      throw new FlagException(e);
+    }
+  }
+
+  /**
+   * Reads the size of an array, collection or string whose elements take at
+   * least width bytes each, so a corrupted size cannot allocate more memory
+   * than the size of the buffer.
+   * @throws FlagException if the size is negative or more elements than the
+   *     rest of the buffer can hold
+   */
+  private static int readSize(ByteBuffer buffer, int width)
+      throws FlagException {
+    int size = buffer.getInt();
+    if (size < 0 || size > buffer.remaining() / width) {
+      throw new FlagException("truncated flag snapshot");
+    }
+    return size;
+  }
+
+  private static String readString(ByteBuffer buffer) throws FlagException {
+    byte[] bytes = new byte[readSize(buffer, 1)];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int[] readInts(ByteBuffer buffer) throws FlagException {
+    int[] values = new int[readSize(buffer, 4)];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + 4 * values.length);
+    return values;
+  }
+
+  private static long[] readLongs(ByteBuffer buffer) throws FlagException {
+    long[] values = new long[readSize(buffer, 8)];
+    buffer.asLongBuffer().get(values);
+    buffer.position(buffer.position() + 8 * values.length);
+    return values;
+  }
+
+}
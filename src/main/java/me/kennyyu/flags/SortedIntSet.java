@@ -0,0 +1,103 @@
+package me.kennyyu.flags;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of ints stored as a sorted array, for flags holding many
+ * numeric IDs. {@link #contains(int)} is a binary search, and no value is
+ * boxed. Example:
+ * <pre>
+ * <code>
+ *    {@literal @}FlagInfo(help = "shards served by this process")
+ *    private static final Flag<SortedIntSet> shardIds =
+ *        Flags.valueOf(SortedIntSet.of());
+ *
+ *    java MyApp --shardIds=3,17,42
+ * </code>
+ * </pre>
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public final class SortedIntSet {
+
+  private static final SortedIntSet EMPTY = new SortedIntSet(new int[0]);
+
+  private final int[] values;
+
+  private SortedIntSet(int[] values) {
+    this.values = values;
+  }
+
+  /**
+   * Returns the set of the given values.
+   */
+  public static SortedIntSet of(int... values) {
+    return wrap(values.clone());
+  }
+
+  /**
+   * Returns the set of the values in the array, which is sorted in place and
+   * owned by the set afterwards.
+   */
+  static SortedIntSet wrap(int[] values) {
+    if (values.length == 0) {
+      return EMPTY;
+    }
+    Arrays.sort(values);
+    int size = 1;
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] != values[size - 1]) {
+        values[size++] = values[i];
+      }
+    }
+    return new SortedIntSet(
+        size == values.length ? values : Arrays.copyOf(values, size));
+  }
+
+  /**
+   * Returns whether value is in this set.
+   */
+  public boolean contains(int value) {
+    return Arrays.binarySearch(values, value) >= 0;
+  }
+
+  public int size() {
+    return values.length;
+  }
+
+  public boolean isEmpty() {
+    return values.length == 0;
+  }
+
+  /**
+   * Returns the value at index in ascending order.
+   * @throws IndexOutOfBoundsException if index is not in [0, size())
+   */
+  public int get(int index) {
+    return values[index];
+  }
+
+  /**
+   * Returns the values in ascending order.
+   */
+  public int[] toArray() {
+    return values.clone();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof SortedIntSet
+        && Arrays.equals(values, ((SortedIntSet) o).values);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(values);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(values);
+  }
+
+}
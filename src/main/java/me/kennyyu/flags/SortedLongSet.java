@@ -0,0 +1,103 @@
+package me.kennyyu.flags;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of longs stored as a sorted array, for flags holding many
+ * numeric IDs. {@link #contains(long)} is a binary search, and no value is
+ * boxed. Example:
+ * <pre>
+ * <code>
+ *    {@literal @}FlagInfo(help = "shards served by this process")
+ *    private static final Flag<SortedLongSet> shardIds =
+ *        Flags.valueOf(SortedLongSet.of());
+ *
+ *    java MyApp --shardIds=3,17,42
+ * </code>
+ * </pre>
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public final class SortedLongSet {
+
+  private static final SortedLongSet EMPTY = new SortedLongSet(new long[0]);
+
+  private final long[] values;
+
+  private SortedLongSet(long[] values) {
+    this.values = values;
+  }
+
+  /**
+   * Returns the set of the given values.
+   */
+  public static SortedLongSet of(long... values) {
+    return wrap(values.clone());
+  }
+
+  /**
+   * Returns the set of the values in the array, which is sorted in place and
+   * owned by the set afterwards.
+   */
+  static SortedLongSet wrap(long[] values) {
+    if (values.length == 0) {
+      return EMPTY;
+    }
+    Arrays.sort(values);
+    int size = 1;
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] != values[size - 1]) {
+        values[size++] = values[i];
+      }
+    }
+    return new SortedLongSet(
+        size == values.length ? values : Arrays.copyOf(values, size));
+  }
+
+  /**
+   * Returns whether value is in this set.
+   */
+  public boolean contains(long value) {
+    return Arrays.binarySearch(values, value) >= 0;
+  }
+
+  public int size() {
+    return values.length;
+  }
+
+  public boolean isEmpty() {
+    return values.length == 0;
+  }
+
+  /**
+   * Returns the value at index in ascending order.
+   * @throws IndexOutOfBoundsException if index is not in [0, size())
+   */
+  public long get(int index) {
+    return values[index];
+  }
+
+  /**
+   * Returns the values in ascending order.
+   */
+  public long[] toArray() {
+    return values.clone();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof SortedLongSet
+        && Arrays.equals(values, ((SortedLongSet) o).values);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(values);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(values);
+  }
+
+}
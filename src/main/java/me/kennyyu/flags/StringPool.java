@@ -0,0 +1,65 @@
+package me.kennyyu.flags;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Bounded pool of the {@link String} values of flags, so that a value passed
+ * many times, e.g. a host name in several list flags or a key in several map
+ * flags, is held by a single instance. The pool converts values with the
+ * converter for String, and looks up the range of each value before
+ * creating a substring for it, so a repeated value is not even copied.<br><br>
+ *
+ * The pool is a direct-mapped table: each value has a single slot chosen
+ * by its hash code, and a value replaces any other value in its slot. The
+ * pool therefore never holds more strings than its size, and needs no
+ * locking, since each slot only ever holds a complete immutable string.
+ * Values the converter does not return unchanged are not pooled.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class StringPool implements FlagConverter<String> {
+
+  private final FlagConverter<String> converter;
+  private final String[] table;
+
+  /**
+   * @param maxSize the maximum number of strings to hold, which is rounded
+   *     down to a power of two
+   * @param converter the converter of values which are not pooled
+   */
+  StringPool(int maxSize, FlagConverter<String> converter) {
+    Preconditions.checkArgument(maxSize > 0, "maxSize must be positive");
+    this.converter = converter;
+    this.table = new String[Integer.highestOneBit(maxSize)];
+  }
+
+  /**
+   * Returns the maximum number of strings held by the pool.
+   */
+  int getMaxSize() {
+    return table.length;
+  }
+
+  @Override
+  public String convert(String value) throws FlagException {
+    return convert(value, 0, value.length());
+  }
+
+  @Override
+  public String convert(CharSequence value, int start, int end)
+      throws FlagException {
+    int slot = ArgumentScanner.hashCode(value, start, end) & (table.length - 1);
+    String pooled = table[slot];
+    if (pooled != null
+        && ArgumentScanner.regionEquals(value, start, end, pooled)) {
+      return pooled;
+    }
+    String converted = converter.convert(value, start, end);
+    if (converted != null
+        && ArgumentScanner.regionEquals(value, start, end, converted)) {
+      table[slot] = converted;
+    }
+    return converted;
+  }
+
+}
@@ -0,0 +1,198 @@
+package me.kennyyu.flags;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Description of the type nested inside a {@link Flag} field, decoded once
+ * from the field's generic type so that parsing a value does not need to walk
+ * the reflective {@link Type} objects again. Collections may be nested, e.g.
+ * Flag&lt;Map&lt;String, List&lt;Integer&gt;&gt;&gt;, in which case the
+ * descriptor is a tree with a descriptor for each nested type. Descriptors
+ * are cached by type, so flags of the same type share them.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+final class TypeDescriptor {
+
+  /**
+   * The shapes of flag types understood by the parser.
+   */
+  enum Kind {
+    /** A single value, e.g. Flag&lt;Integer&gt; */
+    VALUE,
+    /** Flag&lt;List&lt;T&gt;&gt; */
+    LIST,
+    /** Flag&lt;Set&lt;T&gt;&gt; */
+    SET,
+    /** Flag&lt;Map&lt;K, V&gt;&gt; */
+    MAP,
+    /** Any other type, which cannot be parsed */
+    UNSUPPORTED
+  }
+
+  /**
+   * The primitive flag types, and the wrapper class of the value of each.
+   */
+  private static final Map<Class<?>, Class<?>> PRIMITIVE_FLAG_TYPES =
+      ImmutableMap.<Class<?>, Class<?>>of(
+          IntFlag.class, Integer.class,
+          LongFlag.class, Long.class,
+          DoubleFlag.class, Double.class,
+          BooleanFlag.class, Boolean.class);
+
+  /**
+   * The descriptor of each type, held while a flag of the type uses it.
+   */
+  private static final ConcurrentMap<Type, TypeDescriptor> DESCRIPTORS =
+      CacheBuilder.newBuilder()
+          .weakValues()
+          .<Type, TypeDescriptor>build()
+          .asMap();
+
+  private final Type type;
+  private final Kind kind;
+  private final Class<?> valueClass;
+  private final TypeDescriptor key;
+  private final TypeDescriptor element;
+
+  private TypeDescriptor(
+      Type type,
+      Kind kind,
+      Class<?> valueClass,
+      TypeDescriptor key,
+      TypeDescriptor element) {
+    this.type = type;
+    this.kind = kind;
+    this.valueClass = valueClass;
+    this.key = key;
+    this.element = element;
+  }
+
+  /**
+   * Decodes the type T of a field declared as Flag&lt;T&gt; or
+   * MutableFlag&lt;T&gt;, or as one of the primitive flag types such as
+   * {@link IntFlag}.
+   */
+  static TypeDescriptor of(Field field) {
+    Class<?> primitiveClass = PRIMITIVE_FLAG_TYPES.get(field.getType());
+    if (primitiveClass != null) {
+      return of(primitiveClass);
+    }
+    if (!(field.getGenericType() instanceof ParameterizedType)) {
+      return unsupported(field.getGenericType());
+    }
+    // Get the type nested inside Flag<?>
+    return of(((ParameterizedType) field.getGenericType())
+        .getActualTypeArguments()[0]);
+  }
+
+  /**
+   * Decodes a type nested inside a flag. The descriptor is
+   * {@link Kind#UNSUPPORTED} if any type nested inside it is.
+   */
+  static TypeDescriptor of(Type type) {
+    TypeDescriptor descriptor = DESCRIPTORS.get(type);
+    if (descriptor == null) {
+      descriptor = decode(type);
+      TypeDescriptor previous = DESCRIPTORS.putIfAbsent(type, descriptor);
+      if (previous != null) {
+        descriptor = previous;
+      }
+    }
+    return descriptor;
+  }
+
+  private static TypeDescriptor decode(Type type) {
+    if (type instanceof Class) {
+      return new TypeDescriptor(type, Kind.VALUE, (Class<?>) type, null, null);
+    }
+    if (!(type instanceof ParameterizedType)) {
+      return unsupported(type);
+    }
+
+    // Get the parameters nested inside Collection<?>
+    Type rawType = ((ParameterizedType) type).getRawType();
+    Type[] parameters = ((ParameterizedType) type).getActualTypeArguments();
+    TypeDescriptor[] nested = new TypeDescriptor[parameters.length];
+    for (int i = 0; i < parameters.length; i++) {
+      nested[i] = of(parameters[i]);
+      if (nested[i].getKind() == Kind.UNSUPPORTED) {
+        return unsupported(type);
+      }
+    }
+    if (rawType.equals(List.class)) {
+      return new TypeDescriptor(type, Kind.LIST, null, null, nested[0]);
+    } else if (rawType.equals(Set.class)) {
+      return new TypeDescriptor(type, Kind.SET, null, null, nested[0]);
+    } else if (rawType.equals(Map.class)) {
+      return new TypeDescriptor(type, Kind.MAP, null, nested[0], nested[1]);
+    }
+    return unsupported(type);
+  }
+
+  /**
+   * Returns whether fields of the type may be annotated with
+   * {@link FlagInfo}, i.e. whether it is {@link Flag}, {@link MutableFlag} or
+   * a primitive flag type.
+   */
+  static boolean isFlagType(Class<?> type) {
+    return type.equals(Flag.class)
+        || type.equals(MutableFlag.class)
+        || isPrimitiveFlagType(type);
+  }
+
+  /**
+   * Returns whether the type is one of the primitive flag types such as
+   * {@link IntFlag}.
+   */
+  static boolean isPrimitiveFlagType(Class<?> type) {
+    return PRIMITIVE_FLAG_TYPES.containsKey(type);
+  }
+
+  private static TypeDescriptor unsupported(Type type) {
+    return new TypeDescriptor(type, Kind.UNSUPPORTED, null, null, null);
+  }
+
+  /**
+   * Returns the type described, e.g. the type T of the flag.
+   */
+  Type getType() {
+    return type;
+  }
+
+  Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * Returns the type of a {@link Kind#VALUE}, or null.
+   */
+  Class<?> getValueClass() {
+    return valueClass;
+  }
+
+  /**
+   * Returns the descriptor of the keys of a {@link Kind#MAP}, or null.
+   */
+  TypeDescriptor getKey() {
+    return key;
+  }
+
+  /**
+   * Returns the descriptor of the elements of a {@link Kind#LIST} or
+   * {@link Kind#SET}, or of the values of a {@link Kind#MAP}, or null.
+   */
+  TypeDescriptor getElement() {
+    return element;
+  }
+
+}
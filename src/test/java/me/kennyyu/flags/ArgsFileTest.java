@@ -0,0 +1,142 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for {@link ArgsFile} and "@path" arguments.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class ArgsFileTest {
+
+  @FlagInfo(help = "argsInt", altName = "ai", environment = "argsfile")
+  private static final Flag<Integer> argsInt = Flags.valueOf(0);
+
+  @FlagInfo(help = "argsString", environment = "argsfile")
+  private static final Flag<String> argsString = Flags.valueOf("");
+
+  @FlagInfo(help = "argsList", environment = "argsfile")
+  private static final Flag<List<Integer>> argsList =
+      Flags.valueOf(ImmutableList.<Integer>of());
+
+  @FlagInfo(help = "argsMap", environment = "argsfile")
+  private static final Flag<Map<String, Integer>> argsMap =
+      Flags.valueOf(ImmutableMap.<String, Integer>of());
+
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = File.createTempFile("flags", ".args");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  private void write(String contents) throws Exception {
+    Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private List<String> tokens() throws Exception {
+    ArgsFile argsFile = ArgsFile.read(file.toPath());
+    List<String> tokens = Lists.newArrayList();
+    while (argsFile.next()) {
+      tokens.add(argsFile.getChars()
+          .subSequence(argsFile.getStart(), argsFile.getEnd()).toString());
+    }
+    return tokens;
+  }
+
+  @Test
+  public void testTokens() throws Exception {
+    write("  --a=1\t-b\n\n# comment --c=2\n'--d=x y' --e=\"é z\"x #x\n");
+    assertEquals(
+        ImmutableList.of("--a=1", "-b", "--d=x y", "--e=é zx"),
+        tokens());
+    write("");
+    assertEquals(ImmutableList.of(), tokens());
+  }
+
+  @Test(expected = FlagException.class)
+  public void testUnterminatedQuote() throws Exception {
+    write("--a=\"1");
+    tokens();
+  }
+
+  @Test(expected = FlagException.class)
+  public void testMalformed() throws Exception {
+    Files.write(file.toPath(), new byte[] {'-', '-', 'a', '=', (byte) 0xff});
+    tokens();
+  }
+
+  @Test
+  public void testNotAFile() throws Exception {
+    file.delete();
+    // arguments which do not name a file are passed through unchanged
+    Flags.parseWithExceptions(new String[] {
+        "@" + file.getPath(), "@" + file.getParent(), "@user", "--argsInt=4"},
+        "argsfile");
+    assertEquals(4, argsInt.get().intValue());
+  }
+
+  @Test
+  public void testParse() throws Exception {
+    StringBuilder contents =
+        new StringBuilder("-ai=3 --argsMap=\"a:1 b:2\"\n--argsList=");
+    for (int i = 0; i < 10000; i++) {
+      contents.append(i).append(',');
+    }
+    contents.append("\n--argsString=file");
+    write(contents.toString());
+    Flags.parseWithExceptions(new String[] {
+        "--argsString=before", "@" + file.getPath(), "--argsInt=5"},
+        "argsfile");
+    // later arguments take precedence, whether in the file or not
+    assertEquals(5, argsInt.get().intValue());
+    assertEquals("file", argsString.get());
+    assertEquals(10000, argsList.get().size());
+    assertEquals(9999, argsList.get().get(9999).intValue());
+    assertEquals(ImmutableMap.of("a", 1, "b", 2), argsMap.get());
+
+    Flags.parser()
+        .environments("argsfile")
+        .lazy(true)
+        .parseWithExceptions(new String[] {"@" + file.getPath()});
+    assertEquals(3, argsInt.get().intValue());
+    assertEquals(10000, argsList.get().size());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    write("--argsInt=7");
+    Flags.parser()
+        .environments("argsfile")
+        .argsFiles(false)
+        .parseWithExceptions(new String[] {"@" + file.getPath()});
+    assertFalse(argsInt.get().intValue() == 7);
+  }
+
+  @Test(expected = UnknownFlagNameException.class)
+  public void testUnknownFlag() throws Exception {
+    write("--argsInt=1 --argsUnknown=2");
+    Flags.parseWithExceptions(
+        new String[] {"@" + file.getPath()}, "argsfile");
+  }
+
+}
@@ -0,0 +1,148 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for {@link ArgumentScanner}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class ArgumentScannerTest {
+
+  @FlagInfo(help = "scannerInts", altName = "si", environment = "scanner")
+  private static final Flag<int[]> scannerInts = Flags.valueOf(new int[0]);
+
+  @SuppressWarnings("unused")
+  @FlagInfo(help = "scannerLongs", environment = "scanner")
+  private static final Flag<List<Long>> scannerLongs =
+      Flags.valueOf(ImmutableList.<Long>of());
+
+  /**
+   * Slack for the bytes allocated by the measurement itself.
+   */
+  private static final long ALLOCATION_SLACK = 1024;
+
+  @Test
+  public void testScan() {
+    ArgumentScanner scanner = new ArgumentScanner();
+    assertFalse(scanner.scan("value"));
+    assertFalse(scanner.scan(""));
+
+    assertTrue(scanner.scan("--name=a=b"));
+    assertEquals(2, scanner.getNameStart());
+    assertEquals(6, scanner.getNameEnd());
+    assertEquals(7, scanner.getValueStart());
+
+    assertTrue(scanner.scan("-n"));
+    assertEquals(1, scanner.getNameStart());
+    assertEquals(2, scanner.getNameEnd());
+    assertEquals(2, scanner.getValueStart());
+
+    // a range of a larger sequence, as in an arguments file
+    assertFalse(scanner.scan("--a=1 b", 6, 7));
+    assertFalse(scanner.scan("--a=1 b", 5, 5));
+    assertTrue(scanner.scan("--a=1 -b", 0, 5));
+    assertEquals(2, scanner.getNameStart());
+    assertEquals(3, scanner.getNameEnd());
+    assertEquals(4, scanner.getValueStart());
+    assertTrue(scanner.scan("--a=1 -b", 6, 8));
+    assertEquals(7, scanner.getNameStart());
+    assertEquals(8, scanner.getNameEnd());
+    assertEquals(8, scanner.getValueStart());
+  }
+
+  @Test
+  public void testRanges() {
+    assertEquals(3, ArgumentScanner.trimTrailingDelimiters("a,b,,", ',', 0, 5));
+    assertEquals(0, ArgumentScanner.countElements("", ',', 0, 0));
+    assertEquals(1, ArgumentScanner.countElements("a", ',', 0, 1));
+    assertEquals(3, ArgumentScanner.countElements("a,,b", ',', 0, 4));
+    assertEquals(2, ArgumentScanner.countElements("x a b", ' ', 2, 5));
+    assertEquals(
+        "name".hashCode(), ArgumentScanner.hashCode("--name=", 2, 6));
+    assertTrue(ArgumentScanner.regionEquals("--name=", 2, 6, "name"));
+    assertFalse(ArgumentScanner.regionEquals("--name=", 2, 6, "nam"));
+  }
+
+  @Test
+  public void testParseWithoutIntermediateAllocations() throws Exception {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return; // allocations cannot be counted on this JVM
+    }
+    com.sun.management.ThreadMXBean allocations =
+        (com.sun.management.ThreadMXBean) threads;
+    if (!allocations.isThreadAllocatedMemorySupported()
+        || !allocations.isThreadAllocatedMemoryEnabled()) {
+      return;
+    }
+
+    int size = 100000;
+    List<Integer> ids = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < size; i++) {
+      ids.add(i * 7);
+    }
+    String[] args = {"-si=" + Joiner.on(',').join(ids)};
+    FlagRegistry registry = FlagRegistry.build(ImmutableList.of(
+        ArgumentScannerTest.class.getDeclaredField("scannerInts"),
+        ArgumentScannerTest.class.getDeclaredField("scannerLongs")));
+
+    String[] smallArgs = {"-si=7"};
+
+    // warm up, so that class loading and compilation are not counted
+    for (int i = 0; i < 20; i++) {
+      Flags.parseWithExceptions(args, "scanner");
+      Flags.parseWithExceptions(smallArgs, "scanner");
+      scan(registry, args);
+    }
+
+    long threadId = Thread.currentThread().getId();
+    long before = allocations.getThreadAllocatedBytes(threadId);
+    int found = scan(registry, args);
+    long scanned = allocations.getThreadAllocatedBytes(threadId) - before;
+    assertEquals(1, found);
+    assertTrue("scanning allocated " + scanned + " bytes",
+        scanned < ALLOCATION_SLACK);
+
+    // the cost per parse, e.g. of publishing a snapshot, does not depend on
+    // the number of elements, and is measured with a single element
+    before = allocations.getThreadAllocatedBytes(threadId);
+    Flags.parseWithExceptions(smallArgs, "scanner");
+    long parsedSmall = allocations.getThreadAllocatedBytes(threadId) - before;
+    before = allocations.getThreadAllocatedBytes(threadId);
+    Flags.parseWithExceptions(args, "scanner");
+    long parsed = allocations.getThreadAllocatedBytes(threadId) - before;
+    assertEquals(size, scannerInts.get().length);
+    assertEquals(7 * (size - 1), scannerInts.get()[size - 1]);
+    // only the int[] holding the values is allocated per element
+    long perElement = parsed - parsedSmall;
+    assertTrue("parsing allocated " + perElement + " bytes for the elements",
+        perElement < 4L * size + ALLOCATION_SLACK);
+  }
+
+  /**
+   * Scans args and looks up their names, and returns the number of flags.
+   */
+  private static int scan(FlagRegistry registry, String[] args) {
+    ArgumentScanner scanner = new ArgumentScanner();
+    int found = 0;
+    for (String arg : args) {
+      if (scanner.scan(arg) && registry.getFlagIndex(
+          arg, scanner.getNameStart(), scanner.getNameEnd()) >= 0) {
+        found++;
+      }
+    }
+    return found;
+  }
+
+}
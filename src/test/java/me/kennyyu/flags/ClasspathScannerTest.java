@@ -0,0 +1,57 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.reflections.util.ClasspathHelper;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests for {@link ClasspathScanner}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class ClasspathScannerTest {
+
+  private static final Set<String> NO_PACKAGES = ImmutableSet.of();
+
+  @Test
+  public void testScan() throws Exception {
+    Set<Field> fields = new ClasspathScanner(
+        ClasspathHelper.forJavaClassPath(), NO_PACKAGES, null, null).scan();
+    assertTrue(
+        fields.contains(FlagsTest.class.getDeclaredField("flagInteger")));
+    assertTrue(fields.contains(Flags.class.getDeclaredField("help")));
+  }
+
+  @Test
+  public void testScanPackages() throws Exception {
+    Set<Field> fields = new ClasspathScanner(
+        ClasspathHelper.forJavaClassPath(),
+        ImmutableSet.of("org.junit"),
+        null,
+        null).scan();
+    assertTrue(fields.isEmpty());
+  }
+
+  @Test
+  public void testParallelScanMatchesScan() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Set<URL> urls = ClasspathHelper.forJavaClassPath();
+      assertEquals(
+          new ClasspathScanner(urls, NO_PACKAGES, null, null).scan(),
+          new ClasspathScanner(urls, NO_PACKAGES, null, executor).scan());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
@@ -0,0 +1,169 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.nio.CharBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests for {@link CollectionParser}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class CollectionParserTest {
+
+  private static final FlagConverter<Integer> INTEGER =
+      FlagConverters.get(Integer.class);
+
+  private static final FlagConverter<String> STRING =
+      FlagConverters.get(String.class);
+
+  /**
+   * Type whose converter returns null.
+   */
+  private static final class Nothing {}
+
+  @FlagInfo(help = "nothings", environment = "nothings")
+  private static final Flag<List<Nothing>> nothings =
+      Flags.valueOf(ImmutableList.<Nothing>of());
+
+  private static final FlagConverter<Nothing> NOTHING =
+      new FlagConverter<Nothing>() {
+        @Override
+        public Nothing convert(String value) {
+          return null;
+        }
+      };
+
+  private static Map<String, Integer> parseMap(String value, boolean mutable)
+      throws FlagException {
+    return CollectionParser.parseMap(
+        value, 0, value.length(), STRING, INTEGER, ' ', ':', mutable);
+  }
+
+  @Test
+  public void testParseList() throws Exception {
+    assertEquals(ImmutableList.of(1, 2, 3), CollectionParser.parseList(
+        "--l=1,2,3,,", 4, 11, INTEGER, ',', false));
+    assertEquals(ImmutableList.of(),
+        CollectionParser.parseList(",,", 0, 2, INTEGER, ',', false));
+    assertEquals(ImmutableSet.of("a", "b"),
+        CollectionParser.parseSet("a;b;a", 0, 5, STRING, ';', false));
+  }
+
+  @Test
+  public void testParseMap() throws Exception {
+    assertEquals(
+        ImmutableMap.of("a", 1, "b", 2), parseMap("\"a:1 b:2 \"", false));
+    assertEquals(ImmutableMap.of(), parseMap("\"\"", false));
+    assertEquals(ImmutableMap.of("a", 1, "b", 2), CollectionParser.parseMap(
+        "a=1;b=2", 0, 7, STRING, INTEGER, ';', '=', false));
+  }
+
+  @Test(expected = IllegalFlagFormatException.class)
+  public void testMalformedMap() throws Exception {
+    parseMap("a:1 b:2:3", false);
+  }
+
+  @Test
+  public void testLargeCharBuffer() throws Exception {
+    StringBuilder list = new StringBuilder();
+    StringBuilder map = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      list.append(i).append(',');
+      map.append('k').append(i).append(':').append(i).append(' ');
+    }
+    CharBuffer listChars = CharBuffer.wrap(list);
+    List<Integer> elements = CollectionParser.parseList(
+        listChars, 0, listChars.length(), INTEGER, ',', false);
+    assertEquals(100000, elements.size());
+    assertEquals(99999, elements.get(99999).intValue());
+
+    CharBuffer mapChars = CharBuffer.wrap(map);
+    Map<String, Integer> entries = CollectionParser.parseMap(
+        mapChars, 0, mapChars.length(), STRING, INTEGER, ' ', ':', false);
+    assertEquals(100000, entries.size());
+    assertEquals(12345, entries.get("k12345").intValue());
+    assertTrue(entries instanceof CompactImmutableMap);
+  }
+
+  @Test
+  public void testImmutable() throws Exception {
+    assertTrue(CollectionParser.parseList("1,2", 0, 3, INTEGER, ',', false)
+        instanceof ImmutableList);
+    assertTrue(CollectionParser.parseSet("a", 0, 1, STRING, ',', false)
+        instanceof ImmutableSet);
+    // later duplicate keys replace earlier ones, as in a HashMap
+    Map<String, Integer> map = parseMap("a:1 b:2 a:3", false);
+    assertTrue(map instanceof ImmutableMap);
+    assertEquals(ImmutableMap.of("a", 3, "b", 2), map);
+  }
+
+  @Test
+  public void testMutable() throws Exception {
+    List<Integer> list =
+        CollectionParser.parseList("1,2", 0, 3, INTEGER, ',', true);
+    list.add(3);
+    assertEquals(ImmutableList.of(1, 2, 3), list);
+    Set<String> set = CollectionParser.parseSet("a", 0, 1, STRING, ',', true);
+    set.add("b");
+    assertEquals(ImmutableSet.of("a", "b"), set);
+    Map<String, Integer> map = parseMap("a:1 b:2 a:3", true);
+    map.remove("b");
+    assertEquals(ImmutableMap.of("a", 3), map);
+  }
+
+  @Test
+  public void testNullElements() throws Exception {
+    assertEquals(1, CollectionParser.parseList(
+        "x", 0, 1, NOTHING, ',', true).size());
+    try {
+      CollectionParser.parseList("x", 0, 1, NOTHING, ',', false);
+      fail();
+    } catch (CollectionParser.NullElementException e) {
+      assertTrue(e.getMessage().contains("\"x\""));
+    }
+    try {
+      CollectionParser.parseMap(
+          "a:x", 0, 3, STRING, NOTHING, ' ', ':', false);
+      fail();
+    } catch (CollectionParser.NullElementException e) {
+      // expected
+    }
+
+    Flags.registerConverter(Nothing.class, NOTHING);
+    try {
+      Flags.parseWithExceptions(new String[] {"--nothings=x"}, "nothings");
+      fail();
+    } catch (FlagException e) {
+      assertTrue(e.getMessage().contains("nothings"));
+    }
+    assertTrue(nothings.get().isEmpty());
+  }
+
+  @Test
+  public void testNestedConverters() throws Exception {
+    FlagConverter<List<List<Integer>>> lists = CollectionParser.listConverter(
+        CollectionParser.listConverter(INTEGER, ',', false), ';', false);
+    assertEquals(
+        ImmutableList.of(ImmutableList.of(1, 2), ImmutableList.of(3)),
+        lists.convert("1,2;3"));
+
+    FlagConverter<Map<String, Set<String>>> shards =
+        CollectionParser.mapConverter(STRING,
+            CollectionParser.setConverter(STRING, ',', false),
+            ' ', ':', false);
+    assertEquals(
+        ImmutableMap.of("a", ImmutableSet.of("x", "y"), "b", ImmutableSet.of()),
+        shards.convert("--shards=a:x,y b:", 9, 17));
+  }
+
+}
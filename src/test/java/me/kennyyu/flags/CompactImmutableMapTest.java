@@ -0,0 +1,82 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests for {@link CompactImmutableMap}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class CompactImmutableMapTest {
+
+  private static Map<Object, Object> copyOf(Object... keysAndValues) {
+    int size = keysAndValues.length / 2;
+    Object[] keys = new Object[size];
+    Object[] values = new Object[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = keysAndValues[2 * i];
+      values[i] = keysAndValues[2 * i + 1];
+    }
+    return CompactImmutableMap.copyOf(keys, values, size);
+  }
+
+  @Test
+  public void testLookups() {
+    Map<Object, Object> map = copyOf("a", 1, "b", 2, "a", 3);
+    assertEquals(2, map.size());
+    assertEquals(3, map.get("a"));
+    assertEquals(2, map.get("b"));
+    assertNull(map.get("c"));
+    assertNull(map.get(null));
+    assertTrue(map.containsKey("b"));
+    assertFalse(map.containsKey("c"));
+    assertTrue(map.containsValue(3));
+    assertEquals(ImmutableMap.of("a", 3, "b", 2), map);
+    assertEquals(ImmutableMap.of("a", 3, "b", 2).hashCode(), map.hashCode());
+    // entries keep the position of the first occurrence of their key
+    assertEquals(ImmutableList.of("a", "b"), Lists.newArrayList(map.keySet()));
+    assertTrue(copyOf().isEmpty());
+  }
+
+  @Test
+  public void testLarge() {
+    Map<Object, Object> expected = Maps.newHashMap();
+    Object[] keys = new Object[100000];
+    Object[] values = new Object[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      // keys whose hash codes only differ in the high bits
+      keys[i] = (long) i << 32;
+      values[i] = i;
+      expected.put(keys[i], values[i]);
+    }
+    Map<Object, Object> map =
+        CompactImmutableMap.copyOf(keys, values, keys.length);
+    assertEquals(expected, map);
+    assertEquals(99999, map.get(99999L << 32));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testPut() {
+    copyOf("a", 1).put("b", 2);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testClear() {
+    copyOf("a", 1).clear();
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullValue() {
+    copyOf("a", null);
+  }
+
+}
@@ -0,0 +1,153 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for {@link FlagChangeDispatcher} and flag listeners.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class FlagChangeDispatcherTest {
+
+  private static final long TIMEOUT_SECONDS = 10;
+
+  @FlagInfo(help = "listenedSize", environment = "listened")
+  private static final IntFlag listenedSize = Flags.valueOf(1);
+
+  @FlagInfo(help = "listenedName", environment = "listened")
+  private static final Flag<String> listenedName = Flags.valueOf("a");
+
+  /**
+   * Listener recording the changes it receives and the threads it runs on.
+   */
+  private static class Recorder<T> implements Consumer<FlagChange<T>> {
+    private final List<String> events;
+    private final CountDownLatch latch;
+
+    Recorder(List<String> events, CountDownLatch latch) {
+      this.events = events;
+      this.latch = latch;
+    }
+
+    @Override
+    public void accept(FlagChange<T> change) {
+      synchronized (events) {
+        events.add(change.getOldValue() + "->" + change.getNewValue());
+      }
+      assertTrue(Thread.currentThread().getName().startsWith(
+          "flags-listeners-"));
+      latch.countDown();
+    }
+  }
+
+  @Test
+  public void testParseDispatchesChangesInOrder() throws Exception {
+    List<String> events = Lists.newArrayList();
+    CountDownLatch latch = new CountDownLatch(4);
+    Recorder<Integer> sizeRecorder = new Recorder<Integer>(events, latch);
+    Recorder<String> nameRecorder = new Recorder<String>(events, latch);
+    listenedSize.addListener(sizeRecorder);
+    listenedName.addListener(nameRecorder);
+    try {
+      Flags.parseWithExceptions(
+          new String[] {"--listenedName=b", "--listenedSize=2"}, "listened");
+      Flags.parseWithExceptions(
+          new String[] {"--listenedSize=3", "--listenedName=c"}, "listened");
+      assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    } finally {
+      listenedSize.removeListener(sizeRecorder);
+      listenedName.removeListener(nameRecorder);
+    }
+    // the changes of one parse are delivered before those of the next
+    List<String> firstBatch = events.subList(0, 2);
+    assertTrue(firstBatch.containsAll(ImmutableList.of("1->2", "a->b")));
+    List<String> secondBatch = events.subList(2, 4);
+    assertTrue(secondBatch.containsAll(ImmutableList.of("2->3", "b->c")));
+  }
+
+  @Test
+  public void testSlowListenerDoesNotBlockUpdates() throws Exception {
+    MutableFlag<Integer> flag = Flags.mutableValueOf(0);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Integer> values = Lists.newArrayList();
+    final CountDownLatch delivered = new CountDownLatch(3);
+    flag.addListener(new Consumer<FlagChange<Integer>>() {
+      @Override
+      public void accept(FlagChange<Integer> change) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        synchronized (values) {
+          values.add(change.getNewValue());
+        }
+        delivered.countDown();
+      }
+    });
+    flag.set(1);
+    flag.set(2);
+    assertTrue(flag.compareAndSet(2, 3));
+    assertEquals(Integer.valueOf(3), flag.get());
+    release.countDown();
+    assertTrue(delivered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    synchronized (values) {
+      assertEquals(ImmutableList.of(1, 2, 3), values);
+    }
+  }
+
+  @Test
+  public void testFailingListener() throws Exception {
+    MutableFlag<String> flag = Flags.mutableValueOf("a");
+    final CountDownLatch delivered = new CountDownLatch(1);
+    flag.addListener(new Consumer<FlagChange<String>>() {
+      @Override
+      public void accept(FlagChange<String> change) {
+        throw new IllegalStateException("listener failure");
+      }
+    });
+    flag.addListener(new Consumer<FlagChange<String>>() {
+      @Override
+      public void accept(FlagChange<String> change) {
+        delivered.countDown();
+      }
+    });
+    flag.set("b");
+    assertTrue(delivered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testCustomFlagDoesNotSupportListeners() {
+    Flag<String> flag = new Flag<String>() {
+      @Override
+      public String get() {
+        return "constant";
+      }
+
+      @Override
+      public String defaultValue() {
+        return "constant";
+      }
+    };
+    try {
+      flag.addListener(new Consumer<FlagChange<String>>() {
+        @Override
+        public void accept(FlagChange<String> change) {}
+      });
+      fail("did not throw UnsupportedOperationException");
+    } catch (UnsupportedOperationException e) {
+      assertTrue(true);
+    }
+  }
+
+}
@@ -0,0 +1,142 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests for {@link FlagConverter} and {@link FlagConverters}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class FlagConverterTest {
+
+  private enum Color {
+    RED,
+    GREEN
+  }
+
+  /**
+   * Type without a converter until {@link #testRegisterAfterParse()}.
+   */
+  private static final class Port {
+    private final int number;
+
+    Port(int number) {
+      this.number = number;
+    }
+  }
+
+  @FlagInfo(help = "converterPath", environment = "converter")
+  private static Flag<Path> converterPath = Flags.valueOf(Paths.get("."));
+
+  @FlagInfo(help = "converterAddresses", environment = "converter")
+  private static Flag<List<InetSocketAddress>> converterAddresses =
+      Flags.valueOf(ImmutableList.<InetSocketAddress>of());
+
+  @FlagInfo(help = "converterColors", environment = "converter")
+  private static Flag<Map<Color, Path>> converterColors =
+      Flags.valueOf(ImmutableMap.<Color, Path>of());
+
+  @FlagInfo(help = "converterPort", environment = "converterPort")
+  private static Flag<Port> converterPort = Flags.valueOf(new Port(0));
+
+  @BeforeClass
+  public static void registerConverters() {
+    Flags.registerConverter(Path.class, new FlagConverter<Path>() {
+      @Override
+      public Path convert(String value) {
+        return Paths.get(value);
+      }
+    });
+    Flags.registerConverter(
+        InetSocketAddress.class, new FlagConverter<InetSocketAddress>() {
+      @Override
+      public InetSocketAddress convert(String value)
+          throws FlagException {
+        int colon = value.lastIndexOf(':');
+        if (colon < 0) {
+          throw new IllegalFlagFormatException(value);
+        }
+        return InetSocketAddress.createUnresolved(
+            value.substring(0, colon),
+            Integer.parseInt(value.substring(colon + 1)));
+      }
+    });
+  }
+
+  @Test
+  public void testBuiltInConverters() throws Exception {
+    assertEquals(
+        Byte.valueOf((byte) 0x1f),
+        FlagConverters.get(Byte.class).convert("1f"));
+    assertEquals(Boolean.TRUE, FlagConverters.get(Boolean.class).convert(""));
+    assertEquals(
+        Integer.valueOf(-3), FlagConverters.get(Integer.class).convert("-3"));
+    assertNull(FlagConverters.get(Port.class));
+  }
+
+  @Test
+  public void testEnumConverter() throws Exception {
+    FlagConverter<Color> converter = FlagConverters.get(Color.class);
+    assertSame(converter, FlagConverters.get(Color.class));
+    assertEquals(Color.GREEN, converter.convert("GREEN"));
+    assertEquals(Color.RED, converter.convert("--color=RED", 8, 11));
+    try {
+      converter.convert("BLUE");
+      fail("did not throw IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(true);
+    }
+  }
+
+  @Test
+  public void testRegisteredConverters() throws Exception {
+    Flags.parseWithExceptions(new String[] {
+        "--converterPath=/tmp/flags",
+        "--converterAddresses=localhost:80,example.com:8080",
+        "--converterColors=\"RED:/red GREEN:/green\"",
+    }, "converter");
+    assertEquals(Paths.get("/tmp/flags"), converterPath.get());
+    assertEquals(
+        ImmutableList.of(
+            InetSocketAddress.createUnresolved("localhost", 80),
+            InetSocketAddress.createUnresolved("example.com", 8080)),
+        converterAddresses.get());
+    assertEquals(
+        ImmutableMap.of(
+            Color.RED, Paths.get("/red"), Color.GREEN, Paths.get("/green")),
+        converterColors.get());
+  }
+
+  @Test
+  public void testRegisterAfterParse() throws Exception {
+    try {
+      Flags.parseWithExceptions(
+          new String[] {"--converterPort=8080"}, "converterPort");
+      fail("did not throw UnsupportedFlagTypeException");
+    } catch (UnsupportedFlagTypeException e) {
+      assertTrue(true);
+    }
+    Flags.registerConverter(Port.class, new FlagConverter<Port>() {
+      @Override
+      public Port convert(String value) {
+        return new Port(Integer.parseInt(value));
+      }
+    });
+    Flags.parseWithExceptions(
+        new String[] {"--converterPort=8080"}, "converterPort");
+    assertEquals(8080, converterPort.get().number);
+  }
+
+}
@@ -0,0 +1,121 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link FlagFileWatcher} and the "--flagfile" flag.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class FlagFileWatcherTest {
+
+  private static final long TIMEOUT_MILLIS = 10000;
+
+  @FlagInfo(help = "watchedInt", environment = "watched")
+  private static final Flag<Integer> watchedInt = Flags.valueOf(0);
+
+  @FlagInfo(help = "watchedList", environment = "watched")
+  private static final Flag<List<Integer>> watchedList =
+      Flags.valueOf(ImmutableList.<Integer>of());
+
+  @FlagInfo(help = "watchedString", environment = "watched")
+  private static final Flag<String> watchedString = Flags.valueOf("");
+
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = File.createTempFile("flags", ".flags");
+  }
+
+  @After
+  public void tearDown() {
+    FlagFileWatcher.closeAll();
+    file.delete();
+  }
+
+  private void write(String... lines) throws Exception {
+    File temp = new File(file.getPath() + ".tmp");
+    Files.write(temp.toPath(),
+        Joiner.on('\n').join(lines).getBytes(StandardCharsets.UTF_8));
+    // replace the file in one step, as editors do
+    assertTrue(temp.renameTo(file));
+  }
+
+  private void parse() throws Exception {
+    Flags.parser()
+        .environments("", "watched")
+        .parseWithExceptions(new String[] {
+            "--flagfile=" + file.getPath(),
+            "--watchedString=command line",
+        });
+  }
+
+  private static void awaitInt(int expected) throws Exception {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (watchedInt.get() != expected
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertEquals(Integer.valueOf(expected), watchedInt.get());
+  }
+
+  @Test
+  public void testLoad() throws Exception {
+    write("# comment",
+        "--watchedInt=5",
+        "",
+        "  --watchedList=1,2  ",
+        "--watchedString=file");
+    parse();
+    assertEquals(Integer.valueOf(5), watchedInt.get());
+    assertEquals(ImmutableList.of(1, 2), watchedList.get());
+    assertEquals("command line", watchedString.get());
+  }
+
+  @Test
+  public void testUnknownFlagInFile() throws Exception {
+    write("--watchedUnknown=5");
+    try {
+      parse();
+      fail("did not throw UnknownFlagNameException");
+    } catch (UnknownFlagNameException e) {
+      assertTrue(true);
+    }
+  }
+
+  @Test
+  public void testReload() throws Exception {
+    write("--watchedInt=5", "--watchedList=1,2");
+    parse();
+    awaitInt(5);
+
+    write("--watchedInt=6", "--watchedList=1,2", "--watchedString=file");
+    awaitInt(6);
+    assertEquals(ImmutableList.of(1, 2), watchedList.get());
+    assertEquals("command line", watchedString.get());
+
+    // an illegal value leaves every flag unchanged
+    write("--watchedInt=7", "--watchedList=1,x");
+    Thread.sleep(FlagFileWatcher.DEBOUNCE_MILLIS * 5);
+    assertEquals(Integer.valueOf(6), watchedInt.get());
+    assertEquals(ImmutableList.of(1, 2), watchedList.get());
+
+    write("--watchedInt=8", "--watchedList=3");
+    awaitInt(8);
+    assertEquals(ImmutableList.of(3), watchedList.get());
+  }
+
+}
@@ -0,0 +1,113 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link FlagInfoProcessor}. The processor runs while the tests are
+ * compiled, so the flags declared by the tests must be in the generated
+ * {@link FlagIndex}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class FlagInfoProcessorTest {
+
+  private static List<String> indexedFields(String environment) {
+    List<String> fields = Lists.newArrayList();
+    for (FlagIndex index : ServiceLoader.load(FlagIndex.class)) {
+      fields.addAll(index.fields(environment));
+    }
+    return fields;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  @Test
+  public void testIndexContainsFlags() {
+    List<String> fields = indexedFields("testing");
+    assertTrue(fields.contains("me.kennyyu.flags.FlagsTest#flagInteger"));
+    assertTrue(fields.contains("me.kennyyu.flags.FlagsTest#flagStaticFinal"));
+  }
+
+  @Test
+  public void testIndexSeparatesEnvironments() {
+    assertTrue(indexedFields("format").contains(
+        "me.kennyyu.flags.IllegalFlagFormatExceptionTest#flagMap"));
+    assertFalse(indexedFields("testing").contains(
+        "me.kennyyu.flags.IllegalFlagFormatExceptionTest#flagMap"));
+    assertTrue(indexedFields("unknown environment").isEmpty());
+  }
+
+  @Test
+  public void testIndexNameIsUnique() {
+    boolean found = false;
+    for (FlagIndex index : ServiceLoader.load(FlagIndex.class)) {
+      // named after a hash of its fields, so that it does not collide with
+      // the indexes of other jars with flags in the same package
+      found |= index.getClass().getName().matches(
+          "me\\.kennyyu\\.flags\\.GeneratedFlagIndex_[0-9a-f]{16}");
+    }
+    assertTrue(found);
+  }
+
+  @Test
+  public void testNoSourceInLastRound() throws Exception {
+    File directory = Files.createTempDir();
+    try {
+      File source = new File(directory, "Indexed.java");
+      Files.write("package indexed;\n"
+          + "public class Indexed {\n"
+          + "  @me.kennyyu.flags.FlagInfo(help = \"indexed\")\n"
+          + "  static final me.kennyyu.flags.Flag<Integer> indexed =\n"
+          + "      me.kennyyu.flags.Flags.valueOf(0);\n"
+          + "}\n", source, Charsets.UTF_8);
+      JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+      StringWriter output = new StringWriter();
+      StandardJavaFileManager fileManager =
+          compiler.getStandardFileManager(null, null, null);
+      try {
+        // javac warns about sources generated in the last round
+        CompilationTask task = compiler.getTask(output, fileManager, null,
+            Arrays.asList("-Xlint:processing", "-Werror",
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", directory.getPath(), "-s", directory.getPath()),
+            null, fileManager.getJavaFileObjects(source));
+        task.setProcessors(Arrays.asList(new FlagInfoProcessor()));
+        assertTrue(output.toString(), task.call());
+      } finally {
+        fileManager.close();
+      }
+      String services = Files.toString(new File(directory,
+          "META-INF/services/" + FlagIndex.class.getName()), Charsets.UTF_8);
+      assertTrue(services.matches(
+          "indexed\\.GeneratedFlagIndex_[0-9a-f]{16}\n"));
+    } finally {
+      delete(directory);
+    }
+  }
+
+}
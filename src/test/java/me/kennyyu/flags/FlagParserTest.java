@@ -0,0 +1,91 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link FlagParser}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class FlagParserTest {
+
+  @FlagInfo(help = "flagParserInteger", environment = "parser")
+  private static Flag<Integer> flagParserInteger = Flags.valueOf(0);
+
+  @FlagInfo(help = "flagParserList", environment = "parser")
+  private static Flag<List<Integer>> flagParserList =
+      Flags.valueOf(ImmutableList.<Integer>of());
+
+  @After
+  public void tearDown() {
+    flagParserInteger = Flags.valueOf(0);
+  }
+
+  @Test
+  public void testEnvironments() {
+    String[] args = {"--flagParserInteger=3"};
+    Flags.parser().environments("parser").parse(args);
+    assertEquals(3, (int) flagParserInteger.get());
+  }
+
+  @Test
+  public void testMutableCollections() {
+    String[] args = {"--flagParserList=1,2"};
+    Flags.parser().environments("parser").parse(args);
+    assertTrue(flagParserList.get() instanceof ImmutableList);
+
+    Flags.parser().environments("parser").mutableCollections(true).parse(args);
+    List<Integer> list = flagParserList.get();
+    list.add(3);
+    assertEquals(ImmutableList.of(1, 2, 3), list);
+  }
+
+  @Test
+  public void testScanPackages() {
+    String[] args = {"--flagParserInteger=4"};
+    Flags.parser()
+        .scanPackages("me.kennyyu.flags")
+        .environments("parser")
+        .parse(args);
+    assertEquals(4, (int) flagParserInteger.get());
+  }
+
+  @Test
+  public void testScanPackagesWithClasspathScan() {
+    String[] args = {"--flagParserInteger=5"};
+    Flags.parser()
+        .scanPackages("me.kennyyu.flags")
+        .classpathScan(true)
+        .environments("parser")
+        .parse(args);
+    assertEquals(5, (int) flagParserInteger.get());
+  }
+
+  @Test
+  public void testScanPackagesExcludesOtherPackages() throws FlagException {
+    String[] args = {"--flagParserInteger=6"};
+    try {
+      Flags.parser()
+          .scanPackages("com.acme")
+          .environments("parser")
+          .parseWithExceptions(args);
+      fail("did not throw UnknownFlagNameException");
+    } catch (UnknownFlagNameException e) {
+      assertEquals(0, (int) flagParserInteger.get());
+    }
+  }
+
+  @Test
+  public void testScanPackagesKeepsHelp() throws FlagException {
+    String[] args = {"--help=false"};
+    Flags.parser().scanPackages("com.acme").parseWithExceptions(args);
+  }
+
+}
@@ -0,0 +1,90 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests for {@link FlagRegistry}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class FlagRegistryTest {
+
+  @SuppressWarnings("unused")
+  @FlagInfo(help = "registryInteger", altName = "ri", environment = "registry")
+  private static Flag<Integer> registryInteger = Flags.valueOf(0);
+
+  @SuppressWarnings("unused")
+  @FlagInfo(help = "registryMap", environment = "registry")
+  private static Flag<Map<String, Long>> registryMap =
+      Flags.valueOf(ImmutableMap.<String, Long>of());
+
+  @SuppressWarnings("unused")
+  @FlagInfo(help = "registryNested", environment = "registry")
+  private static Flag<List<List<Integer>>> registryNested =
+      Flags.valueOf(ImmutableList.<List<Integer>>of());
+
+  private static Field field(String name) throws NoSuchFieldException {
+    return FlagRegistryTest.class.getDeclaredField(name);
+  }
+
+  @Test
+  public void testLookupByName() throws Exception {
+    FlagRegistry registry = FlagRegistry.build(ImmutableList.of(
+        field("registryInteger"), field("registryMap")));
+    assertEquals(2, registry.getFlagFields().size());
+    assertSame(
+        registry.getFlagField("registryInteger"), registry.getFlagField("ri"));
+    assertEquals("registryMap", registry.getFlagField("registryMap").getName());
+    assertNull(registry.getFlagField("registryNested"));
+    assertEquals(
+        ImmutableSet.of("registryInteger", "ri", "registryMap"),
+        registry.getNames());
+  }
+
+  @Test
+  public void testTypeDescriptors() throws Exception {
+    FlagRegistry registry = FlagRegistry.build(ImmutableList.of(
+        field("registryInteger"),
+        field("registryMap"),
+        field("registryNested")));
+    TypeDescriptor integer =
+        registry.getFlagField("ri").getTypeDescriptor();
+    assertEquals(TypeDescriptor.Kind.VALUE, integer.getKind());
+    assertEquals(Integer.class, integer.getValueClass());
+
+    TypeDescriptor map =
+        registry.getFlagField("registryMap").getTypeDescriptor();
+    assertEquals(TypeDescriptor.Kind.MAP, map.getKind());
+    assertEquals(String.class, map.getKey().getValueClass());
+    assertEquals(Long.class, map.getElement().getValueClass());
+
+    TypeDescriptor nested =
+        registry.getFlagField("registryNested").getTypeDescriptor();
+    assertEquals(TypeDescriptor.Kind.LIST, nested.getKind());
+    assertEquals(TypeDescriptor.Kind.LIST, nested.getElement().getKind());
+    assertEquals(
+        Integer.class, nested.getElement().getElement().getValueClass());
+  }
+
+  @Test
+  public void testDuplicateName() throws Exception {
+    try {
+      FlagRegistry.build(ImmutableList.of(
+          field("registryInteger"), field("registryInteger")));
+      fail("did not throw DuplicateFlagNameException");
+    } catch (DuplicateFlagNameException e) {
+      assertTrue(true);
+    }
+  }
+
+}
@@ -0,0 +1,116 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link FlagSnapshot}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class FlagSnapshotTest {
+
+  @FlagInfo(help = "snapshotMinPool", environment = "snapshot")
+  private static final IntFlag snapshotMinPool = Flags.valueOf(1);
+
+  @FlagInfo(help = "snapshotMaxPool", environment = "snapshot")
+  private static final IntFlag snapshotMaxPool = Flags.valueOf(1);
+
+  @FlagInfo(help = "snapshotLimit", environment = "snapshot")
+  private static final MutableFlag<Integer> snapshotLimit =
+      Flags.mutableValueOf(10);
+
+  private static void parse(int minPool, int maxPool) throws FlagException {
+    Flags.parseWithExceptions(new String[] {
+        "--snapshotMinPool=" + minPool,
+        "--snapshotMaxPool=" + maxPool,
+    }, "snapshot");
+  }
+
+  @Test
+  public void testParsePublishesSnapshot() throws Exception {
+    long version = Flags.snapshot().getVersion();
+    parse(2, 4);
+    FlagSnapshot snapshot = Flags.snapshot();
+    assertTrue(snapshot.getVersion() > version);
+    assertEquals(Integer.valueOf(2), snapshot.get(snapshotMinPool));
+    assertEquals(Integer.valueOf(4), snapshot.get("snapshotMaxPool"));
+    assertEquals(Integer.valueOf(10), snapshot.get(snapshotLimit));
+    assertTrue(snapshot.getNames().contains("snapshotLimit"));
+
+    parse(3, 6);
+    assertEquals(Integer.valueOf(2), snapshot.get(snapshotMinPool));
+    assertEquals(Integer.valueOf(3), Flags.snapshot().get(snapshotMinPool));
+  }
+
+  @Test
+  public void testMutableFlagPublishesSnapshot() throws Exception {
+    parse(1, 1);
+    long version = Flags.snapshot().getVersion();
+    snapshotLimit.set(20);
+    FlagSnapshot snapshot = Flags.snapshot();
+    assertTrue(snapshot.getVersion() > version);
+    assertEquals(Integer.valueOf(20), snapshot.get(snapshotLimit));
+  }
+
+  @Test
+  public void testSnapshotIsSharedUntilUpdate() throws Exception {
+    parse(1, 1);
+    FlagSnapshot snapshot = Flags.snapshot();
+    assertSame(snapshot, Flags.snapshot());
+    snapshotLimit.set(30);
+    snapshotLimit.set(40);
+    FlagSnapshot updated = Flags.snapshot();
+    assertNotSame(snapshot, updated);
+    assertEquals(snapshot.getVersion() + 2, updated.getVersion());
+    assertEquals(Integer.valueOf(40), updated.get(snapshotLimit));
+  }
+
+  @Test
+  public void testUnparsedFlag() {
+    try {
+      Flags.snapshot().get(Flags.valueOf("unparsed"));
+      fail("did not throw IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertTrue(true);
+    }
+  }
+
+  @Test
+  public void testReadersSeeConsistentValues() throws Exception {
+    parse(0, 0);
+    final AtomicBoolean done = new AtomicBoolean(false);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Integer> reader = executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          int reads = 0;
+          while (!done.get()) {
+            FlagSnapshot snapshot = Flags.snapshot();
+            // both flags are always parsed with the same value
+            assertEquals(
+                snapshot.get(snapshotMinPool), snapshot.get(snapshotMaxPool));
+            reads++;
+          }
+          return reads;
+        }
+      });
+      for (int i = 1; i <= 500; i++) {
+        parse(i, i);
+      }
+      done.set(true);
+      assertTrue(reader.get() > 0);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
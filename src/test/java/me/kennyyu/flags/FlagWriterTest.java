@@ -0,0 +1,84 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link FlagWriter}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class FlagWriterTest {
+
+  private static final Flag<String> finalFlag = Flags.valueOf("default");
+
+  private static Flag<String> customFlag = new ConstantFlag("custom");
+
+  private static final Flag<String> finalCustomFlag = new ConstantFlag("final");
+
+  private static IntFlag nullIntFlag = null;
+
+  /**
+   * {@link Flag} implementation not created by {@link Flags#valueOf(Object)}.
+   */
+  private static class ConstantFlag implements Flag<String> {
+    private final String value;
+
+    ConstantFlag(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public String get() {
+      return value;
+    }
+
+    @Override
+    public String defaultValue() {
+      return value;
+    }
+  }
+
+  private static FlagWriter writer(String name) throws Exception {
+    Field field = FlagWriterTest.class.getDeclaredField(name);
+    field.setAccessible(true);
+    return FlagWriter.of(field);
+  }
+
+  @Test
+  public void testWriteFinalFieldInPlace() throws Exception {
+    Flag<String> flag = finalFlag;
+    writer("finalFlag").write("foo");
+    assertSame(flag, finalFlag);
+    assertEquals("foo", finalFlag.get());
+    assertEquals("default", finalFlag.defaultValue());
+  }
+
+  @Test
+  public void testWriteReplacesCustomFlag() throws Exception {
+    writer("customFlag").write("bar");
+    assertEquals("bar", customFlag.get());
+    assertEquals("custom", customFlag.defaultValue());
+  }
+
+  @Test
+  public void testWriteReplacesPrimitiveFlag() throws Exception {
+    writer("nullIntFlag").write(3);
+    assertEquals(3, nullIntFlag.getInt());
+    assertEquals(3, nullIntFlag.defaultInt());
+  }
+
+  @Test
+  public void testWriteFinalCustomFlagFails() throws Exception {
+    try {
+      writer("finalCustomFlag").write("baz");
+      fail("did not throw FlagException");
+    } catch (FlagException e) {
+      assertEquals("final", finalCustomFlag.get());
+    }
+  }
+
+}
@@ -0,0 +1,209 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for {@link LazyValue} and {@link FlagParser#lazy(boolean)}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class LazyValueTest {
+
+  /**
+   * Type whose converter counts its conversions.
+   */
+  private static final class Counted {
+    private static final AtomicInteger CONVERSIONS = new AtomicInteger();
+
+    private final String value;
+
+    Counted(String value) {
+      this.value = value;
+    }
+  }
+
+  @FlagInfo(help = "lazyList", environment = "lazy")
+  private static final Flag<List<Integer>> lazyList =
+      Flags.valueOf(ImmutableList.<Integer>of());
+
+  @FlagInfo(help = "lazyMap", environment = "lazy")
+  private static final Flag<Map<String, Integer>> lazyMap =
+      Flags.valueOf(ImmutableMap.<String, Integer>of());
+
+  @FlagInfo(help = "lazyInt", environment = "lazy")
+  private static final IntFlag lazyInt = Flags.valueOf(0);
+
+  @FlagInfo(help = "lazyCounted", environment = "lazy")
+  private static final Flag<Counted> lazyCounted =
+      Flags.valueOf(new Counted(""));
+
+  @FlagInfo(help = "lazyListened", environment = "lazy")
+  private static final Flag<List<Integer>> lazyListened =
+      Flags.valueOf(ImmutableList.<Integer>of());
+
+  @BeforeClass
+  public static void registerConverter() {
+    Flags.registerConverter(Counted.class, new FlagConverter<Counted>() {
+      @Override
+      public Counted convert(String value) {
+        Counted.CONVERSIONS.incrementAndGet();
+        return new Counted(value);
+      }
+    });
+  }
+
+  private static void parse(String... args) throws FlagException {
+    Flags.parser().environments("lazy").lazy(true).parseWithExceptions(args);
+  }
+
+  private static boolean isConverted(Flag<?> flag) {
+    return !(((FlagImpl<?>) flag).peek() instanceof LazyValue);
+  }
+
+  @Test
+  public void testConvertedOnFirstGet() throws Exception {
+    parse("--lazyList=1,2,3", "--lazyMap=a:1 b:2", "--lazyInt=5");
+    assertFalse(isConverted(lazyList));
+    assertFalse(isConverted(lazyMap));
+    // primitive flags are converted while parsing
+    assertEquals(5, lazyInt.getInt());
+
+    assertEquals(ImmutableList.of(1, 2, 3), lazyList.get());
+    // the lazy value is dropped once converted
+    assertTrue(isConverted(lazyList));
+    assertFalse(isConverted(lazyMap));
+    assertEquals(ImmutableMap.of("a", 1, "b", 2),
+        Flags.snapshot().get(lazyMap));
+    // the snapshot and the flag share the conversion
+    assertSame(Flags.snapshot().get(lazyMap), lazyMap.get());
+
+    // an eager parse replaces the lazy value
+    Flags.parseWithExceptions(new String[] {"--lazyList=4"}, "lazy");
+    assertTrue(isConverted(lazyList));
+    assertEquals(ImmutableList.of(4), lazyList.get());
+  }
+
+  @Test
+  public void testIllegalValue() throws Exception {
+    parse("--lazyList=1,x");
+    try {
+      lazyList.get();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("lazyList"));
+      assertTrue(e.getCause() instanceof NumberFormatException);
+    }
+    parse("--lazyList=1");
+    assertEquals(ImmutableList.of(1), lazyList.get());
+  }
+
+  @Test
+  public void testValidate() throws Exception {
+    parse("--lazyList=2");
+    try {
+      Flags.parser()
+          .environments("lazy")
+          .lazy(true)
+          .validate(true)
+          .parseWithExceptions(new String[] {"--lazyList=1,x"});
+      fail();
+    } catch (NumberFormatException e) {
+      // expected, as in an eager parse
+    }
+    // nothing is updated
+    assertEquals(ImmutableList.of(2), lazyList.get());
+
+    int conversions = Counted.CONVERSIONS.get();
+    Flags.parser()
+        .environments("lazy")
+        .lazy(true)
+        .validate(true)
+        .parseWithExceptions(new String[] {"--lazyCounted=v"});
+    assertFalse(isConverted(lazyCounted));
+    assertEquals("v", lazyCounted.get().value);
+    assertEquals(conversions + 2, Counted.CONVERSIONS.get());
+  }
+
+  @Test
+  public void testUnreadValueDropped() throws Exception {
+    parse("--lazyList=1,x");
+    // an illegal value nobody read does not fail the next update
+    Flags.parseWithExceptions(new String[] {"--lazyList=3"}, "lazy");
+    assertEquals(ImmutableList.of(3), lazyList.get());
+
+    parse("--lazyCounted=unread");
+    int conversions = Counted.CONVERSIONS.get();
+    Flags.parseWithExceptions(new String[] {"--lazyCounted=read"}, "lazy");
+    assertEquals("read", lazyCounted.get().value);
+    // only the new value was converted
+    assertEquals(conversions + 1, Counted.CONVERSIONS.get());
+  }
+
+  @Test
+  public void testConvertedOnce() throws Exception {
+    parse("--lazyCounted=once");
+    int conversions = Counted.CONVERSIONS.get();
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Counted> results = Lists.newCopyOnWriteArrayList();
+    List<Thread> threads = Lists.newArrayList();
+    for (int i = 0; i < 8; i++) {
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          results.add(lazyCounted.get());
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(8, results.size());
+    for (Counted result : results) {
+      assertSame(results.get(0), result);
+    }
+    assertEquals("once", results.get(0).value);
+    assertEquals(conversions + 1, Counted.CONVERSIONS.get());
+  }
+
+  @Test
+  public void testListenedFlagsAreEager() throws Exception {
+    final List<List<Integer>> seen = Lists.newCopyOnWriteArrayList();
+    Consumer<FlagChange<List<Integer>>> listener =
+        new Consumer<FlagChange<List<Integer>>>() {
+          @Override
+          public void accept(FlagChange<List<Integer>> change) {
+            seen.add(change.getNewValue());
+          }
+        };
+    lazyListened.addListener(listener);
+    try {
+      parse("--lazyListened=7,8");
+      assertTrue(isConverted(lazyListened));
+      assertEquals(ImmutableList.of(7, 8), lazyListened.get());
+    } finally {
+      lazyListened.removeListener(listener);
+    }
+  }
+
+}
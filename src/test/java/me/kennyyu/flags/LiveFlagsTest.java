@@ -0,0 +1,122 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link FlagsMBean}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class LiveFlagsTest {
+
+  @FlagInfo(help = "liveInt", altName = "li", environment = "live")
+  private static final IntFlag liveInt = Flags.valueOf(3);
+
+  @FlagInfo(help = "liveList", environment = "live")
+  private static final Flag<List<Integer>> liveList =
+      Flags.valueOf(ImmutableList.<Integer>of());
+
+  @FlagInfo(help = "liveMutable", environment = "live")
+  private static final MutableFlag<String> liveMutable =
+      Flags.mutableValueOf("a");
+
+  private FlagsMBean bean;
+
+  @Before
+  public void setUp() throws Exception {
+    Flags.parser().environments("live").jmx(true)
+        .parseWithExceptions(new String[] {"-li=5", "--liveList=1,2"});
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(FlagsMBean.OBJECT_NAME);
+    assertTrue(server.isRegistered(name));
+    // go through JMX, as a console would
+    bean = JMX.newMXBeanProxy(server, name, FlagsMBean.class);
+  }
+
+  @Test
+  public void testGetFlags() {
+    FlagStatus status = bean.getFlag("liveInt");
+    assertEquals("liveInt", status.getName());
+    assertEquals("java.lang.Integer", status.getType());
+    assertEquals("live", status.getEnvironment());
+    assertEquals("3", status.getDefaultValue());
+    assertEquals("5", status.getValue());
+    assertTrue(status.getLastChangedMillis() > 0);
+    assertEquals("[1, 2]", bean.getFlag("liveList").getValue());
+    assertEquals("java.util.List<java.lang.Integer>",
+        bean.getFlag("liveList").getType());
+    assertEquals("liveInt", bean.getFlag("li").getName());
+
+    List<FlagStatus> flags = bean.getFlags();
+    int liveFlags = 0;
+    for (int i = 0; i < flags.size(); i++) {
+      if (i > 0) {
+        assertTrue(flags.get(i - 1).getName()
+            .compareTo(flags.get(i).getName()) < 0);
+      }
+      if (flags.get(i).getEnvironment().equals("live")) {
+        liveFlags++;
+      }
+    }
+    assertEquals(3, liveFlags);
+  }
+
+  @Test
+  public void testReadCount() {
+    // the build runs this test with and without counting reads, see the
+    // surefire configuration
+    long expected = Boolean.getBoolean(Flags.COUNT_READS_PROPERTY)
+        ? bean.getFlag("liveInt").getReadCount() + 11 : -1;
+    for (int i = 0; i < 10; i++) {
+      liveInt.getInt();
+    }
+    liveInt.get();
+    // reads through JMX are not counted
+    bean.getFlag("liveInt");
+    assertEquals(expected, bean.getFlag("liveInt").getReadCount());
+  }
+
+  @Test
+  public void testSetFlag() throws Exception {
+    bean.setFlag("liveInt", "42");
+    assertEquals(42, liveInt.getInt());
+    assertEquals(Integer.valueOf(42), Flags.snapshot().get(liveInt));
+    bean.setFlag("liveList", "7,8,9");
+    assertEquals(ImmutableList.of(7, 8, 9), liveList.get());
+
+    long generation = liveMutable.generation();
+    bean.setFlag("liveMutable", "b");
+    assertEquals("b", liveMutable.get());
+    assertEquals(generation + 1, liveMutable.generation());
+  }
+
+  @Test
+  public void testSetIllegalValue() {
+    try {
+      bean.setFlag("liveInt", "x");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(5, liveInt.getInt());
+    try {
+      bean.setFlag("noSuchFlag", "1");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for {@link MutableFlag}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class MutableFlagTest {
+
+  @FlagInfo(help = "mutableTimeout", environment = "mutable")
+  private static final MutableFlag<Integer> mutableTimeout =
+      Flags.mutableValueOf(30);
+
+  @Test
+  public void testSetAndCompareAndSet() {
+    MutableFlag<String> flag = Flags.mutableValueOf("a");
+    assertEquals(0L, flag.generation());
+    flag.set("b");
+    assertEquals("b", flag.get());
+    assertEquals("a", flag.defaultValue());
+    assertEquals(1L, flag.generation());
+
+    assertFalse(flag.compareAndSet("a", "c"));
+    assertEquals(1L, flag.generation());
+    assertTrue(flag.compareAndSet(flag.get(), "c"));
+    assertEquals("c", flag.get());
+    assertEquals(2L, flag.generation());
+  }
+
+  @Test
+  public void testCompareAndSetUsesEquals() {
+    MutableFlag<String> flag = Flags.mutableValueOf(new String("a"));
+    assertTrue(flag.compareAndSet(new String("a"), "b"));
+    assertEquals("b", flag.get());
+    MutableFlag<Integer> count = Flags.mutableValueOf(1000);
+    assertTrue(count.compareAndSet(Integer.valueOf(1000), 1001));
+    assertEquals(Integer.valueOf(1001), count.get());
+  }
+
+  @Test
+  public void testParse() throws Exception {
+    long generation = mutableTimeout.generation();
+    Flags.parseWithExceptions(
+        new String[] {"--mutableTimeout=45"}, "mutable");
+    assertEquals(Integer.valueOf(45), mutableTimeout.get());
+    assertEquals(Integer.valueOf(30), mutableTimeout.defaultValue());
+    assertEquals(generation + 1, mutableTimeout.generation());
+    mutableTimeout.set(60);
+    assertEquals(Integer.valueOf(60), mutableTimeout.get());
+  }
+
+  @Test
+  public void testConcurrentCompareAndSet() throws Exception {
+    final MutableFlag<Integer> counter = Flags.mutableValueOf(0);
+    final int threads = 4;
+    final int increments = 10000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Void>> futures = Lists.newArrayList();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int j = 0; j < increments; j++) {
+              Integer current;
+              do {
+                current = counter.get();
+              } while (!counter.compareAndSet(current, current + 1));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(Integer.valueOf(threads * increments), counter.get());
+    assertEquals((long) threads * increments, counter.generation());
+  }
+
+}
@@ -0,0 +1,60 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link NumberParser}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class NumberParserTest {
+
+  @Test
+  public void testParseIntArray() {
+    assertTrue(Arrays.equals(
+        new int[] {3, -4, 5, Integer.MAX_VALUE, Integer.MIN_VALUE},
+        NumberParser.parseIntArray("3,-4,+5,2147483647,-2147483648", ',')));
+    assertTrue(Arrays.equals(new int[0], NumberParser.parseIntArray("", ',')));
+    assertTrue(Arrays.equals(
+        new int[] {7}, NumberParser.parseIntArray("7", ' ')));
+  }
+
+  @Test
+  public void testParseLongArray() {
+    assertTrue(Arrays.equals(
+        new long[] {9000000000L, Long.MAX_VALUE, Long.MIN_VALUE},
+        NumberParser.parseLongArray(
+            "9000000000,9223372036854775807,-9223372036854775808", ',')));
+  }
+
+  @Test
+  public void testParseLongRange() {
+    assertEquals(42L, NumberParser.parseLong("id=42;", 3, 5));
+  }
+
+  @Test
+  public void testIllegalNumbers() {
+    String[] illegal = {
+        "1,,2", ",1", "-", "1a", "2147483648", "-2147483649",
+    };
+    for (String value : illegal) {
+      try {
+        NumberParser.parseIntArray(value, ',');
+        fail("did not throw NumberFormatException for " + value);
+      } catch (NumberFormatException e) {
+        assertTrue(true);
+      }
+    }
+    try {
+      NumberParser.parseLongArray("9223372036854775808", ',');
+      fail("did not throw NumberFormatException");
+    } catch (NumberFormatException e) {
+      assertTrue(true);
+    }
+  }
+
+}
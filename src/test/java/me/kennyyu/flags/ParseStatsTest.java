@@ -0,0 +1,88 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link ParseStats} and {@link ParseStatsMXBean}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class ParseStatsTest {
+
+  @FlagInfo(help = "statsList", environment = "stats")
+  private static final Flag<List<Integer>> statsList =
+      Flags.valueOf(ImmutableList.<Integer>of());
+
+  private static String[] args() {
+    StringBuilder value = new StringBuilder("--statsList=");
+    for (int i = 0; i < 10000; i++) {
+      value.append(i).append(',');
+    }
+    return new String[] {value.toString()};
+  }
+
+  @Test
+  public void testPhases() throws Exception {
+    ParseStats first = Flags.parseWithStats(args(), "stats");
+    assertFalse(first.isRegistryMemoized());
+    assertEquals(10000, statsList.get().size());
+    ParseStats second = Flags.parseWithStats(args(), "stats");
+    assertTrue(second.isRegistryMemoized());
+    assertEquals(0L, second.getNanos(ParseStats.Phase.SCAN));
+    assertEquals(0L, second.getNanos(ParseStats.Phase.FILTER));
+
+    long total = 0;
+    for (ParseStats.Phase phase : ParseStats.Phase.values()) {
+      assertTrue(first.getNanos(phase) >= 0);
+      total += first.getNanos(phase);
+    }
+    assertEquals(total, first.getTotalNanos());
+    assertTrue(first.getNanos(ParseStats.Phase.SCAN) > 0);
+    assertTrue(second.getNanos(ParseStats.Phase.CONVERT) > 0);
+    assertEquals(ParseStats.Phase.values().length,
+        second.getNanosByPhase().size());
+
+    if (second.getTotalAllocatedBytes() >= 0) {
+      // 10000 boxed integers in a list
+      assertTrue(second.getAllocatedBytes(ParseStats.Phase.CONVERT)
+          > 10000L * 16);
+      assertEquals(0L, second.getAllocatedBytes(ParseStats.Phase.SCAN));
+    } else {
+      assertEquals(-1L, second.getAllocatedBytes(ParseStats.Phase.CONVERT));
+    }
+    assertTrue(second.toString().contains("convert="));
+  }
+
+  @Test
+  public void testMBean() throws Exception {
+    ParseStats stats = Flags.parser().environments("stats").jmx(true)
+        .parseWithStats(new String[0]);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(ParseStatsMXBean.OBJECT_NAME);
+    assertTrue(server.isRegistered(name));
+    assertTrue((Long) server.getAttribute(name, "ParseCount") > 0);
+    assertEquals(stats.getTotalNanos(),
+        ((Long) server.getAttribute(name, "TotalNanos")).longValue());
+    TabularData nanosByPhase =
+        (TabularData) server.getAttribute(name, "NanosByPhase");
+    assertEquals(ParseStats.Phase.values().length, nanosByPhase.size());
+
+    // parses without statistics or JMX are not measured
+    long parseCount = (Long) server.getAttribute(name, "ParseCount");
+    Flags.parseWithExceptions(new String[0], "stats");
+    assertEquals(parseCount,
+        ((Long) server.getAttribute(name, "ParseCount")).longValue());
+  }
+
+}
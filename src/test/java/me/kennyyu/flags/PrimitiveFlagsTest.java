@@ -0,0 +1,90 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link IntFlag}, {@link LongFlag}, {@link DoubleFlag},
+ * {@link BooleanFlag}, and flags of primitive arrays and sets.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class PrimitiveFlagsTest {
+
+  @FlagInfo(help = "primitiveInt", altName = "pi", environment = "primitive")
+  private static final IntFlag primitiveInt = Flags.valueOf(4);
+
+  @FlagInfo(help = "primitiveLong", environment = "primitive")
+  private static final LongFlag primitiveLong = Flags.valueOf(1L);
+
+  @FlagInfo(help = "primitiveDouble", environment = "primitive")
+  private static final DoubleFlag primitiveDouble = Flags.valueOf(0.5);
+
+  @FlagInfo(help = "primitiveBoolean", environment = "primitive")
+  private static final BooleanFlag primitiveBoolean = Flags.valueOf(false);
+
+  @FlagInfo(help = "primitiveInts", environment = "primitive")
+  private static final Flag<int[]> primitiveInts = Flags.valueOf(new int[0]);
+
+  @FlagInfo(help = "primitiveLongs", environment = "primitive")
+  private static final Flag<long[]> primitiveLongs =
+      Flags.valueOf(new long[0]);
+
+  @FlagInfo(help = "primitiveIntSet", environment = "primitive")
+  private static final Flag<SortedIntSet> primitiveIntSet =
+      Flags.valueOf(SortedIntSet.of());
+
+  @FlagInfo(help = "primitiveLongSet", environment = "primitive")
+  private static final Flag<SortedLongSet> primitiveLongSet =
+      Flags.valueOf(SortedLongSet.of());
+
+  @Test
+  public void testFactories() {
+    Flag<Integer> boxed = Flags.valueOf(7);
+    assertTrue(boxed instanceof IntFlag);
+    assertEquals(Integer.valueOf(7), boxed.get());
+    // narrower primitives are boxed rather than widened
+    Flag<Short> shortFlag = Flags.valueOf((short) 7);
+    assertEquals(Short.valueOf((short) 7), shortFlag.get());
+    Flag<Float> floatFlag = Flags.valueOf(7.0f);
+    assertEquals(Float.valueOf(7.0f), floatFlag.get());
+  }
+
+  @Test
+  public void testParse() throws Exception {
+    Flags.parseWithExceptions(new String[] {
+        "-pi=16",
+        "--primitiveLong=9000000000",
+        "--primitiveDouble=0.25",
+        "--primitiveBoolean",
+    }, "primitive");
+    assertEquals(16, primitiveInt.getInt());
+    assertEquals(4, primitiveInt.defaultInt());
+    assertEquals(Integer.valueOf(16), primitiveInt.get());
+    assertEquals(9000000000L, primitiveLong.getLong());
+    assertEquals(1L, primitiveLong.defaultLong());
+    assertEquals(0.25, primitiveDouble.getDouble(), 0.0);
+    assertEquals(0.5, primitiveDouble.defaultDouble(), 0.0);
+    assertTrue(primitiveBoolean.getBoolean());
+    assertFalse(primitiveBoolean.defaultBoolean());
+  }
+
+  @Test
+  public void testParseArraysAndSets() throws Exception {
+    Flags.parseWithExceptions(new String[] {
+        "--primitiveInts=3,1,2",
+        "--primitiveLongs=9000000000,-1",
+        "--primitiveIntSet=42,7,42",
+        "--primitiveLongSet=",
+    }, "primitive");
+    assertTrue(Arrays.equals(new int[] {3, 1, 2}, primitiveInts.get()));
+    assertTrue(Arrays.equals(
+        new long[] {9000000000L, -1L}, primitiveLongs.get()));
+    assertEquals(SortedIntSet.of(7, 42), primitiveIntSet.get());
+    assertTrue(primitiveLongSet.get().isEmpty());
+  }
+
+}
@@ -0,0 +1,82 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link ScanCache}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class ScanCacheTest {
+
+  private static final Set<String> NO_PACKAGES = ImmutableSet.of();
+
+  private File directory;
+  private File cacheFile;
+
+  @Before
+  public void setUp() {
+    directory = Files.createTempDir();
+    cacheFile = new File(directory, "flags.cache");
+  }
+
+  @After
+  public void tearDown() {
+    delete(directory);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  @Test
+  public void testStoreAndLoad() {
+    List<String> coordinates = ImmutableList.of(
+        "me.kennyyu.flags.FlagsTest#flagInteger",
+        "me.kennyyu.flags.FlagsTest#flagLong");
+    ScanCache cache = new ScanCache(cacheFile);
+    assertNull(cache.load("fingerprint"));
+    cache.store("fingerprint", coordinates);
+    assertEquals(coordinates, new ScanCache(cacheFile).load("fingerprint"));
+    assertNull(cache.load("other fingerprint"));
+  }
+
+  @Test
+  public void testFingerprintChangesWithClasspath() throws IOException {
+    File classes = new File(directory, "classes");
+    File classFile = new File(classes, "Foo.class");
+    classes.mkdirs();
+    Files.write("foo", classFile, Charsets.UTF_8);
+    List<URL> urls = ImmutableList.of(classes.toURI().toURL());
+    String fingerprint = ScanCache.fingerprint(urls, NO_PACKAGES);
+    assertEquals(fingerprint, ScanCache.fingerprint(urls, NO_PACKAGES));
+
+    Files.write("foo bar", classFile, Charsets.UTF_8);
+    assertFalse(
+        fingerprint.equals(ScanCache.fingerprint(urls, NO_PACKAGES)));
+    assertFalse(fingerprint.equals(
+        ScanCache.fingerprint(urls, ImmutableSet.of("com.acme"))));
+  }
+
+}
@@ -0,0 +1,246 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SharedFlagStore}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class SharedFlagStoreTest {
+
+  @FlagInfo(help = "sharedInt", environment = "sharedLauncher")
+  private static final IntFlag sharedInt = Flags.valueOf(1);
+
+  @FlagInfo(help = "sharedLong", environment = "sharedLauncher")
+  private static final LongFlag sharedLong = Flags.valueOf(2L);
+
+  @FlagInfo(help = "sharedDouble", environment = "sharedLauncher")
+  private static final DoubleFlag sharedDouble = Flags.valueOf(0.5);
+
+  @FlagInfo(help = "sharedBoolean", environment = "sharedLauncher")
+  private static final BooleanFlag sharedBoolean = Flags.valueOf(false);
+
+  @FlagInfo(help = "sharedString", environment = "sharedLauncher")
+  private static final Flag<String> sharedString = Flags.valueOf("");
+
+  /**
+   * The flags of a worker process, with the same names as the launcher's.
+   */
+  static class Worker {
+    @FlagInfo(help = "sharedInt", environment = "sharedWorker")
+    static final IntFlag sharedInt = Flags.valueOf(10);
+
+    @FlagInfo(help = "sharedLong", environment = "sharedWorker")
+    static final LongFlag sharedLong = Flags.valueOf(20L);
+
+    @FlagInfo(help = "sharedDouble", environment = "sharedWorker")
+    static final IntFlag sharedDouble = Flags.valueOf(30);
+
+    @FlagInfo(help = "sharedBoolean", environment = "sharedWorker")
+    static final BooleanFlag sharedBoolean = Flags.valueOf(false);
+  }
+
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = File.createTempFile("flags", ".store");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  private SharedFlagStore launch() throws Exception {
+    Flags.parser()
+        .environments("sharedLauncher")
+        .parseWithExceptions(new String[] {
+            "--sharedInt=5",
+            "--sharedLong=9000000000",
+            "--sharedDouble=0.25",
+            "--sharedBoolean",
+            "--sharedString=ignored",
+        });
+    return SharedFlagStore.create(file);
+  }
+
+  private void work(String... args) throws Exception {
+    Flags.parser()
+        .environments("sharedWorker")
+        .sharedStore(file)
+        .parseWithExceptions(args);
+  }
+
+  @Test
+  public void testCreate() throws Exception {
+    SharedFlagStore store = launch();
+    assertEquals(file, store.getFile());
+    assertTrue(store.getNames().contains("sharedInt"));
+    assertTrue(store.getNames().contains("sharedBoolean"));
+    assertFalse(store.getNames().contains("sharedString"));
+    assertEquals(5, sharedInt.getInt());
+    assertEquals(9000000000L, sharedLong.getLong());
+    assertEquals(0.25, sharedDouble.getDouble(), 0.0);
+    assertTrue(sharedBoolean.getBoolean());
+    // the temporary file was moved into place
+    for (File sibling : file.getParentFile().listFiles()) {
+      assertFalse(sibling.getName().startsWith(file.getName() + "."));
+    }
+  }
+
+  @Test
+  public void testWorkerReadsStore() throws Exception {
+    SharedFlagStore store = launch();
+    work();
+    assertEquals(5, Worker.sharedInt.getInt());
+    assertEquals(9000000000L, Worker.sharedLong.getLong());
+    assertTrue(Worker.sharedBoolean.get());
+    // the types differ, so the worker keeps its own value
+    assertEquals(30, Worker.sharedDouble.getInt());
+    assertEquals(10, Worker.sharedInt.defaultInt());
+
+    store.setInt("sharedInt", 7);
+    store.setLong("sharedLong", -1L);
+    store.setBoolean("sharedBoolean", false);
+    assertEquals(7, sharedInt.getInt());
+    assertEquals(7, Worker.sharedInt.getInt());
+    assertEquals(Integer.valueOf(7), Worker.sharedInt.get());
+    assertEquals(-1L, Worker.sharedLong.getLong());
+    assertFalse(Worker.sharedBoolean.getBoolean());
+    store.setDouble("sharedDouble", 0.75);
+    assertEquals(0.75, sharedDouble.getDouble(), 0.0);
+  }
+
+  @Test
+  public void testCommandLineOverridesStore() throws Exception {
+    SharedFlagStore store = launch();
+    File other = File.createTempFile("flags", ".store");
+    try {
+      file = other;
+      store = SharedFlagStore.create(other);
+      work("--sharedLong=3");
+      store.setLong("sharedLong", 4L);
+      assertEquals(3L, Worker.sharedLong.getLong());
+      assertEquals(4L, sharedLong.getLong());
+    } finally {
+      other.delete();
+    }
+  }
+
+  @Test
+  public void testSetWrongType() throws Exception {
+    SharedFlagStore store = launch();
+    try {
+      store.setInt("sharedLong", 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      store.setInt("sharedString", 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testReadOnly() throws Exception {
+    launch();
+    SharedFlagStore store = SharedFlagStore.open(file);
+    assertTrue(store.getNames().contains("sharedLong"));
+    try {
+      store.setInt("sharedInt", 1);
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = FlagException.class)
+  public void testOpenNotAStore() throws Exception {
+    SharedFlagStore.open(file);
+  }
+
+  @Test
+  public void testUpdateUnbindsFlag() throws Exception {
+    SharedFlagStore store = launch();
+    work();
+    // e.g. a reload of the worker's flag file
+    ((IntFlagImpl) Worker.sharedInt).update(8);
+    store.setInt("sharedInt", 9);
+    assertEquals(8, Worker.sharedInt.getInt());
+    assertEquals(9, sharedInt.getInt());
+  }
+
+  @Test
+  public void testReplacedStoreIsRemapped() throws Exception {
+    SharedFlagStore first = launch();
+    work();
+    assertFalse(first.isReplaced());
+    assertFalse(SharedFlagStore.open(file).isReplaced());
+
+    SharedFlagStore second = launch();
+    assertTrue(first.isReplaced());
+    assertFalse(second.isReplaced());
+    second.setInt("sharedInt", 11);
+    // the worker reads the previous file until it parses again
+    assertEquals(5, Worker.sharedInt.getInt());
+    work();
+    assertEquals(11, Worker.sharedInt.getInt());
+  }
+
+  @Test
+  public void testOpenCorruptedStore() throws Exception {
+    launch();
+    RandomAccessFile store = new RandomAccessFile(file, "rw");
+    try {
+      ByteBuffer nameOffset =
+          ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+      nameOffset.putInt(0, Integer.MAX_VALUE - 2);
+      // the name offset of the first entry
+      store.getChannel().write(nameOffset, 16);
+    } finally {
+      store.close();
+    }
+    try {
+      SharedFlagStore.open(file);
+      fail();
+    } catch (FlagException e) {
+      assertTrue(e.getMessage().contains("corrupted"));
+    }
+  }
+
+  @Test
+  public void testOpenStoreWithDuplicateNames() throws Exception {
+    launch();
+    RandomAccessFile store = new RandomAccessFile(file, "rw");
+    try {
+      // the name of the first entry is given to the second entry
+      ByteBuffer name = ByteBuffer.allocate(8);
+      store.getChannel().read(name, 16);
+      name.flip();
+      store.getChannel().write(name, 32);
+    } finally {
+      store.close();
+    }
+    try {
+      SharedFlagStore.open(file);
+      fail();
+    } catch (FlagException e) {
+      assertTrue(e.getMessage().contains("corrupted"));
+    }
+  }
+
+}
@@ -0,0 +1,246 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests for {@link Flags#exportSnapshot} and {@link Flags#importSnapshot}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class SnapshotCodecTest {
+
+  private static enum Color {
+    RED, GREEN, BLUE
+  }
+
+  @FlagInfo(help = "exportedInt", environment = "exported")
+  private static final IntFlag exportedInt = Flags.valueOf(1);
+
+  @FlagInfo(help = "exportedString", environment = "exported")
+  private static final Flag<String> exportedString = Flags.valueOf("a");
+
+  @FlagInfo(help = "exportedChar", environment = "exported")
+  private static final Flag<Character> exportedChar = Flags.valueOf('a');
+
+  @FlagInfo(help = "exportedColor", environment = "exported")
+  private static final Flag<Color> exportedColor = Flags.valueOf(Color.RED);
+
+  @FlagInfo(help = "exportedLongs", environment = "exported")
+  private static final Flag<long[]> exportedLongs =
+      Flags.valueOf(new long[0]);
+
+  @FlagInfo(help = "exportedIntSet", environment = "exported")
+  private static final Flag<SortedIntSet> exportedIntSet =
+      Flags.valueOf(SortedIntSet.of());
+
+  @FlagInfo(help = "exportedList", environment = "exported")
+  private static final Flag<List<Double>> exportedList =
+      Flags.valueOf(ImmutableList.<Double>of());
+
+  @FlagInfo(help = "exportedSet", environment = "exported")
+  private static final Flag<Set<Color>> exportedSet =
+      Flags.valueOf(ImmutableSet.<Color>of());
+
+  @FlagInfo(help = "exportedMap", environment = "exported")
+  private static final Flag<Map<Color, Long>> exportedMap =
+      Flags.valueOf(ImmutableMap.<Color, Long>of());
+
+  /**
+   * Flags with names of the exported flags, but other types.
+   */
+  static class Mismatched {
+    @FlagInfo(help = "exportedInt", environment = "mismatched")
+    static final Flag<String> exportedInt = Flags.valueOf("");
+  }
+
+  private static byte[] export() throws Exception {
+    Flags.parseWithExceptions(new String[] {
+        "--exportedInt=7",
+        "--exportedString=hello world",
+        "--exportedChar=z",
+        "--exportedColor=BLUE",
+        "--exportedLongs=9000000000,-1",
+        "--exportedIntSet=5,3,5",
+        "--exportedList=0.5,0.25",
+        "--exportedSet=GREEN,RED",
+        "--exportedMap=RED:1 BLUE:2",
+    }, "exported");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Flags.exportSnapshot(out, "exported");
+    // reset the flags so that the import is visible
+    Flags.parseWithExceptions(new String[] {
+        "--exportedInt=0",
+        "--exportedString=",
+        "--exportedChar=a",
+        "--exportedColor=RED",
+        "--exportedLongs=",
+        "--exportedIntSet=",
+        "--exportedList=",
+        "--exportedSet=",
+        "--exportedMap=",
+    }, "exported");
+    return out.toByteArray();
+  }
+
+  private static void assertImported() {
+    assertEquals(7, exportedInt.getInt());
+    assertEquals("hello world", exportedString.get());
+    assertEquals(Character.valueOf('z'), exportedChar.get());
+    assertEquals(Color.BLUE, exportedColor.get());
+    assertTrue(Arrays.equals(
+        new long[] {9000000000L, -1}, exportedLongs.get()));
+    assertEquals(SortedIntSet.of(3, 5), exportedIntSet.get());
+    assertEquals(ImmutableList.of(0.5, 0.25), exportedList.get());
+    assertEquals(ImmutableSet.of(Color.GREEN, Color.RED), exportedSet.get());
+    assertEquals(ImmutableMap.of(Color.RED, 1L, Color.BLUE, 2L),
+        exportedMap.get());
+    assertEquals(Integer.valueOf(7), Flags.snapshot().get(exportedInt));
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    byte[] bytes = export();
+    assertEquals(0, exportedInt.getInt());
+    Flags.importSnapshot(new ByteArrayInputStream(bytes), "exported");
+    assertImported();
+  }
+
+  @Test
+  public void testImportFromBuffer() throws Exception {
+    byte[] bytes = export();
+    ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 3);
+    buffer.put(new byte[] {1, 2, 3}).put(bytes).position(3);
+    // the encoding does not depend on the order of the buffer
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    Flags.importSnapshot(buffer, "exported");
+    assertImported();
+    assertEquals(buffer.limit(), buffer.position());
+  }
+
+  @Test
+  public void testImportedCollections() throws Exception {
+    byte[] bytes = export();
+    Flags.importSnapshot(new ByteArrayInputStream(bytes), "exported");
+    assertTrue(exportedList.get() instanceof ImmutableList);
+    assertTrue(exportedSet.get() instanceof ImmutableSet);
+    assertTrue(exportedMap.get() instanceof ImmutableMap);
+
+    Flags.parser().environments("exported").mutableCollections(true)
+        .importSnapshot(new ByteArrayInputStream(bytes));
+    exportedList.get().add(1.0);
+    exportedSet.get().add(Color.BLUE);
+    exportedMap.get().remove(Color.RED);
+    assertEquals(ImmutableMap.of(Color.BLUE, 2L), exportedMap.get());
+  }
+
+  @Test
+  public void testImportIgnoresOtherFlags() throws Exception {
+    byte[] bytes = export();
+    // only the flags of the default environment are loaded
+    Flags.importSnapshot(new ByteArrayInputStream(bytes));
+    assertEquals(0, exportedInt.getInt());
+  }
+
+  @Test
+  public void testImportMismatchedType() throws Exception {
+    byte[] bytes = export();
+    try {
+      Flags.importSnapshot(new ByteArrayInputStream(bytes), "mismatched");
+      fail();
+    } catch (FlagException e) {
+      assertTrue(e.getMessage().contains("exportedInt"));
+    }
+    assertEquals("", Mismatched.exportedInt.get());
+  }
+
+  @Test
+  public void testImportNulls() throws Exception {
+    Map<String, Object> values = Maps.newHashMap();
+    values.put("exportedString", "not imported");
+    values.put("exportedInt", null);
+    assertNotImported(values);
+    values.put("exportedInt", 3);
+    values.put("exportedList", Arrays.asList(0.5, null));
+    assertNotImported(values);
+  }
+
+  /**
+   * Asserts that a snapshot of values is rejected before any flag is
+   * updated.
+   */
+  private static void assertNotImported(Map<String, Object> values)
+      throws Exception {
+    String before = exportedString.get();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SnapshotCodec.write(values, out);
+    try {
+      Flags.importSnapshot(ByteBuffer.wrap(out.toByteArray()), "exported");
+      fail();
+    } catch (FlagException e) {
+      assertTrue(e.getMessage().contains("null"));
+    }
+    assertEquals(before, exportedString.get());
+  }
+
+  @Test
+  public void testImportTruncated() throws Exception {
+    byte[] bytes = export();
+    try {
+      Flags.importSnapshot(
+          ByteBuffer.wrap(bytes, 0, bytes.length - 1), "exported");
+      fail();
+    } catch (FlagException e) {
+      // expected
+    }
+    // nothing is updated
+    assertEquals(0, exportedInt.getInt());
+  }
+
+  @Test
+  public void testImportOversizedArray() throws Exception {
+    byte[] bytes = export();
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    // the size of exportedLongs, followed by its first element
+    int sizeOffset = -1;
+    for (int i = 0; i + 12 <= bytes.length && sizeOffset < 0; i++) {
+      if (buffer.getInt(i) == 2 && buffer.getLong(i + 4) == 9000000000L) {
+        sizeOffset = i;
+      }
+    }
+    assertTrue(sizeOffset >= 0);
+    // fewer elements than bytes remain, but more than 8 byte elements fit
+    int remaining = bytes.length - sizeOffset - 4;
+    buffer.putInt(sizeOffset, remaining / 8 + 1);
+    try {
+      Flags.importSnapshot(buffer, "exported");
+      fail();
+    } catch (FlagException e) {
+      // rejected by its size, before the array is allocated or read
+      assertTrue(e.getMessage().contains("truncated"));
+      assertNull(e.getCause());
+    }
+    assertEquals(0, exportedInt.getInt());
+  }
+
+  @Test(expected = FlagException.class)
+  public void testImportGarbage() throws Exception {
+    Flags.importSnapshot(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6}));
+  }
+
+}
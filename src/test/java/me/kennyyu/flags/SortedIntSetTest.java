@@ -0,0 +1,36 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SortedIntSet}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class SortedIntSetTest {
+
+  @Test
+  public void testOf() {
+    int[] values = {5, 1, 3, 1, 5};
+    SortedIntSet set = SortedIntSet.of(values);
+    assertTrue(Arrays.equals(new int[] {1, 3, 5}, set.toArray()));
+    assertTrue(Arrays.equals(new int[] {5, 1, 3, 1, 5}, values));
+    assertEquals(3, set.size());
+    assertEquals(3, set.get(1));
+    assertEquals(SortedIntSet.of(3, 5, 1), set);
+    assertTrue(SortedIntSet.of().isEmpty());
+  }
+
+  @Test
+  public void testContains() {
+    SortedIntSet set = SortedIntSet.of(-7, 0, 42);
+    assertTrue(set.contains(-7));
+    assertTrue(set.contains(42));
+    assertFalse(set.contains(1));
+  }
+
+}
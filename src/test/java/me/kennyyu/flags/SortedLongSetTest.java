@@ -0,0 +1,36 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SortedLongSet}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class SortedLongSetTest {
+
+  @Test
+  public void testOf() {
+    long[] values = {5, 1, 3, 1, 5};
+    SortedLongSet set = SortedLongSet.of(values);
+    assertTrue(Arrays.equals(new long[] {1, 3, 5}, set.toArray()));
+    assertTrue(Arrays.equals(new long[] {5, 1, 3, 1, 5}, values));
+    assertEquals(3, set.size());
+    assertEquals(3L, set.get(1));
+    assertEquals(SortedLongSet.of(3, 5, 1), set);
+    assertTrue(SortedLongSet.of().isEmpty());
+  }
+
+  @Test
+  public void testContains() {
+    SortedLongSet set = SortedLongSet.of(-7, 0, 42);
+    assertTrue(set.contains(-7));
+    assertTrue(set.contains(42));
+    assertFalse(set.contains(1));
+  }
+
+}
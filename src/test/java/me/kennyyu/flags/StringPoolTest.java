@@ -0,0 +1,91 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests for {@link StringPool} and {@link FlagParser#stringPoolSize(int)}.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class StringPoolTest {
+
+  @FlagInfo(help = "pooledHosts", environment = "pooled")
+  private static final Flag<List<String>> pooledHosts =
+      Flags.valueOf(ImmutableList.<String>of());
+
+  @FlagInfo(help = "pooledPorts", environment = "pooled")
+  private static final Flag<Map<String, Integer>> pooledPorts =
+      Flags.valueOf(ImmutableMap.<String, Integer>of());
+
+  @FlagInfo(help = "pooledHost", environment = "pooled")
+  private static final Flag<String> pooledHost = Flags.valueOf("");
+
+  private static final FlagConverter<String> STRING =
+      FlagConverters.get(String.class);
+
+  @Test
+  public void testConvert() throws Exception {
+    StringPool pool = new StringPool(100, STRING);
+    assertEquals(64, pool.getMaxSize());
+    String first = pool.convert("--a=host", 4, 8);
+    assertEquals("host", first);
+    assertSame(first, pool.convert("host,host", 5, 9));
+    assertSame(first, pool.convert(new String("host")));
+    assertEquals("", pool.convert("", 0, 0));
+  }
+
+  @Test
+  public void testBounded() throws Exception {
+    StringPool pool = new StringPool(1, STRING);
+    String a = pool.convert("a");
+    String b = pool.convert("b");
+    // "b" replaced "a" in the only slot
+    assertSame(b, pool.convert(new String("b")));
+    assertNotSame(a, pool.convert(new String("a")));
+  }
+
+  @Test
+  public void testConverterResult() throws Exception {
+    StringPool pool = new StringPool(16, new FlagConverter<String>() {
+      @Override
+      public String convert(String value) {
+        return value.toUpperCase();
+      }
+    });
+    assertEquals("A", pool.convert("a"));
+    assertEquals("A", pool.convert("a"));
+  }
+
+  @Test
+  public void testParse() throws Exception {
+    String[] args = {
+        "--pooledHosts=db1,db2,db1",
+        "--pooledPorts=\"db1:5432 db2:5433\"",
+        "--pooledHost=db2"};
+    Flags.parser().environments("pooled").stringPoolSize(1024).parse(args);
+    String db1 = pooledHosts.get().get(0);
+    String db2 = pooledHosts.get().get(1);
+    assertSame(db1, pooledHosts.get().get(2));
+    for (String key : pooledPorts.get().keySet()) {
+      assertSame(key.equals("db1") ? db1 : db2, key);
+    }
+    assertSame(db2, pooledHost.get());
+
+    Flags.parser().environments("pooled").parse(args);
+    assertNotSame(pooledHosts.get().get(0), pooledHosts.get().get(2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeSize() {
+    Flags.parser().stringPoolSize(-1);
+  }
+
+}
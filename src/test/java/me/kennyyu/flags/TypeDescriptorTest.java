@@ -0,0 +1,180 @@
+package me.kennyyu.flags;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests for {@link TypeDescriptor} and flags with nested collections.
+ *
+ * @author kennyyu (Kenny Yu)
+ */
+public class TypeDescriptorTest {
+
+  @FlagInfo(help = "nestedRoutes", environment = "nested")
+  private static final Flag<Map<String, List<Integer>>> nestedRoutes =
+      Flags.valueOf(ImmutableMap.<String, List<Integer>>of());
+
+  @FlagInfo(help = "nestedShards", environment = "nested")
+  private static final Flag<List<List<Integer>>> nestedShards =
+      Flags.valueOf(ImmutableList.<List<Integer>>of());
+
+  @FlagInfo(help = "nestedTables", environment = "nested")
+  private static final Flag<Map<String, Map<String, Set<Long>>>>
+      nestedTables = Flags.valueOf(
+          ImmutableMap.<String, Map<String, Set<Long>>>of());
+
+  @FlagInfo(help = "nestedCustom", environment = "nested",
+      delimiters = "/=,")
+  private static final Flag<Map<String, List<String>>> nestedCustom =
+      Flags.valueOf(ImmutableMap.<String, List<String>>of());
+
+  @FlagInfo(help = "nestedArrays", environment = "nested")
+  private static final Flag<List<int[]>> nestedArrays =
+      Flags.valueOf(ImmutableList.<int[]>of());
+
+  @FlagInfo(help = "nestedIdSets", environment = "nested")
+  private static final Flag<Map<String, SortedLongSet>> nestedIdSets =
+      Flags.valueOf(ImmutableMap.<String, SortedLongSet>of());
+
+  @FlagInfo(help = "nestedCustomArrays", environment = "nested",
+      delimiters = "/-")
+  private static final Flag<Set<long[]>> nestedCustomArrays =
+      Flags.valueOf(ImmutableSet.<long[]>of());
+
+  @SuppressWarnings("unused")
+  @FlagInfo(help = "tooFewDelimiters", environment = "nestedInvalid",
+      delimiters = ";")
+  private static Flag<Map<String, Integer>> tooFewDelimiters =
+      Flags.valueOf(ImmutableMap.<String, Integer>of());
+
+  @SuppressWarnings("unused")
+  @FlagInfo(help = "repeatedDelimiter", environment = "nestedInvalid",
+      delimiters = ";;")
+  private static Flag<List<List<Integer>>> repeatedDelimiter =
+      Flags.valueOf(ImmutableList.<List<Integer>>of());
+
+  @SuppressWarnings("unused")
+  @FlagInfo(help = "unsupportedLeaf", environment = "nestedInvalid")
+  private static Flag<Map<String, List<Object>>> unsupportedLeaf =
+      Flags.valueOf(ImmutableMap.<String, List<Object>>of());
+
+  private static Field field(String name) throws NoSuchFieldException {
+    return TypeDescriptorTest.class.getDeclaredField(name);
+  }
+
+  @Test
+  public void testTree() throws Exception {
+    TypeDescriptor tables = TypeDescriptor.of(field("nestedTables"));
+    assertEquals(TypeDescriptor.Kind.MAP, tables.getKind());
+    assertEquals(String.class, tables.getKey().getValueClass());
+    TypeDescriptor inner = tables.getElement();
+    assertEquals(TypeDescriptor.Kind.MAP, inner.getKind());
+    assertEquals(TypeDescriptor.Kind.SET, inner.getElement().getKind());
+    assertEquals(
+        Long.class, inner.getElement().getElement().getValueClass());
+    assertNull(tables.getValueClass());
+
+    // descriptors are cached by type
+    assertSame(tables, TypeDescriptor.of(field("nestedTables")));
+    assertSame(
+        TypeDescriptor.of(field("nestedRoutes")).getElement(),
+        TypeDescriptor.of(field("nestedShards")).getElement());
+  }
+
+  @Test
+  public void testParse() throws Exception {
+    Flags.parseWithExceptions(new String[] {
+        "--nestedRoutes=\"eu:1,2 us:3\"",
+        "--nestedShards=1;2,3,,",
+        "--nestedTables=users:a|1,2;b|3 orders:",
+        "--nestedCustom=x=a,b/y=c",
+    }, "nested");
+    assertEquals(ImmutableMap.of(
+            "eu", ImmutableList.of(1, 2), "us", ImmutableList.of(3)),
+        nestedRoutes.get());
+    assertEquals(
+        ImmutableList.of(ImmutableList.of(1, 2), ImmutableList.of(3)),
+        nestedShards.get());
+    assertEquals(ImmutableMap.of(
+            "users", ImmutableMap.of(
+                "a", ImmutableSet.of(1L, 2L), "b", ImmutableSet.of(3L)),
+            "orders", ImmutableMap.of()),
+        nestedTables.get());
+    assertEquals(ImmutableMap.of(
+            "x", ImmutableList.of("a", "b"), "y", ImmutableList.of("c")),
+        nestedCustom.get());
+
+    Flags.parseWithExceptions(new String[] {
+        "--nestedArrays=1;2,3",
+        "--nestedIdSets=\"a:3,1 b:\"",
+        "--nestedCustomArrays=1-2/3",
+    }, "nested");
+    List<int[]> arrays = nestedArrays.get();
+    assertEquals(2, arrays.size());
+    assertTrue(Arrays.equals(new int[] {1, 2}, arrays.get(0)));
+    assertTrue(Arrays.equals(new int[] {3}, arrays.get(1)));
+    assertEquals(ImmutableMap.of(
+            "a", SortedLongSet.of(1, 3), "b", SortedLongSet.of()),
+        nestedIdSets.get());
+    assertEquals(2, nestedCustomArrays.get().size());
+
+    Flags.parser()
+        .environments("nested")
+        .mutableCollections(true)
+        .parse(new String[] {"--nestedShards=1;2,3"});
+    nestedShards.get().get(0).add(4);
+    assertEquals(ImmutableList.of(1, 2, 4), nestedShards.get().get(0));
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    Flags.parseWithExceptions(new String[] {
+        "--nestedTables=users:a|1,2",
+    }, "nested");
+    Map<String, Map<String, Set<Long>>> tables = nestedTables.get();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Flags.exportSnapshot(out, "nested");
+    Flags.parseWithExceptions(new String[] {"--nestedTables="}, "nested");
+    assertTrue(nestedTables.get().isEmpty());
+    Flags.importSnapshot(ByteBuffer.wrap(out.toByteArray()), "nested");
+    assertEquals(tables, nestedTables.get());
+  }
+
+  @Test(expected = IllegalFlagAnnotationException.class)
+  public void testTooFewDelimiters() throws Exception {
+    FlagRegistry.build(ImmutableList.of(field("tooFewDelimiters")));
+  }
+
+  @Test(expected = IllegalFlagAnnotationException.class)
+  public void testRepeatedDelimiter() throws Exception {
+    FlagRegistry.build(ImmutableList.of(field("repeatedDelimiter")));
+  }
+
+  @Test
+  public void testUnsupportedLeaf() throws Exception {
+    FlagField flagField = FlagRegistry.build(
+        ImmutableList.of(field("unsupportedLeaf"))).getFlagFields().get(0);
+    assertNull(flagField.getConverter());
+    assertEquals(Object.class, flagField.getUnsupportedType());
+    try {
+      Flags.convertValue(flagField, "a:b", 0, 3);
+      fail("did not throw UnsupportedFlagTypeException");
+    } catch (UnsupportedFlagTypeException e) {
+      assertTrue(true);
+    }
+  }
+
+}